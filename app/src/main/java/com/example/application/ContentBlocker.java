@@ -0,0 +1,491 @@
+package com.example.application;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Request blocklist compiled from EasyList-style rules.
+ *
+ * Supported rules:
+ * <ul>
+ * <li>{@code ||example.com^} blocks example.com and all of its subdomains; these go
+ * into a trie over reversed host names.</li>
+ * <li>{@code ||example.com/ads} also needs the URL to continue with {@code /ads}
+ * right after the host; the path hangs off the host's trie node. A trailing
+ * {@code ^} requires a separator or the end of the URL after the path.</li>
+ * <li>Plain patterns such as {@code /ads/banner} block any URL containing them;
+ * these go into an Aho-Corasick automaton.</li>
+ * <li>{@code @@} marks either kind as an exception.</li>
+ * </ul>
+ * Comments, element hiding rules, regex rules and wildcard/separator rules that
+ * are not a plain literal are skipped. So are rules with {@code $} options other
+ * than {@code important}: {@link #shouldBlock} only sees the URL, so it cannot
+ * tell a third-party or script request apart, and dropping the option would
+ * widen the rule (an {@code @@...$elemhide} would allow the whole site).
+ *
+ * Both tries are stored breadth-first in flat arrays: the children of node
+ * {@code n} are the consecutive nodes {@code childStart[n] .. childStart[n + 1] - 1},
+ * sorted by {@code label}. {@link #shouldBlock} walks them without allocating.
+ */
+public final class ContentBlocker {
+
+    private static final int MAGIC = 0x41424C4B;
+    private static final int VERSION = 3;
+
+    private static final byte BLOCK = 1;
+    private static final byte ALLOW = 2;
+    // Path rules only: the path must be followed by a separator or the end.
+    private static final byte SEPARATOR = 4;
+
+    private static final int MIN_PATTERN_LENGTH = 4;
+
+    // Reversed host trie.
+    private final int[] mHostChildStart;
+    private final char[] mHostLabel;
+    private final byte[] mHostFlags;
+
+    // Path rules of host node n are mHostPathStart[n] .. mHostPathStart[n + 1] - 1.
+    private final int[] mHostPathStart;
+    private final String[] mHostPaths;
+    private final byte[] mHostPathFlags;
+
+    // Aho-Corasick automaton over lower-cased URL characters.
+    private final int[] mPatternChildStart;
+    private final char[] mPatternLabel;
+    private final byte[] mPatternFlags;
+    private final int[] mPatternFail;
+
+    private final int mRuleCount;
+
+    private ContentBlocker(int[] hostChildStart, char[] hostLabel, byte[] hostFlags,
+                           int[] hostPathStart, String[] hostPaths, byte[] hostPathFlags,
+                           int[] patternChildStart, char[] patternLabel, byte[] patternFlags, int[] patternFail,
+                           int ruleCount) {
+        this.mHostChildStart = hostChildStart;
+        this.mHostLabel = hostLabel;
+        this.mHostFlags = hostFlags;
+        this.mHostPathStart = hostPathStart;
+        this.mHostPaths = hostPaths;
+        this.mHostPathFlags = hostPathFlags;
+        this.mPatternChildStart = patternChildStart;
+        this.mPatternLabel = patternLabel;
+        this.mPatternFlags = patternFlags;
+        this.mPatternFail = patternFail;
+        this.mRuleCount = ruleCount;
+    }
+
+    public int getRuleCount() {
+        return mRuleCount;
+    }
+
+    public boolean shouldBlock(String url) {
+        int hostStart = url.indexOf("://");
+        if (hostStart < 0) return false;
+        hostStart += 3;
+        int hostEnd = hostStart;
+        int length = url.length();
+        while (hostEnd < length) {
+            char c = url.charAt(hostEnd);
+            if (c == '/' || c == ':' || c == '?' || c == '#') break;
+            if (c == '@') hostStart = hostEnd + 1;
+            hostEnd++;
+        }
+
+        byte host = matchHost(url, hostStart, hostEnd);
+        if ((host & ALLOW) != 0) return false;
+        byte pattern = matchPatterns(url);
+        if ((pattern & ALLOW) != 0) return false;
+        return ((host | pattern) & BLOCK) != 0;
+    }
+
+    /**
+     * Walks the host from its last character towards the first and collects the
+     * flags of every rule that ends on a label boundary, and of every path rule
+     * there whose path follows the host.
+     */
+    private byte matchHost(String url, int start, int end) {
+        byte flags = 0;
+        int node = 0;
+        for (int i = end - 1; i >= start; i--) {
+            node = child(mHostChildStart, mHostLabel, node, lower(url.charAt(i)));
+            if (node < 0) break;
+            if (i == start || url.charAt(i - 1) == '.') {
+                flags |= mHostFlags[node];
+                for (int rule = mHostPathStart[node]; rule < mHostPathStart[node + 1]; rule++) {
+                    if (matchPath(url, end, mHostPaths[rule], (mHostPathFlags[rule] & SEPARATOR) != 0)) {
+                        flags |= mHostPathFlags[rule] & (BLOCK | ALLOW);
+                    }
+                }
+                if ((flags & ALLOW) != 0) break;
+            }
+        }
+        return flags;
+    }
+
+    private static boolean matchPath(String url, int hostEnd, String path, boolean separator) {
+        if (!url.regionMatches(true, hostEnd, path, 0, path.length())) return false;
+        int next = hostEnd + path.length();
+        return !separator || next == url.length() || isSeparator(url.charAt(next));
+    }
+
+    /**
+     * Adblock's {@code ^}: anything but a letter, digit or one of {@code _-.%}.
+     */
+    private static boolean isSeparator(char c) {
+        return !(Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == '%');
+    }
+
+    private byte matchPatterns(String url) {
+        byte flags = 0;
+        int state = 0;
+        int length = url.length();
+        for (int i = 0; i < length; i++) {
+            char c = lower(url.charAt(i));
+            while (true) {
+                int next = child(mPatternChildStart, mPatternLabel, state, c);
+                if (next >= 0) {
+                    state = next;
+                    break;
+                }
+                if (state == 0) break;
+                state = mPatternFail[state];
+            }
+            flags |= mPatternFlags[state];
+            if ((flags & ALLOW) != 0) break;
+        }
+        return flags;
+    }
+
+    private static int child(int[] childStart, char[] label, int node, char c) {
+        int low = childStart[node];
+        int high = childStart[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char value = label[mid];
+            if (value < c) {
+                low = mid + 1;
+            } else if (value > c) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    public static ContentBlocker compile(Reader source) throws IOException {
+        TrieBuilder hosts = new TrieBuilder();
+        TrieBuilder patterns = new TrieBuilder();
+        int ruleCount = 0;
+
+        BufferedReader reader = new BufferedReader(source);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("!") || line.startsWith("[")) continue;
+            if (line.contains("##") || line.contains("#@#") || line.contains("#?#") || line.contains("#$#")) continue;
+
+            byte flag = BLOCK;
+            if (line.startsWith("@@")) {
+                flag = ALLOW;
+                line = line.substring(2);
+            }
+
+            int options = line.indexOf('$');
+            if (options >= 0) {
+                if (!honoursOptions(line.substring(options + 1))) continue;
+                line = line.substring(0, options);
+            }
+            if (line.length() > 1 && line.startsWith("/") && line.endsWith("/")) continue;
+
+            line = line.toLowerCase(Locale.ROOT);
+            if (line.startsWith("||")) {
+                String rule = line.substring(2);
+                int end = 0;
+                while (end < rule.length() && isHostChar(rule.charAt(end))) end++;
+                String host = rule.substring(0, end);
+                String rest = rule.substring(end);
+                if (host.isEmpty()) continue;
+                String reversed = new StringBuilder(host).reverse().toString();
+                if (rest.isEmpty() || rest.equals("^") || rest.equals("^*") || rest.equals("/") || rest.equals("/*")) {
+                    hosts.add(reversed, flag);
+                    ruleCount++;
+                    continue;
+                }
+                // Host plus path: the path has to follow the host directly.
+                while (rest.endsWith("*")) rest = rest.substring(0, rest.length() - 1);
+                byte pathFlag = flag;
+                if (rest.endsWith("^")) {
+                    rest = rest.substring(0, rest.length() - 1);
+                    pathFlag |= SEPARATOR;
+                }
+                if (rest.isEmpty() || rest.indexOf('*') >= 0 || rest.indexOf('^') >= 0 || rest.indexOf('|') >= 0) continue;
+                hosts.addPath(reversed, rest, pathFlag);
+                ruleCount++;
+                continue;
+            } else if (line.startsWith("|")) {
+                line = line.substring(1);
+            }
+            if (line.endsWith("|")) line = line.substring(0, line.length() - 1);
+            while (line.endsWith("*")) line = line.substring(0, line.length() - 1);
+            while (line.startsWith("*")) line = line.substring(1);
+            if (line.endsWith("^")) line = line.substring(0, line.length() - 1);
+            if (line.indexOf('*') >= 0 || line.indexOf('^') >= 0 || line.indexOf('|') >= 0) continue;
+            if (line.length() < MIN_PATTERN_LENGTH) continue;
+
+            patterns.add(line, flag);
+            ruleCount++;
+        }
+
+        TrieBuilder.Flat host = hosts.flatten(false);
+        TrieBuilder.Flat pattern = patterns.flatten(true);
+        return new ContentBlocker(host.childStart, host.label, host.flags, host.pathStart, host.paths, host.pathFlags,
+                                  pattern.childStart, pattern.label, pattern.flags, pattern.fail, ruleCount);
+    }
+
+    /**
+     * Whether the rule means the same without its options. {@code important}
+     * only lets a block rule beat exceptions, so dropping it narrows the rule.
+     */
+    private static boolean honoursOptions(String options) {
+        for (String option : options.split(",")) {
+            if (!option.trim().equalsIgnoreCase("important")) return false;
+        }
+        return true;
+    }
+
+    private static boolean isHostChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '_';
+    }
+
+    /**
+     * Writes the compiled form; {@code sourceStamp} identifies the rule sources it
+     * was built from so stale files can be detected by {@link #read}.
+     */
+    public void write(DataOutputStream output, long sourceStamp) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(sourceStamp);
+        output.writeInt(mRuleCount);
+        writeInts(output, mHostChildStart);
+        writeChars(output, mHostLabel);
+        writeBytes(output, mHostFlags);
+        writeInts(output, mHostPathStart);
+        output.writeInt(mHostPaths.length);
+        for (String path : mHostPaths) output.writeUTF(path);
+        writeBytes(output, mHostPathFlags);
+        writeInts(output, mPatternChildStart);
+        writeChars(output, mPatternLabel);
+        writeBytes(output, mPatternFlags);
+        writeInts(output, mPatternFail);
+    }
+
+    /**
+     * Reads a compiled blocklist, or returns null if the data is from another
+     * format version or from different sources.
+     */
+    public static ContentBlocker read(DataInputStream input, long sourceStamp) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != VERSION || input.readLong() != sourceStamp) return null;
+        int ruleCount = input.readInt();
+        int[] hostChildStart = readInts(input);
+        char[] hostLabel = readChars(input);
+        byte[] hostFlags = readBytes(input);
+        int[] hostPathStart = readInts(input);
+        String[] hostPaths = new String[checkedLength(input)];
+        for (int i = 0; i < hostPaths.length; i++) hostPaths[i] = input.readUTF();
+        byte[] hostPathFlags = readBytes(input);
+        int[] patternChildStart = readInts(input);
+        char[] patternLabel = readChars(input);
+        byte[] patternFlags = readBytes(input);
+        int[] patternFail = readInts(input);
+        if (hostChildStart.length != hostLabel.length + 1 || hostFlags.length != hostLabel.length
+            || hostPathStart.length != hostLabel.length + 1 || hostPathFlags.length != hostPaths.length
+            || hostPathStart[hostLabel.length] != hostPaths.length
+            || patternChildStart.length != patternLabel.length + 1 || patternFlags.length != patternLabel.length
+            || patternFail.length != patternLabel.length) {
+            throw new IOException("Corrupt blocklist");
+        }
+        return new ContentBlocker(hostChildStart, hostLabel, hostFlags, hostPathStart, hostPaths, hostPathFlags,
+                                  patternChildStart, patternLabel, patternFlags, patternFail, ruleCount);
+    }
+
+    private static void writeInts(DataOutputStream output, int[] values) throws IOException {
+        output.writeInt(values.length);
+        for (int value : values) output.writeInt(value);
+    }
+
+    private static void writeChars(DataOutputStream output, char[] values) throws IOException {
+        output.writeInt(values.length);
+        for (char value : values) output.writeChar(value);
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] values) throws IOException {
+        output.writeInt(values.length);
+        output.write(values);
+    }
+
+    private static int[] readInts(DataInputStream input) throws IOException {
+        int[] values = new int[checkedLength(input)];
+        for (int i = 0; i < values.length; i++) values[i] = input.readInt();
+        return values;
+    }
+
+    private static char[] readChars(DataInputStream input) throws IOException {
+        char[] values = new char[checkedLength(input)];
+        for (int i = 0; i < values.length; i++) values[i] = input.readChar();
+        return values;
+    }
+
+    private static byte[] readBytes(DataInputStream input) throws IOException {
+        byte[] values = new byte[checkedLength(input)];
+        input.readFully(values);
+        return values;
+    }
+
+    private static int checkedLength(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > 64 * 1024 * 1024) throw new IOException("Corrupt blocklist");
+        return length;
+    }
+
+    /**
+     * Pointer-based trie used only while compiling.
+     */
+    private static final class TrieBuilder {
+
+        static final class Node {
+            final TreeMap<Character, Node> children = new TreeMap<>();
+            byte flags;
+            List<String> paths;
+            List<Byte> pathFlags;
+        }
+
+        static final class Flat {
+            int[] childStart;
+            char[] label;
+            byte[] flags;
+            int[] fail;
+            int[] pathStart;
+            String[] paths;
+            byte[] pathFlags;
+        }
+
+        private final Node mRoot = new Node();
+
+        private int mSize = 1;
+
+        private int mPathCount;
+
+        void add(String key, byte flag) {
+            node(key).flags |= flag;
+        }
+
+        void addPath(String key, String path, byte flag) {
+            Node node = node(key);
+            if (node.paths == null) {
+                node.paths = new ArrayList<>();
+                node.pathFlags = new ArrayList<>();
+            }
+            node.paths.add(path);
+            node.pathFlags.add(flag);
+            mPathCount++;
+        }
+
+        private Node node(String key) {
+            Node node = mRoot;
+            for (int i = 0; i < key.length(); i++) {
+                Character c = key.charAt(i);
+                Node next = node.children.get(c);
+                if (next == null) {
+                    next = new Node();
+                    node.children.put(c, next);
+                    mSize++;
+                }
+                node = next;
+            }
+            return node;
+        }
+
+        /**
+         * Numbers the nodes breadth-first so siblings are consecutive and, if asked,
+         * computes Aho-Corasick failure links with their output flags folded in.
+         */
+        Flat flatten(boolean withFailureLinks) {
+            Flat flat = new Flat();
+            flat.childStart = new int[mSize + 1];
+            flat.label = new char[mSize];
+            flat.flags = new byte[mSize];
+            flat.pathStart = new int[mSize + 1];
+            flat.paths = new String[mPathCount];
+            flat.pathFlags = new byte[mPathCount];
+            if (withFailureLinks) flat.fail = new int[mSize];
+
+            List<Node> order = new ArrayList<>(mSize);
+            order.add(mRoot);
+            int next = 1;
+            int path = 0;
+            for (int id = 0; id < order.size(); id++) {
+                Node node = order.get(id);
+                flat.flags[id] = node.flags;
+                flat.pathStart[id] = path;
+                if (node.paths != null) {
+                    for (int i = 0; i < node.paths.size(); i++) {
+                        flat.paths[path] = node.paths.get(i);
+                        flat.pathFlags[path++] = node.pathFlags.get(i);
+                    }
+                }
+                flat.childStart[id] = next;
+                for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+                    flat.label[next] = child.getKey();
+                    order.add(child.getValue());
+                    next++;
+                }
+            }
+            flat.childStart[mSize] = next;
+            flat.pathStart[mSize] = path;
+
+            if (withFailureLinks) {
+                // Breadth-first order guarantees a node's failure target is final
+                // before the node itself is processed.
+                ArrayDeque<Integer> queue = new ArrayDeque<>();
+                for (int c = flat.childStart[0]; c < flat.childStart[1]; c++) {
+                    flat.fail[c] = 0;
+                    queue.add(c);
+                }
+                while (!queue.isEmpty()) {
+                    int node = queue.poll();
+                    for (int c = flat.childStart[node]; c < flat.childStart[node + 1]; c++) {
+                        int state = flat.fail[node];
+                        int target;
+                        while ((target = child(flat.childStart, flat.label, state, flat.label[c])) < 0 && state != 0) {
+                            state = flat.fail[state];
+                        }
+                        flat.fail[c] = target >= 0 && target != c ? target : 0;
+                        flat.flags[c] |= flat.flags[flat.fail[c]];
+                        queue.add(c);
+                    }
+                }
+            }
+            return flat;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "ContentBlocker[rules=%d, hostNodes=%d, patternStates=%d]",
+                             mRuleCount, mHostLabel.length, mPatternLabel.length);
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.application;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Gzip-compressed crash reports with a total byte budget and a file-count
+ * budget; the oldest reports are evicted first.
+ *
+ * The deflater, checksum and both I/O buffers are allocated when the archive is
+ * opened, and {@link #add} encodes the report into them chunk by chunk, so
+ * writing a report allocates nothing in proportion to its size. Building the
+ * report text is up to the caller. Opening reads the directory and may rewrite
+ * the index, so do it off the main thread. An index file lists the reports so
+ * they can be shown without scanning the directory.
+ * Uncompressed {@code crash_*.txt} files from older versions are adopted into
+ * the index the first time the archive is opened.
+ */
+public final class CrashArchive {
+
+    private static final String INDEX_FILE = "index";
+
+    private static final int INDEX_VERSION = 1;
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private final File mDir;
+
+    private final long mMaxBytes;
+
+    private final int mMaxFiles;
+
+    private final List<Entry> mEntries = new ArrayList<>();
+
+    private final Deflater mDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    private final CRC32 mCrc = new CRC32();
+
+    private final byte[] mInput = new byte[CHUNK_SIZE];
+
+    private final byte[] mOutput = new byte[CHUNK_SIZE];
+
+    private long mTotalBytes;
+
+    public CrashArchive(File dir, long maxBytes, int maxFiles) {
+        this.mDir = dir;
+        this.mMaxBytes = maxBytes;
+        this.mMaxFiles = maxFiles;
+        if (!readIndex()) {
+            adoptLegacyFiles();
+            trim();
+            writeIndex();
+        }
+    }
+
+    /**
+     * Compresses {@code log} into a new report and evicts old reports beyond the
+     * budgets. Returns the new entry, or null if it could not be written.
+     */
+    public synchronized Entry add(long time, CharSequence log) {
+        if (!mDir.exists() && !mDir.mkdirs()) return null;
+        String name = "crash_" + time + ".txt.gz";
+        File file = new File(mDir, name);
+        FileOutputStream output = null;
+        long rawSize;
+        try {
+            output = new FileOutputStream(file);
+            rawSize = writeGzip(log, output);
+            output.close();
+            output = null;
+        } catch (IOException e) {
+            IoUtils.closeIO(output);
+            file.delete();
+            return null;
+        }
+        Entry entry = new Entry(name, time, file.length(), rawSize);
+        mEntries.add(entry);
+        mTotalBytes += entry.size;
+        trim();
+        writeIndex();
+        return mEntries.contains(entry) ? entry : null;
+    }
+
+    /**
+     * Reports, newest first.
+     */
+    public synchronized List<Entry> list() {
+        List<Entry> entries = new ArrayList<>(mEntries);
+        Collections.reverse(entries);
+        return entries;
+    }
+
+    public synchronized long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    public String read(Entry entry) throws IOException {
+        InputStream input = new FileInputStream(new File(mDir, entry.name));
+        if (entry.name.endsWith(".gz")) {
+            input = new GZIPInputStream(input, CHUNK_SIZE);
+        }
+        return IoUtils.toString(input);
+    }
+
+    public synchronized void clear() {
+        for (Entry entry : mEntries) {
+            new File(mDir, entry.name).delete();
+        }
+        mEntries.clear();
+        mTotalBytes = 0;
+        writeIndex();
+    }
+
+    /**
+     * Encodes {@code log} as UTF-8 into the input buffer one chunk at a time and
+     * deflates each chunk straight to {@code output}. Returns the raw byte count.
+     */
+    private long writeGzip(CharSequence log, FileOutputStream output) throws IOException {
+        mDeflater.reset();
+        mCrc.reset();
+
+        int n = 0;
+        mOutput[n++] = (byte) GZIP_MAGIC;
+        mOutput[n++] = (byte) (GZIP_MAGIC >> 8);
+        mOutput[n++] = Deflater.DEFLATED;
+        for (int i = 0; i < 7; i++) mOutput[n++] = 0;
+        output.write(mOutput, 0, n);
+
+        long rawSize = 0;
+        int length = log.length();
+        int index = 0;
+        while (index < length) {
+            int used = 0;
+            // Leave room for the longest UTF-8 sequence.
+            while (index < length && used <= CHUNK_SIZE - 4) {
+                char c = log.charAt(index++);
+                if (c < 0x80) {
+                    mInput[used++] = (byte) c;
+                } else if (c < 0x800) {
+                    mInput[used++] = (byte) (0xc0 | (c >> 6));
+                    mInput[used++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && index < length && Character.isLowSurrogate(log.charAt(index))) {
+                    int codePoint = Character.toCodePoint(c, log.charAt(index++));
+                    mInput[used++] = (byte) (0xf0 | (codePoint >> 18));
+                    mInput[used++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    mInput[used++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    mInput[used++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else {
+                    if (Character.isSurrogate(c)) c = '?';
+                    mInput[used++] = (byte) (0xe0 | (c >> 12));
+                    mInput[used++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    mInput[used++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+            mCrc.update(mInput, 0, used);
+            rawSize += used;
+            mDeflater.setInput(mInput, 0, used);
+            while (!mDeflater.needsInput()) {
+                int deflated = mDeflater.deflate(mOutput, 0, mOutput.length);
+                if (deflated > 0) output.write(mOutput, 0, deflated);
+            }
+        }
+        mDeflater.finish();
+        while (!mDeflater.finished()) {
+            int deflated = mDeflater.deflate(mOutput, 0, mOutput.length);
+            if (deflated > 0) output.write(mOutput, 0, deflated);
+        }
+
+        long crc = mCrc.getValue();
+        n = 0;
+        for (int i = 0; i < 4; i++) mOutput[n++] = (byte) (crc >> (8 * i));
+        for (int i = 0; i < 4; i++) mOutput[n++] = (byte) (rawSize >> (8 * i));
+        output.write(mOutput, 0, n);
+        return rawSize;
+    }
+
+    private void trim() {
+        while (!mEntries.isEmpty() && (mEntries.size() > mMaxFiles || mTotalBytes > mMaxBytes)) {
+            Entry eldest = mEntries.remove(0);
+            mTotalBytes -= eldest.size;
+            new File(mDir, eldest.name).delete();
+        }
+    }
+
+    private boolean readIndex() {
+        File file = new File(mDir, INDEX_FILE);
+        if (!file.isFile()) return false;
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new FileInputStream(file));
+            if (input.readInt() != INDEX_VERSION) return false;
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(input.readUTF(), input.readLong(), input.readLong(), input.readLong());
+                mEntries.add(entry);
+                mTotalBytes += entry.size;
+            }
+            return true;
+        } catch (IOException e) {
+            mEntries.clear();
+            mTotalBytes = 0;
+            return false;
+        } finally {
+            IoUtils.closeIO(input);
+        }
+    }
+
+    private void writeIndex() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + mEntries.size() * 64);
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeInt(INDEX_VERSION);
+            output.writeInt(mEntries.size());
+            for (Entry entry : mEntries) {
+                output.writeUTF(entry.name);
+                output.writeLong(entry.time);
+                output.writeLong(entry.size);
+                output.writeLong(entry.rawSize);
+            }
+            output.flush();
+            IoUtils.writeAtomic(new File(mDir, INDEX_FILE), bytes.toByteArray());
+        } catch (IOException ignored) {}
+    }
+
+    private void adoptLegacyFiles() {
+        File[] files = mDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("crash_") && (name.endsWith(".txt") || name.endsWith(".txt.gz"));
+            }
+        });
+        if (files == null) return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            long size = file.length();
+            Entry entry = new Entry(file.getName(), file.lastModified(), size, file.getName().endsWith(".gz") ? -1 : size);
+            mEntries.add(entry);
+            mTotalBytes += size;
+        }
+    }
+
+    public static final class Entry {
+
+        public final String name;
+        public final long time;
+        public final long size;
+        /** Uncompressed size, or -1 if unknown. */
+        public final long rawSize;
+
+        Entry(String name, long time, long size, long rawSize) {
+            this.name = name;
+            this.time = time;
+            this.size = size;
+            this.rawSize = rawSize;
+        }
+
+        @Override
+        public String toString() {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date(time))
+                + "  " + size + " B" + (rawSize >= 0 ? " (" + rawSize + " B)" : "");
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.application;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Map;
+
+/**
+ * Text layout of a crash report: a "key :    value" header followed by the stack
+ * trace. The device-specific header values are collected by the caller.
+ */
+public final class CrashLog {
+
+    private CrashLog() {
+    }
+
+    public static String format(Map<String, String> head, Throwable throwable) {
+        StringBuilder builder = new StringBuilder();
+
+        for (Map.Entry<String, String> entry : head.entrySet()) {
+            if (builder.length() != 0) builder.append("\n");
+            builder.append(entry.getKey());
+            builder.append(" :    ");
+            builder.append(entry.getValue());
+        }
+
+        builder.append("\n\n");
+        builder.append(getStackTraceString(throwable));
+
+        return builder.toString();
+    }
+
+    public static String getStackTraceString(Throwable throwable) {
+        if (throwable == null) return "";
+        StringWriter writer = new StringWriter();
+        PrintWriter printWriter = new PrintWriter(writer);
+        throwable.printStackTrace(printWriter);
+        printWriter.flush();
+        return writer.toString();
+    }
+}
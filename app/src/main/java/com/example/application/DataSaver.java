@@ -0,0 +1,237 @@
+package com.example.application;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.webkit.WebResourceResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Data saver mode: images are blocked, loaded as is, or downscaled and
+ * recompressed to WebP, as chosen per host from the main menu.
+ *
+ * Off unless enabled from the main menu. Images whose longer side is at least
+ * twice {@link #MAX_DIMENSION} are decoded at a power-of-two fraction of
+ * their size; everything is re-encoded at {@link #QUALITY} and only kept if
+ * smaller. At most {@link #THREADS} images are transcoded at once with
+ * {@link #QUEUE_SIZE} waiting; the rest are served unchanged. The work itself
+ * is done by {@link ImageSaver}. Safe to call from any thread, including
+ * shouldInterceptRequest.
+ */
+public class DataSaver {
+
+    public static final String PREF_ENABLED = "data_saver_enabled";
+
+    private static final String PREF_POLICIES = "data_saver_policies";
+
+    private static final int QUALITY = 60;
+
+    private static final int MAX_DIMENSION = 1280;
+
+    private static final int THREADS = 2;
+
+    private static final int QUEUE_SIZE = 8;
+
+    private static final long TRANSCODE_TIMEOUT_MS = 3000;
+
+    private static final long CACHE_BYTES = 8 * 1024 * 1024;
+
+    private static DataSaver sInstance;
+
+    private final SharedPreferences mPrefs;
+
+    private final ImageSaver mSaver;
+
+    // Tab id -> the page it shows, set on the main thread and read on the network threads.
+    private final ConcurrentHashMap<Integer, Page> mPages = new ConcurrentHashMap<>();
+
+    private static class Page {
+
+        final String url;
+        final ImageSaver.Stats stats = new ImageSaver.Stats();
+
+        Page(String url) {
+            this.url = url;
+        }
+    }
+
+    public static synchronized DataSaver getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DataSaver(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private DataSaver(Context context) {
+        this.mPrefs = context.getSharedPreferences("browser_prefs", Context.MODE_PRIVATE);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                                                             new ArrayBlockingQueue<Runnable>(QUEUE_SIZE));
+        executor.allowCoreThreadTimeOut(true);
+        this.mSaver = new ImageSaver(executor, new ImageSaver.Transcoder() {
+            @Override
+            public ImageSaver.Image transcode(byte[] image, String mimeType) {
+                return toWebp(image);
+            }
+        }, TRANSCODE_TIMEOUT_MS, CACHE_BYTES);
+        for (String entry : mPrefs.getStringSet(PREF_POLICIES, new HashSet<String>())) {
+            int separator = entry.lastIndexOf('=');
+            if (separator <= 0) continue;
+            try {
+                mSaver.setPolicy(entry.substring(0, separator), ImageSaver.Policy.valueOf(entry.substring(separator + 1)));
+            } catch (IllegalArgumentException e) {
+                // A policy from a newer version; ignore it.
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return mPrefs.getBoolean(PREF_ENABLED, false);
+    }
+
+    public void setEnabled(boolean enabled) {
+        mPrefs.edit().putBoolean(PREF_ENABLED, enabled).apply();
+        if (!enabled) mSaver.clearCache();
+    }
+
+    /**
+     * The policy set for exactly {@code host}, or null if it uses the default.
+     */
+    public ImageSaver.Policy getPolicy(String host) {
+        return mSaver.getPolicies().get(host.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Sets the policy for {@code host} and its subdomains; null goes back to
+     * the default.
+     */
+    public void setPolicy(String host, ImageSaver.Policy policy) {
+        mSaver.setPolicy(host, policy);
+        Set<String> entries = new HashSet<>();
+        for (Map.Entry<String, ImageSaver.Policy> entry : mSaver.getPolicies().entrySet()) {
+            entries.add(entry.getKey() + "=" + entry.getValue().name());
+        }
+        mPrefs.edit().putStringSet(PREF_POLICIES, entries).apply();
+    }
+
+    /**
+     * Starts counting for a new page in tab {@code tabId}. Main thread only.
+     */
+    public void startPage(int tabId, String url) {
+        mPages.put(tabId, new Page(url));
+    }
+
+    /**
+     * Stops counting for the page in tab {@code tabId}, when the next one
+     * starts or the tab is closed, and returns e.g. {@code https://...: 图片 12 ...};
+     * null if it saw no images. Images keep loading after onPageFinished, so
+     * that is too early. Main thread only.
+     */
+    public String finishPage(int tabId) {
+        Page page = mPages.remove(tabId);
+        if (page == null || page.stats.images.get() + page.stats.blocked.get() == 0) return null;
+        return page.url + ": " + page.stats.format();
+    }
+
+    /**
+     * The policy for an image requested by the page in tab {@code tabId}.
+     */
+    public ImageSaver.Policy policyFor(int tabId, String url) {
+        Page page = mPages.get(tabId);
+        return mSaver.policyFor(page != null ? page.url : null, url);
+    }
+
+    /**
+     * An empty response for a blocked image.
+     */
+    public WebResourceResponse block(int tabId) {
+        Page page = mPages.get(tabId);
+        mSaver.recordBlocked(page != null ? page.stats : null);
+        return new WebResourceResponse("image/png", null, new ByteArrayInputStream(new byte[0]));
+    }
+
+    /**
+     * Loads and recompresses an image, or passes on the response as it came;
+     * null means the WebView should load it itself. Blocks, so only call it
+     * from shouldInterceptRequest.
+     */
+    public ImageSaver.Image load(int tabId, String url, Map<String, String> requestHeaders) {
+        Page page = mPages.get(tabId);
+        return mSaver.load(url, requestHeaders, page != null ? page.stats : null);
+    }
+
+    public static WebResourceResponse toResponse(ImageSaver.Image image) {
+        return new WebResourceResponse(image.mimeType, null, image.statusCode, image.reasonPhrase, image.headers, image.body());
+    }
+
+    /**
+     * Drops the cached recompressed images; returns how many bytes were freed.
+     */
+    public long trimMemory() {
+        return mSaver.clearCache();
+    }
+
+    public String formatReport() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("省流模式: ").append(isEnabled() ? "开启" : "关闭").append('\n');
+        builder.append("累计: ").append(mSaver.getTotal().format()).append('\n');
+        builder.append(String.format(Locale.ROOT, "压缩缓存: %.1fKB / %dKB\n", mSaver.cacheSize() / 1024.0, CACHE_BYTES / 1024));
+        Map<String, ImageSaver.Policy> policies = mSaver.getPolicies();
+        builder.append("站点策略: ").append(policies.isEmpty() ? "无" : "").append('\n');
+        for (Map.Entry<String, ImageSaver.Policy> entry : policies.entrySet()) {
+            builder.append("  ").append(entry.getKey()).append(": ").append(label(entry.getValue())).append('\n');
+        }
+        return builder.toString();
+    }
+
+    public static String label(ImageSaver.Policy policy) {
+        switch (policy) {
+            case ALLOW:
+                return "原图";
+            case BLOCK:
+                return "屏蔽";
+            default:
+                return "压缩";
+        }
+    }
+
+    /**
+     * Runs on the transcoding pool.
+     */
+    private static ImageSaver.Image toWebp(byte[] image) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+        int sampleSize = 1;
+        while (Math.max(options.outWidth, options.outHeight) / (sampleSize * 2) >= MAX_DIMENSION) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        if (bitmap == null) return null;
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(image.length / 2);
+            if (!bitmap.compress(webpFormat(), QUALITY, output)) return null;
+            return new ImageSaver.Image("image/webp", output.toByteArray(), image.length, null);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+}
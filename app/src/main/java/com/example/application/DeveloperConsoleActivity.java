@@ -3,34 +3,92 @@ package com.example.application;
 import android.content.ClipData;
 import android.content.ClipboardManager;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.SharedPreferences;
+import android.graphics.Typeface;
+import android.net.Uri;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.provider.DocumentsContract;
+import android.util.Log;
+import android.util.TypedValue;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.CompoundButton;
+import android.widget.HorizontalScrollView;
+import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
+import androidx.activity.result.ActivityResultCallback;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.button.MaterialButton;
+import com.google.android.material.checkbox.MaterialCheckBox;
+import com.google.android.material.chip.ChipGroup;
+import com.google.android.material.progressindicator.LinearProgressIndicator;
 import com.google.android.material.switchmaterial.SwitchMaterial;
-import java.util.ArrayList;
-import java.util.HashSet;
+import com.google.android.material.textfield.TextInputEditText;
+import com.google.android.material.textfield.TextInputLayout;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.AbstractList;
+import java.util.Date;
 import java.util.List;
-import java.util.Set;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.PatternSyntaxException;
 
 public class DeveloperConsoleActivity extends AppCompatActivity {
 
+    private static final int MAX_SLOW_REPORTS = 20;
+
+    private static final long[] MAIN_THREAD_THRESHOLDS = { 50, 100, 200, 500, 1000 };
+
     private SwitchMaterial logSwitch;
     private RecyclerView logRecyclerView;
     private MaterialButton clearLogsButton;
-    private List<String> logList;
+    private TextInputLayout filterInputLayout;
+    private TextInputEditText filterEditText;
+    private ChipGroup typeChipGroup;
+    private MaterialCheckBox regexCheckBox;
     private LogAdapter adapter;
     private SharedPreferences prefs;
+    private LogSink logSink;
+    private LogCodec.Reader reader = LogCodec.Reader.empty();
+    // Only used on the main thread, when rows are bound.
+    private final SimpleDateFormat timeFormat = LogRecord.newTimeFormat();
+    private final LogRecord boundRecord = new LogRecord();
+    private final StringBuilder boundText = new StringBuilder();
+    private final ExecutorService filterExecutor = Executors.newSingleThreadExecutor();
+    private AtomicBoolean filterCancelled;
+    // The last filter whose scan completed, and its matches; a refining query only rescans those.
+    private LogFilter doneFilter;
+    private int[] doneMatches;
+    private int doneCount;
+    private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor();
+    private AtomicBoolean exportCancelled;
+
+    private final ActivityResultLauncher<String> exportLauncher = registerForActivityResult(
+        new ActivityResultContracts.CreateDocument("application/gzip"), new ActivityResultCallback<Uri>() {
+            @Override
+            public void onActivityResult(Uri uri) {
+                if (uri != null) exportLogs(uri);
+            }
+        });
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -42,11 +100,15 @@ public class DeveloperConsoleActivity extends AppCompatActivity {
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
 
         prefs = getSharedPreferences("browser_prefs", MODE_PRIVATE);
-        logList = loadLogs();
+        logSink = LogSink.getInstance(this);
 
         logSwitch = findViewById(R.id.log_switch);
         logRecyclerView = findViewById(R.id.log_recycler_view);
         clearLogsButton = findViewById(R.id.clear_logs_button);
+        filterInputLayout = findViewById(R.id.filter_input_layout);
+        filterEditText = findViewById(R.id.filter_edit_text);
+        typeChipGroup = findViewById(R.id.type_chip_group);
+        regexCheckBox = findViewById(R.id.regex_check_box);
 
         logSwitch.setChecked(prefs.getBoolean("logging_enabled", false));
         logSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
@@ -57,13 +119,36 @@ public class DeveloperConsoleActivity extends AppCompatActivity {
             }
         });
 
-        adapter = new LogAdapter(logList);
+        adapter = new LogAdapter();
         logRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         logRecyclerView.setAdapter(adapter);
 
-        if (logList.isEmpty()) {
-            Toast.makeText(this, R.string.no_logs, Toast.LENGTH_SHORT).show();
-        }
+        filterEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                applyFilter();
+            }
+        });
+        typeChipGroup.setOnCheckedStateChangeListener(new ChipGroup.OnCheckedStateChangeListener() {
+            @Override
+            public void onCheckedChanged(@NonNull ChipGroup group, @NonNull List<Integer> checkedIds) {
+                applyFilter();
+            }
+        });
+        regexCheckBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                applyFilter();
+            }
+        });
+
+        loadLogs();
 
         clearLogsButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -73,58 +158,307 @@ public class DeveloperConsoleActivity extends AppCompatActivity {
         });
     }
 
-    private List<String> loadLogs() {
-        Set<String> logSet = prefs.getStringSet("logs", new HashSet<String>());
-        return new ArrayList<>(logSet);
-    }
-
-    private void saveLogs(List<String> logs) {
-        SharedPreferences.Editor editor = prefs.edit();
-        Set<String> logSet = new HashSet<>(logs);
-        editor.putStringSet("logs", logSet);
-        editor.apply();
+    private void loadLogs() {
+        logSink.load(new LogSink.Callback<LogCodec.Reader>() {
+            @Override
+            public void onResult(LogCodec.Reader result) {
+                if (isFinishing()) return;
+                setReader(result);
+                if (result.size() == 0) {
+                    Toast.makeText(DeveloperConsoleActivity.this, R.string.no_logs, Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
     }
 
     private void clearLogs() {
-        logList.clear();
-        saveLogs(logList);
-        adapter.notifyDataSetChanged();
+        logSink.clear();
+        setReader(LogCodec.Reader.empty());
         Toast.makeText(this, "日志已清除", Toast.LENGTH_SHORT).show();
     }
 
+    private void setReader(LogCodec.Reader reader) {
+        this.reader = reader;
+        doneFilter = null;
+        doneMatches = null;
+        applyFilter();
+    }
+
+    /**
+     * Starts filtering for the current query, cancelling the previous scan.
+     * Matches are shown chunk by chunk as the background scan finds them.
+     */
+    private void applyFilter() {
+        if (filterCancelled != null) filterCancelled.set(true);
+        int checked = typeChipGroup.getCheckedChipId();
+        int type = checked == R.id.chip_page ? LogFilter.TYPE_PAGE
+            : checked == R.id.chip_resource ? LogFilter.TYPE_RESOURCE : LogFilter.TYPE_ALL;
+        final LogFilter filter;
+        try {
+            filter = new LogFilter(filterEditText.getText().toString(), regexCheckBox.isChecked(), type);
+        } catch (PatternSyntaxException e) {
+            filterInputLayout.setError("正则表达式无效");
+            return;
+        }
+        filterInputLayout.setError(null);
+        if (filter.isEmpty()) {
+            filterInputLayout.setHelperText(null);
+            doneFilter = null;
+            doneMatches = null;
+            adapter.setLogs(new LogList(reader), false);
+            return;
+        }
+
+        final LogCodec.Reader target = reader;
+        final boolean refining = doneMatches != null && filter.refines(doneFilter);
+        final int[] candidates = refining ? doneMatches : null;
+        final int candidateCount = refining ? doneCount : 0;
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        filterCancelled = cancelled;
+        filterExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    filter.scan(target, candidates, candidateCount, new LogFilter.Sink() {
+                        private boolean first = true;
+
+                        @Override
+                        public void onMatches(final int[] matches, final int count, final boolean done) {
+                            final boolean append = !first;
+                            first = false;
+                            runOnUiThread(new Runnable() {
+
+                                    @Override
+                                    public void run() {
+                                        if (cancelled.get() || isFinishing()) return;
+                                        adapter.setLogs(new LogList(target, matches, count), append);
+                                        filterInputLayout.setHelperText(count + " 条" + (done ? "" : "…"));
+                                        if (done) {
+                                            doneFilter = filter;
+                                            doneMatches = matches;
+                                            doneCount = count;
+                                        }
+                                    }
+                                });
+                        }
+                    }, cancelled);
+                }
+            });
+    }
+
+    /**
+     * Streams every stored log record to {@code uri} as gzip-compressed NDJSON
+     * on a background thread, with a progress dialog that can cancel it. A
+     * cancelled or failed export deletes the partial file.
+     */
+    private void exportLogs(final Uri uri) {
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        exportCancelled = cancelled;
+        final LinearProgressIndicator progress = new LinearProgressIndicator(this);
+        progress.setIndeterminate(true);
+        int padding = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 24, getResources().getDisplayMetrics());
+        progress.setPadding(padding, padding, padding, 0);
+        final AlertDialog dialog = new AlertDialog.Builder(this)
+            .setTitle(R.string.export_logs)
+            .setView(progress)
+            .setCancelable(false)
+            .setNegativeButton(android.R.string.cancel, new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    cancelled.set(true);
+                }
+            })
+            .show();
+
+        logSink.load(new LogSink.Callback<LogCodec.Reader>() {
+            @Override
+            public void onResult(final LogCodec.Reader reader) {
+                exportExecutor.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            final String result = export(reader, uri, cancelled, progress);
+                            runOnUiThread(new Runnable() {
+
+                                    @Override
+                                    public void run() {
+                                        if (isFinishing()) return;
+                                        dialog.dismiss();
+                                        Toast.makeText(DeveloperConsoleActivity.this, result, Toast.LENGTH_SHORT).show();
+                                    }
+                                });
+                        }
+                    });
+            }
+        });
+    }
+
+    /**
+     * Runs on {@link #exportExecutor}; returns the message to show.
+     */
+    private String export(LogCodec.Reader reader, Uri uri, AtomicBoolean cancelled, final LinearProgressIndicator progress) {
+        OutputStream output = null;
+        boolean done = false;
+        try {
+            output = getContentResolver().openOutputStream(uri, "w");
+            if (output == null) throw new IOException("Cannot open " + uri);
+            int count = LogExporter.export(reader, output, new LogExporter.Listener() {
+                @Override
+                public void onProgress(final int exported, final int total) {
+                    runOnUiThread(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                progress.setIndeterminate(false);
+                                progress.setMax(total);
+                                progress.setProgress(exported);
+                            }
+                        });
+                }
+            }, cancelled);
+            output.close();
+            output = null;
+            done = true;
+            return "已导出 " + count + " 条日志";
+        } catch (CancellationException e) {
+            return "导出已取消";
+        } catch (IOException e) {
+            Log.w("DeveloperConsole", "Log export failed", e);
+            return "导出失败: " + e.getMessage();
+        } finally {
+            IoUtils.closeIO(output);
+            if (!done) deleteDocument(uri);
+        }
+    }
+
+    private void deleteDocument(Uri uri) {
+        try {
+            DocumentsContract.deleteDocument(getContentResolver(), uri);
+        } catch (Exception e) {
+            // The provider may not support deletion; an incomplete file is left behind.
+            Log.w("DeveloperConsole", "Cannot delete " + uri, e);
+        }
+    }
+
+    /**
+     * One log record in a {@link LogCodec.Reader}; it is only decoded and
+     * formatted when bound.
+     */
+    private static class LogItem {
+
+        final LogCodec.Reader reader;
+        final int index;
+        final long id;
+
+        LogItem(LogCodec.Reader reader, int index) {
+            this.reader = reader;
+            this.index = index;
+            this.id = reader.getRecordId(index);
+        }
+
+        void format(LogRecord into, StringBuilder builder, SimpleDateFormat timeFormat) {
+            reader.get(index, into);
+            builder.setLength(0);
+            into.format(builder, timeFormat);
+        }
+    }
+
+    /**
+     * Newest-first list view over a reader, or over the reader indices that
+     * matched a filter, that creates items on demand so no record is
+     * materialized before it is shown.
+     */
+    private static class LogList extends AbstractList<LogItem> {
+
+        private final LogCodec.Reader reader;
+
+        private final int[] indices;
+
+        private final int size;
+
+        LogList(LogCodec.Reader reader) {
+            this.reader = reader;
+            this.indices = null;
+            this.size = reader.size();
+        }
+
+        LogList(LogCodec.Reader reader, int[] indices, int size) {
+            this.reader = reader;
+            this.indices = indices;
+            this.size = size;
+        }
+
+        @Override
+        public LogItem get(int position) {
+            return new LogItem(reader, indices != null ? indices[position] : reader.size() - 1 - position);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Filter results arrive in growing chunks with an unchanged prefix, so they
+     * are announced as insertions instead of being diffed.
+     */
     private class LogAdapter extends RecyclerView.Adapter<LogViewHolder> {
 
-        private List<String> logs;
+        private LogList logs = new LogList(LogCodec.Reader.empty());
 
-        public LogAdapter(List<String> logs) {
+        public LogAdapter() {
+            setHasStableIds(true);
+        }
+
+        /**
+         * Shows {@code logs}; if {@code append}, it extends the current list.
+         */
+        void setLogs(LogList logs, boolean append) {
+            int oldSize = this.logs.size();
             this.logs = logs;
+            if (append && logs.size() >= oldSize) {
+                notifyItemRangeInserted(oldSize, logs.size() - oldSize);
+            } else {
+                notifyDataSetChanged();
+            }
+        }
+
+        LogItem getItem(int position) {
+            return logs.get(position);
         }
 
-        @NonNull
         @Override
-        public LogViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-            View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.log_item, parent, false);
-            return new LogViewHolder(view);
+        public int getItemCount() {
+            return logs.size();
         }
 
         @Override
-        public void onBindViewHolder(@NonNull LogViewHolder holder, final int position) {
-            final String log = logs.get(position);
-            holder.logTextView.setText(log);
+        public long getItemId(int position) {
+            return getItem(position).id;
+        }
+
+        @NonNull
+        @Override
+        public LogViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.log_item, parent, false);
+            final LogViewHolder holder = new LogViewHolder(view);
             holder.copyButton.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
                     ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
-                    ClipData clip = ClipData.newPlainText("Log", log);
+                    ClipData clip = ClipData.newPlainText("Log", holder.logTextView.getText());
                     clipboard.setPrimaryClip(clip);
                     Toast.makeText(DeveloperConsoleActivity.this, "已复制到剪贴板", Toast.LENGTH_SHORT).show();
                 }
             });
+            return holder;
         }
 
         @Override
-        public int getItemCount() {
-            return logs.size();
+        public void onBindViewHolder(@NonNull LogViewHolder holder, int position) {
+            getItem(position).format(boundRecord, boundText, timeFormat);
+            holder.logTextView.setText(boundText.toString());
         }
     }
 
@@ -139,6 +473,195 @@ public class DeveloperConsoleActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.console_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.menu_main_thread_monitor).setChecked(MainThreadMonitor.getInstance(this).isEnabled());
+        menu.findItem(R.id.menu_frame_monitor).setChecked(FrameMonitor.getInstance(this).isEnabled());
+        menu.findItem(R.id.menu_prerender).setChecked(Prefetcher.getInstance(this).isPrerenderEnabled());
+        menu.findItem(R.id.menu_snapshots).setChecked(SnapshotStore.getInstance(this).isEnabled());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.menu_startup_timeline) {
+            showStartupTimeline();
+            return true;
+        } else if (item.getItemId() == R.id.menu_page_metrics) {
+            String report = PageMetrics.getInstance(this).formatReport();
+            if (report.isEmpty()) {
+                Toast.makeText(this, R.string.no_page_metrics, Toast.LENGTH_SHORT).show();
+            } else {
+                showReport(getString(R.string.page_metrics), report);
+            }
+            return true;
+        } else if (item.getItemId() == R.id.menu_crash_logs) {
+            showCrashLogs();
+            return true;
+        } else if (item.getItemId() == R.id.menu_main_thread_monitor) {
+            MainThreadMonitor.getInstance(this).setEnabled(!item.isChecked());
+            item.setChecked(!item.isChecked());
+            return true;
+        } else if (item.getItemId() == R.id.menu_export_logs) {
+            String time = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date());
+            exportLauncher.launch("browser-logs-" + time + ".ndjson.gz");
+            return true;
+        } else if (item.getItemId() == R.id.menu_prefetch) {
+            showReport(getString(R.string.prefetch_stats), Prefetcher.getInstance(this).formatReport());
+            return true;
+        } else if (item.getItemId() == R.id.menu_data_saver_stats) {
+            showReport(getString(R.string.data_saver_stats), DataSaver.getInstance(this).formatReport());
+            return true;
+        } else if (item.getItemId() == R.id.menu_prerender) {
+            Prefetcher.getInstance(this).setPrerenderEnabled(!item.isChecked());
+            item.setChecked(!item.isChecked());
+            return true;
+        } else if (item.getItemId() == R.id.menu_snapshots) {
+            SnapshotStore.getInstance(this).setEnabled(!item.isChecked());
+            item.setChecked(!item.isChecked());
+            return true;
+        } else if (item.getItemId() == R.id.menu_memory) {
+            showReport(getString(R.string.memory_status), MemoryPressureManager.getInstance(this).formatReport());
+            return true;
+        } else if (item.getItemId() == R.id.menu_frame_monitor) {
+            FrameMonitor.getInstance(this).setEnabled(!item.isChecked());
+            item.setChecked(!item.isChecked());
+            return true;
+        } else if (item.getItemId() == R.id.menu_main_thread_threshold) {
+            showMainThreadThreshold();
+            return true;
+        } else if (item.getItemId() == R.id.menu_main_thread_report) {
+            MainThreadMonitor.getInstance(this).loadReport(MAX_SLOW_REPORTS, new MainThreadMonitor.Callback<String>() {
+                @Override
+                public void onResult(String report) {
+                    if (!isFinishing()) showReport(getString(R.string.main_thread_report), report);
+                }
+            });
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Lets the user pick how long a main thread message may run before it is
+     * reported as slow.
+     */
+    private void showMainThreadThreshold() {
+        final MainThreadMonitor monitor = MainThreadMonitor.getInstance(this);
+        String[] labels = new String[MAIN_THREAD_THRESHOLDS.length];
+        int checked = -1;
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = MAIN_THREAD_THRESHOLDS[i] + " ms";
+            if (MAIN_THREAD_THRESHOLDS[i] == monitor.getThresholdMillis()) checked = i;
+        }
+        new AlertDialog.Builder(this)
+            .setTitle(R.string.main_thread_threshold)
+            .setSingleChoiceItems(labels, checked, new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    monitor.setThresholdMillis(MAIN_THREAD_THRESHOLDS[which]);
+                    dialog.dismiss();
+                }
+            })
+            .setNegativeButton(android.R.string.cancel, null)
+            .show();
+    }
+
+    private void showStartupTimeline() {
+        StartupTrace.load(this, new StartupTrace.Callback<List<StartupTrace.Launch>>() {
+            @Override
+            public void onResult(List<StartupTrace.Launch> launches) {
+                if (isFinishing()) return;
+                if (launches.isEmpty()) {
+                    Toast.makeText(DeveloperConsoleActivity.this, R.string.no_startup_trace, Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                StringBuilder builder = new StringBuilder();
+                for (int i = launches.size() - 1; i >= 0; i--) {
+                    builder.append(launches.get(i).format()).append('\n');
+                }
+                showReport(getString(R.string.startup_timeline), builder.toString());
+            }
+        });
+    }
+
+    /**
+     * Lists the archived crashes from the archive index and shows the newest
+     * report in full; the report is decompressed off the main thread.
+     */
+    private void showCrashLogs() {
+        final CrashArchive archive = GlobalApplication.CrashHandler.getInstance().getCrashArchive();
+        final List<CrashArchive.Entry> entries = archive != null ? archive.list() : null;
+        if (entries == null || entries.isEmpty()) {
+            Toast.makeText(this, R.string.no_crash_logs, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    final StringBuilder builder = new StringBuilder();
+                    builder.append("共 ").append(entries.size()).append(" 条, ")
+                        .append(archive.getTotalBytes() / 1024).append(" KB\n");
+                    for (CrashArchive.Entry entry : entries) {
+                        builder.append(entry).append('\n');
+                    }
+                    builder.append("\n最近一次:\n");
+                    try {
+                        builder.append(archive.read(entries.get(0)));
+                    } catch (IOException e) {
+                        builder.append(e);
+                    }
+                    runOnUiThread(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                if (!isFinishing()) showReport(getString(R.string.crash_logs), builder.toString());
+                            }
+                        });
+                }
+            }).start();
+    }
+
+    /**
+     * Shows preformatted text in a scrollable monospace dialog.
+     */
+    private void showReport(String title, String text) {
+        TextView textView = new TextView(this);
+        textView.setTypeface(Typeface.MONOSPACE);
+        textView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 11);
+        textView.setTextIsSelectable(true);
+        int padding = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 16, getResources().getDisplayMetrics());
+        textView.setPadding(padding, padding, padding, padding);
+        textView.setText(text);
+
+        HorizontalScrollView horizontal = new HorizontalScrollView(this);
+        horizontal.addView(textView);
+        ScrollView scrollView = new ScrollView(this);
+        scrollView.addView(horizontal);
+
+        new AlertDialog.Builder(this)
+            .setTitle(title)
+            .setView(scrollView)
+            .setPositiveButton(android.R.string.ok, null)
+            .show();
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (exportCancelled != null) exportCancelled.set(true);
+        exportExecutor.shutdown();
+        if (filterCancelled != null) filterCancelled.set(true);
+        filterExecutor.shutdown();
+        super.onDestroy();
+    }
+
     @Override
     public boolean onSupportNavigateUp() {
         finish();
@@ -0,0 +1,166 @@
+package com.example.application;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import android.view.Choreographer;
+import java.util.Locale;
+
+/**
+ * Measures frame intervals on the main thread with {@link Choreographer} and
+ * summarizes them per page.
+ *
+ * A frame is slow when it takes longer than one and a half refresh intervals,
+ * i.e. at least one vsync was missed, and frozen when it takes longer than
+ * {@link #FROZEN_FRAME_NANOS}. Intervals are recorded in microseconds into a
+ * {@link LatencyHistogram}, so the per-frame callback does not allocate. Frames
+ * are attributed to a page from the moment it starts loading, so frames drawn
+ * during the load count too; when the next page starts, the summary is written
+ * to the {@link LogSink} logs. Only runs while enabled from the developer
+ * console and while {@code MainActivity} is resumed. Main thread only.
+ */
+public class FrameMonitor implements Choreographer.FrameCallback {
+
+    private static final String TAG = "FrameMonitor";
+
+    public static final String PREF_ENABLED = "frame_monitor_enabled";
+
+    private static final long FROZEN_FRAME_NANOS = 700 * 1000000L;
+
+    private static final long HIGHEST_FRAME_MICROS = 10 * 1000 * 1000;
+
+    private static FrameMonitor sInstance;
+
+    private final SharedPreferences mPrefs;
+
+    private final LogSink mLogSink;
+
+    private final LatencyHistogram mFrames = new LatencyHistogram(HIGHEST_FRAME_MICROS);
+
+    private boolean mRunning;
+
+    private long mLastFrameNanos;
+
+    private long mFrameIntervalNanos = 16666667;
+
+    private String mUrl;
+
+    private long mSlowFrames;
+
+    private long mFrozenFrames;
+
+    private long mDroppedFrames;
+
+    public static synchronized FrameMonitor getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new FrameMonitor(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private FrameMonitor(Context context) {
+        this.mPrefs = context.getSharedPreferences("browser_prefs", Context.MODE_PRIVATE);
+        this.mLogSink = LogSink.getInstance(context);
+    }
+
+    public boolean isEnabled() {
+        return mPrefs.getBoolean(PREF_ENABLED, false);
+    }
+
+    /**
+     * Takes effect the next time {@link #resume} is called.
+     */
+    public void setEnabled(boolean enabled) {
+        mPrefs.edit().putBoolean(PREF_ENABLED, enabled).apply();
+        if (!enabled) {
+            pause();
+            finishPage();
+        }
+    }
+
+    /**
+     * Starts counting frames if enabled; {@code refreshRate} is the display's
+     * refresh rate in Hz.
+     */
+    public void resume(float refreshRate) {
+        if (mRunning || !isEnabled()) return;
+        if (refreshRate >= 1) {
+            mFrameIntervalNanos = (long) (1000000000L / refreshRate);
+        }
+        mRunning = true;
+        mLastFrameNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    public void pause() {
+        if (!mRunning) return;
+        mRunning = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    /**
+     * Attributes the following frames to {@code url}.
+     */
+    public void startPage(String url) {
+        if (url.equals(mUrl)) return;
+        finishPage();
+        mUrl = url;
+    }
+
+    /**
+     * Attributes the current page's frames, including those drawn while it
+     * loaded, to {@code url}, e.g. its final URL after redirects. Starts a page
+     * if none is being measured.
+     */
+    public void renamePage(String url) {
+        if (mUrl == null) {
+            startPage(url);
+        } else {
+            mUrl = url;
+        }
+    }
+
+    /**
+     * Logs the summary for the current page, if it drew any frames, and stops
+     * attributing frames until the next {@link #startPage}.
+     */
+    public void finishPage() {
+        if (mUrl != null && mFrames.getTotalCount() > 0) {
+            String summary = formatSummary();
+            Log.i(TAG, summary);
+            mLogSink.append(summary);
+        }
+        mUrl = null;
+        mFrames.reset();
+        mSlowFrames = 0;
+        mFrozenFrames = 0;
+        mDroppedFrames = 0;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) return;
+        if (mLastFrameNanos != 0 && mUrl != null) {
+            long interval = frameTimeNanos - mLastFrameNanos;
+            mFrames.record(interval / 1000);
+            if (interval > mFrameIntervalNanos + (mFrameIntervalNanos >> 1)) {
+                mSlowFrames++;
+                mDroppedFrames += interval / mFrameIntervalNanos - 1;
+                if (interval > FROZEN_FRAME_NANOS) mFrozenFrames++;
+            }
+        }
+        mLastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private String formatSummary() {
+        long total = mFrames.getTotalCount();
+        return String.format(Locale.ROOT,
+                             "帧统计: %s\n  帧 %d  卡顿 %d (%.1f%%)  冻结 %d  丢帧 %d\n  p50 %.1fms  p90 %.1fms  p99 %.1fms  max %.1fms",
+                             mUrl, total, mSlowFrames, 100.0 * mSlowFrames / total, mFrozenFrames, mDroppedFrames,
+                             mFrames.getValueAtPercentile(50) / 1000.0,
+                             mFrames.getValueAtPercentile(90) / 1000.0,
+                             mFrames.getValueAtPercentile(99) / 1000.0,
+                             mFrames.getMax() / 1000.0);
+    }
+}
@@ -13,8 +13,8 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.text.TextUtils;
-import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.ViewGroup;
@@ -22,12 +22,9 @@ import android.widget.HorizontalScrollView;
 import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -43,50 +40,131 @@ public class GlobalApplication extends Application {
 
     private static Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
 
+    private static final long RESOURCE_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private static final int WEB_VIEW_POOL_SIZE = 1;
+
+    private static long sStartUptime;
+
+    private ResourceCache mResourceCache;
+
+    private WebViewPool mWebViewPool;
+
     @Override
     public void onCreate() {
+        sStartUptime = SystemClock.uptimeMillis();
+        int span = StartupTrace.begin("Application.onCreate");
         super.onCreate();
+        int crashSpan = StartupTrace.begin("CrashHandler.register");
         CrashHandler.getInstance().registerGlobal(this);
         CrashHandler.getInstance().registerPart(this);
+        StartupTrace.end(crashSpan);
+        mWebViewPool = new WebViewPool(this, WEB_VIEW_POOL_SIZE);
+        mWebViewPool.prewarm();
+        // Starts reading the saved tabs while the activity is being created.
+        SessionStore.getInstance(this);
+        registerMemoryHooks();
+        StartupTrace.end(span);
     }
 
-    public static void write(InputStream input, OutputStream output) throws IOException {
-        byte[] buf = new byte[1024 * 8];
-        int len;
-        while ((len = input.read(buf)) != -1) {
-            output.write(buf, 0, len);
+    /**
+     * Application-wide caches, cheapest to give up first; idle WebViews and
+     * images also go once the app is in the background. Activities register
+     * their own hooks while they exist.
+     */
+    private void registerMemoryHooks() {
+        MemoryPressureManager manager = MemoryPressureManager.getInstance(this);
+        manager.register("日志缓冲", MemoryPressureManager.RUNNING_MODERATE, new MemoryPressureManager.Releasable() {
+            @Override
+            public String release(int level) {
+                int pending = LogSink.getInstance(GlobalApplication.this).trimMemory();
+                return pending > 0 ? pending + " 条" : null;
+            }
+        });
+        manager.register("预渲染页面", MemoryPressureManager.RUNNING_MODERATE, TRIM_MEMORY_UI_HIDDEN, new MemoryPressureManager.Releasable() {
+            @Override
+            public String release(int level) {
+                return Prefetcher.getInstance(GlobalApplication.this).cancelPrerender() ? "1 个" : null;
+            }
+        });
+        manager.register("省流图片缓存", MemoryPressureManager.RUNNING_LOW, TRIM_MEMORY_BACKGROUND, new MemoryPressureManager.Releasable() {
+            @Override
+            public String release(int level) {
+                long freed = DataSaver.getInstance(GlobalApplication.this).trimMemory();
+                return freed > 0 ? freed / 1024 + " KB" : null;
+            }
+        });
+        manager.register("预热 WebView", MemoryPressureManager.RUNNING_LOW, TRIM_MEMORY_BACKGROUND, new MemoryPressureManager.Releasable() {
+            @Override
+            public String release(int level) {
+                int count = mWebViewPool.trim();
+                return count > 0 ? count + " 个" : null;
+            }
+        });
+        manager.register("网址建议索引", TRIM_MEMORY_BACKGROUND, new MemoryPressureManager.Releasable() {
+            @Override
+            public String release(int level) {
+                return UrlSuggestions.getInstance(GlobalApplication.this).trimMemory() ? "已释放" : null;
+            }
+        });
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        MemoryPressureManager.getInstance(this).onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        MemoryPressureManager.getInstance(this).onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    /**
+     * {@link SystemClock#uptimeMillis} at the start of {@link #onCreate}.
+     */
+    public static long getStartUptime() {
+        return sStartUptime;
+    }
+
+    public WebViewPool getWebViewPool() {
+        return mWebViewPool;
+    }
+
+    /**
+     * Disk cache for static sub-resources, opened on first use. Opening reads the
+     * cache index, so call this off the main thread.
+     */
+    public synchronized ResourceCache getResourceCache() {
+        if (mResourceCache == null) {
+            mResourceCache = new ResourceCache(new File(getCacheDir(), "subresources"), RESOURCE_CACHE_BYTES);
         }
+        return mResourceCache;
+    }
+
+    public static void write(InputStream input, OutputStream output) throws IOException {
+        IoUtils.write(input, output);
     }
 
     public static void write(File file, byte[] data) throws IOException {
-        File parent = file.getParentFile();
-        if (parent != null && !parent.exists()) parent.mkdirs();
-
-        ByteArrayInputStream input = new ByteArrayInputStream(data);
-        FileOutputStream output = new FileOutputStream(file);
-        try {
-            write(input, output);
-        } finally {
-            closeIO(input, output);
-        }
+        IoUtils.write(file, data);
+    }
+
+    /**
+     * Like {@link #write(File, byte[])}, but replaces the file only once the new
+     * content is fully on disk.
+     */
+    public static void writeAtomic(File file, byte[] data) throws IOException {
+        IoUtils.writeAtomic(file, data);
     }
 
     public static String toString(InputStream input) throws IOException {
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        write(input, output);
-        try {
-            return output.toString("UTF-8");
-        } finally {
-            closeIO(input, output);
-        }
+        return IoUtils.toString(input);
     }
 
     public static void closeIO(Closeable... closeables) {
-        for (Closeable closeable : closeables) {
-            try {
-                if (closeable != null) closeable.close();
-            } catch (IOException ignored) {}
-        }
+        IoUtils.closeIO(closeables);
     }
 
     public static class CrashHandler {
@@ -95,8 +173,18 @@ public class GlobalApplication extends Application {
 
         private static CrashHandler sInstance;
 
+        private static final long CRASH_ARCHIVE_BYTES = 2 * 1024 * 1024;
+
+        private static final int CRASH_ARCHIVE_FILES = 20;
+
         private PartCrashHandler mPartCrashHandler;
 
+        private Context mContext;
+
+        private String mCrashDir;
+
+        private CrashArchive mCrashArchive;
+
         public static CrashHandler getInstance() {
             if (sInstance == null) {
                 sInstance = new CrashHandler();
@@ -108,8 +196,32 @@ public class GlobalApplication extends Application {
             registerGlobal(context, null);
         }
 
+        /**
+         * Installs the handler right away and opens the crash archive on a
+         * background thread, since opening it reads or rebuilds its index. A crash
+         * that comes before that finishes opens the archive itself.
+         */
         public void registerGlobal(Context context, String crashDir) {
-            Thread.setDefaultUncaughtExceptionHandler(new UncaughtExceptionHandlerImpl(context.getApplicationContext(), crashDir));
+            synchronized (this) {
+                mContext = context.getApplicationContext();
+                mCrashDir = crashDir;
+            }
+            Thread.setDefaultUncaughtExceptionHandler(new UncaughtExceptionHandlerImpl(mContext, this));
+            new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        getCrashArchive();
+                    }
+                }, "CrashArchive").start();
+        }
+
+        public synchronized CrashArchive getCrashArchive() {
+            if (mCrashArchive == null && mContext != null) {
+                File dir = TextUtils.isEmpty(mCrashDir) ? new File(mContext.getExternalCacheDir(), "crash") : new File(mCrashDir);
+                mCrashArchive = new CrashArchive(dir, CRASH_ARCHIVE_BYTES, CRASH_ARCHIVE_FILES);
+            }
+            return mCrashArchive;
         }
 
         public void unregister() {
@@ -141,11 +253,14 @@ public class GlobalApplication extends Application {
 
             @Override
             public void run() {
+                MainThreadMonitor.attachInBackground(mContext);
                 while (isRunning.get()) {
                     try {
                         Looper.loop();
                     } catch (final Throwable e) {
                         e.printStackTrace();
+                        MainThreadMonitor monitor = MainThreadMonitor.peekInstance();
+                        if (monitor != null) monitor.abandonDispatch();
                         if (isRunning.get()) {
                             MAIN_HANDLER.post(new Runnable(){
 
@@ -170,17 +285,25 @@ public class GlobalApplication extends Application {
 
             private static DateFormat DATE_FORMAT = new SimpleDateFormat("yyyy_MM_dd-HH_mm_ss");
 
+            // Dropped before the report is built, which leaves the header and stack
+            // trace text some room after an OutOfMemoryError. It makes writing the
+            // report likely, not certain.
+            private static final int RESERVE_BYTES = 128 * 1024;
+
             private final Context mContext;
 
-            private final File mCrashDir;
+            private final CrashHandler mCrashHandler;
 
-            public UncaughtExceptionHandlerImpl(Context context, String crashDir) {
+            private byte[] mReserve = new byte[RESERVE_BYTES];
+
+            public UncaughtExceptionHandlerImpl(Context context, CrashHandler crashHandler) {
                 this.mContext = context;
-                this.mCrashDir = TextUtils.isEmpty(crashDir) ? new File(mContext.getExternalCacheDir(), "crash") : new File(crashDir);
+                this.mCrashHandler = crashHandler;
             }
 
             @Override
             public void uncaughtException(Thread thread, Throwable throwable) {
+                mReserve = null;
                 try {
 
                     String log = buildLog(throwable);
@@ -225,26 +348,13 @@ public class GlobalApplication extends Application {
                 head.put("Support Abis", Build.VERSION.SDK_INT >= 21 && Build.SUPPORTED_ABIS != null ? Arrays.toString(Build.SUPPORTED_ABIS): "unknown");
                 head.put("Fingerprint", Build.FINGERPRINT);
 
-                StringBuilder builder = new StringBuilder();
-
-                for (String key : head.keySet()) {
-                    if (builder.length() != 0) builder.append("\n");
-                    builder.append(key);
-                    builder.append(" :    ");
-                    builder.append(head.get(key));
-                }
-
-                builder.append("\n\n");
-                builder.append(Log.getStackTraceString(throwable));
-
-                return builder.toString(); 
+                return CrashLog.format(head, throwable);
             }
 
             private void writeLog(String log) {
-                String time = DATE_FORMAT.format(new Date());
-                File file = new File(mCrashDir, "crash_" + time + ".txt");
                 try {
-                    write(file, log.getBytes("UTF-8"));
+                    CrashArchive archive = mCrashHandler.getCrashArchive();
+                    if (archive != null) archive.add(System.currentTimeMillis(), log);
                 } catch (Throwable e) {
                     e.printStackTrace();
                 } 
@@ -1,7 +1,7 @@
 package com.example.application;
 
+import android.content.ComponentCallbacks2;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -10,22 +10,47 @@ import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.button.MaterialButton;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 public class HistoryActivity extends AppCompatActivity {
 
+    private static final int PAGE_SIZE = 50;
+
     private RecyclerView historyRecyclerView;
     private MaterialButton clearHistoryButton;
-    private List<String> historyList;
+    private List<HistoryStore.Entry> historyList = new ArrayList<>();
     private HistoryAdapter adapter;
-    private SharedPreferences prefs;
+    private HistoryStore historyStore;
+    private boolean loading;
+    private boolean reachedEnd;
+    private boolean reloadOnStart;
+
+    // Bumped when entries are cleared or deleted; a page queried before that is stale.
+    private int generation;
+
+    /**
+     * Drops the loaded pages while the activity is in the background; they are
+     * queried again when it comes back.
+     */
+    private final MemoryPressureManager.Releasable historyReleaser = new MemoryPressureManager.Releasable() {
+        @Override
+        public String release(int level) {
+            if (historyList.isEmpty() || loading) return null;
+            int count = historyList.size();
+            historyList.clear();
+            reachedEnd = false;
+            reloadOnStart = true;
+            adapter.submitList(new ArrayList<HistoryStore.Entry>());
+            return count + " 条";
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -36,19 +61,26 @@ public class HistoryActivity extends AppCompatActivity {
         setSupportActionBar(toolbar);
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
 
-        prefs = getSharedPreferences("browser_prefs", MODE_PRIVATE);
-        historyList = loadHistory();
+        historyStore = HistoryStore.getInstance(this);
 
         historyRecyclerView = findViewById(R.id.history_recycler_view);
         clearHistoryButton = findViewById(R.id.clear_history_button);
 
-        adapter = new HistoryAdapter(historyList);
-        historyRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        adapter = new HistoryAdapter();
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        historyRecyclerView.setLayoutManager(layoutManager);
         historyRecyclerView.setAdapter(adapter);
+        historyRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (layoutManager.findLastVisibleItemPosition() >= historyList.size() - PAGE_SIZE / 2) {
+                    loadNextPage();
+                }
+            }
+        });
 
-        if (historyList.isEmpty()) {
-            Toast.makeText(this, R.string.no_history, Toast.LENGTH_SHORT).show();
-        }
+        loadNextPage();
+        MemoryPressureManager.getInstance(this).register("历史列表", ComponentCallbacks2.TRIM_MEMORY_BACKGROUND, historyReleaser);
 
         clearHistoryButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -58,49 +90,90 @@ public class HistoryActivity extends AppCompatActivity {
         });
     }
 
-    private List<String> loadHistory() {
-        Set<String> historySet = prefs.getStringSet("history", new HashSet<String>());
-        return new ArrayList<>(historySet);
-    }
-
-    private void saveHistory(List<String> history) {
-        SharedPreferences.Editor editor = prefs.edit();
-        Set<String> historySet = new HashSet<>(history);
-        editor.putStringSet("history", historySet);
-        editor.apply();
+    private void loadNextPage() {
+        if (loading || reachedEnd) return;
+        loading = true;
+        final int queryGeneration = generation;
+        HistoryStore.Entry last = historyList.isEmpty() ? null : historyList.get(historyList.size() - 1);
+        historyStore.query(last, PAGE_SIZE, new HistoryStore.Callback<List<HistoryStore.Entry>>() {
+            @Override
+            public void onResult(List<HistoryStore.Entry> page) {
+                loading = false;
+                if (isFinishing()) return;
+                if (queryGeneration != generation) {
+                    // The store runs queries in order, so asking again sees the change.
+                    loadNextPage();
+                    return;
+                }
+                reachedEnd = page.size() < PAGE_SIZE;
+                historyList.addAll(page);
+                adapter.submitList(new ArrayList<>(historyList));
+                if (historyList.isEmpty()) {
+                    Toast.makeText(HistoryActivity.this, R.string.no_history, Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
     }
 
     private void clearHistory() {
+        generation++;
         historyList.clear();
-        saveHistory(historyList);
-        adapter.notifyDataSetChanged();
+        reachedEnd = true;
+        historyStore.clear();
+        UrlSuggestions.getInstance(this).clear();
+        SnapshotStore.getInstance(this).clear();
+        adapter.submitList(new ArrayList<HistoryStore.Entry>());
         Toast.makeText(this, "历史记录已清除", Toast.LENGTH_SHORT).show();
     }
 
-    private class HistoryAdapter extends RecyclerView.Adapter<HistoryViewHolder> {
+    private void deleteEntry(HistoryStore.Entry entry) {
+        generation++;
+        historyList.remove(entry);
+        historyStore.delete(entry.id);
+        UrlSuggestions.getInstance(this).remove(entry.url);
+        SnapshotStore.getInstance(this).remove(entry.url);
+        adapter.submitList(new ArrayList<>(historyList));
+    }
 
-        private List<String> history;
+    private static final DiffUtil.ItemCallback<HistoryStore.Entry> DIFF_CALLBACK = new DiffUtil.ItemCallback<HistoryStore.Entry>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull HistoryStore.Entry oldItem, @NonNull HistoryStore.Entry newItem) {
+            return oldItem.id == newItem.id;
+        }
 
-        public HistoryAdapter(List<String> history) {
-            this.history = history;
+        @Override
+        public boolean areContentsTheSame(@NonNull HistoryStore.Entry oldItem, @NonNull HistoryStore.Entry newItem) {
+            return oldItem.url.equals(newItem.url)
+                && oldItem.visitTime == newItem.visitTime
+                && oldItem.visitCount == newItem.visitCount;
+        }
+    };
+
+    private class HistoryAdapter extends ListAdapter<HistoryStore.Entry, HistoryViewHolder> {
+
+        public HistoryAdapter() {
+            super(DIFF_CALLBACK);
+            setHasStableIds(true);
         }
 
-        @NonNull
         @Override
-        public HistoryViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-            View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.history_item, parent, false);
-            return new HistoryViewHolder(view);
+        public long getItemId(int position) {
+            return getItem(position).id;
         }
 
+        @NonNull
         @Override
-        public void onBindViewHolder(@NonNull HistoryViewHolder holder, final int position) {
-            final String url = history.get(position);
-            holder.urlTextView.setText(url);
+        public HistoryViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.history_item, parent, false);
+            final HistoryViewHolder holder = new HistoryViewHolder(view);
             holder.urlTextView.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
+                    int position = holder.getBindingAdapterPosition();
+                    if (position == RecyclerView.NO_POSITION) return;
                     Intent intent = new Intent(HistoryActivity.this, MainActivity.class);
-                    intent.putExtra("url", url);
+                    intent.putExtra("url", getItem(position).url);
+                    intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
                     startActivity(intent);
                     finish();
                 }
@@ -108,16 +181,17 @@ public class HistoryActivity extends AppCompatActivity {
             holder.deleteButton.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    history.remove(position);
-                    saveHistory(history);
-                    notifyDataSetChanged();
+                    int position = holder.getBindingAdapterPosition();
+                    if (position == RecyclerView.NO_POSITION) return;
+                    deleteEntry(getItem(position));
                 }
             });
+            return holder;
         }
 
         @Override
-        public int getItemCount() {
-            return history.size();
+        public void onBindViewHolder(@NonNull HistoryViewHolder holder, int position) {
+            holder.urlTextView.setText(getItem(position).url);
         }
     }
 
@@ -132,6 +206,21 @@ public class HistoryActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (reloadOnStart) {
+            reloadOnStart = false;
+            loadNextPage();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        MemoryPressureManager.getInstance(this).unregister(historyReleaser);
+        super.onDestroy();
+    }
+
     @Override
     public boolean onSupportNavigateUp() {
         finish();
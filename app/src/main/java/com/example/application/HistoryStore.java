@@ -0,0 +1,315 @@
+package com.example.application;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent browsing history backed by SQLite.
+ *
+ * Every write runs on a single background thread, so visits are applied in order
+ * and never block the UI. Reads are ordered by last visit and paged by key
+ * (visit time + row id) so a page costs the same no matter how deep it is.
+ */
+public class HistoryStore extends SQLiteOpenHelper {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final String DB_NAME = "history.db";
+    private static final int DB_VERSION = 1;
+
+    private static final String TABLE = "history";
+    private static final String COL_ID = "_id";
+    private static final String COL_URL = "url";
+    private static final String COL_VISIT_TIME = "visit_time";
+    private static final String COL_VISIT_COUNT = "visit_count";
+
+    private static final String[] COLUMNS = {COL_ID, COL_URL, COL_VISIT_TIME, COL_VISIT_COUNT};
+    private static final String ORDER = COL_VISIT_TIME + " DESC, " + COL_ID + " DESC";
+
+    private static final int SNAPSHOT_PAGE_SIZE = 1000;
+
+    private static HistoryStore sInstance;
+
+    private final Context mContext;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private volatile int mMaxEntries = DEFAULT_MAX_ENTRIES;
+
+    private final AtomicLong mVisitSequence = new AtomicLong();
+
+    // Only touched on mExecutor.
+    private SQLiteStatement mUpdateVisit;
+    private SQLiteStatement mInsertVisit;
+    private long mCount = -1;
+    private long mAppliedVisit;
+
+    public static synchronized HistoryStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new HistoryStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private HistoryStore(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        this.mContext = context;
+    }
+
+    public static class Entry {
+
+        public final long id;
+        public final String url;
+        public final long visitTime;
+        public final int visitCount;
+
+        public Entry(long id, String url, long visitTime, int visitCount) {
+            this.id = id;
+            this.url = url;
+            this.visitTime = visitTime;
+            this.visitCount = visitCount;
+        }
+    }
+
+    /**
+     * Every entry, newest first, together with the sequence number of the last
+     * visit they include.
+     */
+    public static class Snapshot {
+
+        public final List<Entry> entries;
+        public final long lastVisit;
+
+        Snapshot(List<Entry> entries, long lastVisit) {
+            this.entries = entries;
+            this.lastVisit = lastVisit;
+        }
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                   + COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                   + COL_URL + " TEXT NOT NULL, "
+                   + COL_VISIT_TIME + " INTEGER NOT NULL, "
+                   + COL_VISIT_COUNT + " INTEGER NOT NULL DEFAULT 1)");
+        db.execSQL("CREATE UNIQUE INDEX history_url ON " + TABLE + " (" + COL_URL + ")");
+        db.execSQL("CREATE INDEX history_visit_time ON " + TABLE + " (" + COL_VISIT_TIME + ")");
+        migrateLegacyHistory(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    }
+
+    /**
+     * Imports the unordered StringSet that older versions kept in browser_prefs.
+     */
+    private void migrateLegacyHistory(SQLiteDatabase db) {
+        SharedPreferences prefs = mContext.getSharedPreferences("browser_prefs", Context.MODE_PRIVATE);
+        Set<String> legacy = prefs.getStringSet("history", new HashSet<String>());
+        if (legacy.isEmpty()) return;
+
+        long now = System.currentTimeMillis();
+        ContentValues values = new ContentValues();
+        for (String url : legacy) {
+            values.put(COL_URL, url);
+            values.put(COL_VISIT_TIME, now);
+            values.put(COL_VISIT_COUNT, 1);
+            db.insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        }
+        prefs.edit().remove("history").apply();
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        if (maxEntries <= 0) throw new IllegalArgumentException("maxEntries must be positive");
+        mMaxEntries = maxEntries;
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    trim(getWritableDatabase());
+                }
+            });
+    }
+
+    public int getMaxEntries() {
+        return mMaxEntries;
+    }
+
+    /**
+     * Records a visit to {@code url}; returns its sequence number, which
+     * {@link Snapshot#lastVisit} can be compared against. Main thread only, so
+     * sequence numbers are applied in order.
+     */
+    public long recordVisit(final String url) {
+        final long time = System.currentTimeMillis();
+        final long sequence = mVisitSequence.incrementAndGet();
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    upsert(url, time);
+                    mAppliedVisit = sequence;
+                }
+            });
+        return sequence;
+    }
+
+    private void upsert(String url, long time) {
+        SQLiteDatabase db = getWritableDatabase();
+        if (mUpdateVisit == null) {
+            mUpdateVisit = db.compileStatement("UPDATE " + TABLE + " SET "
+                                               + COL_VISIT_TIME + " = ?, "
+                                               + COL_VISIT_COUNT + " = " + COL_VISIT_COUNT + " + 1"
+                                               + " WHERE " + COL_URL + " = ?");
+            mInsertVisit = db.compileStatement("INSERT INTO " + TABLE + " ("
+                                               + COL_URL + ", " + COL_VISIT_TIME + ", " + COL_VISIT_COUNT
+                                               + ") VALUES (?, ?, 1)");
+        }
+
+        mUpdateVisit.bindLong(1, time);
+        mUpdateVisit.bindString(2, url);
+        if (mUpdateVisit.executeUpdateDelete() > 0) return;
+
+        mInsertVisit.bindString(1, url);
+        mInsertVisit.bindLong(2, time);
+        mInsertVisit.executeInsert();
+        if (mCount >= 0) mCount++;
+        trim(db);
+    }
+
+    private void trim(SQLiteDatabase db) {
+        if (mCount < 0) {
+            mCount = DatabaseUtils.queryNumEntries(db, TABLE);
+        }
+        long excess = mCount - mMaxEntries;
+        if (excess <= 0) return;
+
+        db.execSQL("DELETE FROM " + TABLE + " WHERE " + COL_ID + " IN (SELECT " + COL_ID + " FROM " + TABLE
+                   + " ORDER BY " + COL_VISIT_TIME + " ASC, " + COL_ID + " ASC LIMIT " + excess + ")");
+        mCount -= excess;
+    }
+
+    /**
+     * Loads the page of entries that follows {@code after} (or the newest page when
+     * {@code after} is null) and delivers it on the main thread.
+     */
+    public void query(final Entry after, final int limit, final Callback<List<Entry>> callback) {
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    final List<Entry> result = queryBlocking(after, limit);
+                    mMainHandler.post(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                callback.onResult(result);
+                            }
+                        });
+                }
+            });
+    }
+
+    /**
+     * Same as {@link #query} but runs on the calling thread. Never call this from the UI thread.
+     */
+    public List<Entry> queryBlocking(Entry after, int limit) {
+        String selection = null;
+        String[] args = null;
+        if (after != null) {
+            selection = COL_VISIT_TIME + " < ? OR (" + COL_VISIT_TIME + " = ? AND " + COL_ID + " < ?)";
+            String time = String.valueOf(after.visitTime);
+            args = new String[] {time, time, String.valueOf(after.id)};
+        }
+
+        List<Entry> result = new ArrayList<>(limit);
+        Cursor cursor = getReadableDatabase().query(TABLE, COLUMNS, selection, args, null, null, ORDER, String.valueOf(limit));
+        try {
+            while (cursor.moveToNext()) {
+                result.add(new Entry(cursor.getLong(0), cursor.getString(1), cursor.getLong(2), cursor.getInt(3)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+
+    /**
+     * Reads every entry on the write thread, so no visit lands between two
+     * pages and {@link Snapshot#lastVisit} says exactly which visits are in.
+     * Never call this from the UI thread; returns null if interrupted.
+     */
+    public Snapshot snapshotBlocking() {
+        Future<Snapshot> future = mExecutor.submit(new Callable<Snapshot>() {
+
+                @Override
+                public Snapshot call() {
+                    List<Entry> entries = new ArrayList<>();
+                    Entry last = null;
+                    while (true) {
+                        List<Entry> page = queryBlocking(last, SNAPSHOT_PAGE_SIZE);
+                        entries.addAll(page);
+                        if (page.size() < SNAPSHOT_PAGE_SIZE) break;
+                        last = page.get(page.size() - 1);
+                    }
+                    return new Snapshot(entries, mAppliedVisit);
+                }
+            });
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    public void delete(final long id) {
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    int deleted = getWritableDatabase().delete(TABLE, COL_ID + " = ?", new String[] {String.valueOf(id)});
+                    if (mCount >= 0) mCount -= deleted;
+                }
+            });
+    }
+
+    public void clear() {
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    getWritableDatabase().delete(TABLE, null, null);
+                    mCount = 0;
+                }
+            });
+    }
+}
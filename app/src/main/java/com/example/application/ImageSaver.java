@@ -0,0 +1,515 @@
+package com.example.application;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Image side of the data saver: per-host {@link Policy}s, and fetching images
+ * to hand them to a {@link Transcoder} (downscale and recompress) before the
+ * page gets them.
+ *
+ * Every image is downloaded once: responses that are not transcoded (other
+ * statuses, other types, or too large to buffer) are streamed on as they
+ * arrive instead of being left to the WebView to fetch again. Transcoding
+ * runs on the executor passed in, which should be bounded; when it rejects
+ * the work or it takes longer than {@code timeoutMillis} the original is
+ * served, so a slow device never stalls a page for long.
+ * Results are kept in memory, least recently used first, up to
+ * {@code cacheBytes}. Savings and the time spent transcoding are added to
+ * the {@link Stats} of the page that asked. No Android dependencies, so it can
+ * be exercised against a local image server on a plain JVM. Thread-safe.
+ */
+public final class ImageSaver {
+
+    public enum Policy {
+        ALLOW,
+        COMPRESS,
+        BLOCK
+    }
+
+    public interface Transcoder {
+
+        /**
+         * Returns a smaller encoding of {@code image}, or null to keep the
+         * original. Called on the transcoding executor.
+         */
+        Image transcode(byte[] image, String mimeType) throws IOException;
+    }
+
+    private static final int TIMEOUT_MS = 15000;
+
+    // Larger images are left to the WebView rather than buffered in memory.
+    private static final int MAX_IMAGE_BYTES = 8 * 1024 * 1024;
+
+    private static final String[] IMAGE_EXTENSIONS = {
+        ".png", ".jpg", ".jpeg", ".webp", ".bmp"
+    };
+
+    // Only formats a transcoder can decode to a single frame; GIF and SVG are served as is.
+    private static final String[] TRANSCODED_TYPES = {
+        "image/png", "image/jpeg", "image/jpg", "image/webp", "image/bmp"
+    };
+
+    // CORS and caching; the rest describe the original encoding or the connection.
+    private static final String[] KEPT_HEADERS = {
+        "Access-Control-Allow-Origin", "Timing-Allow-Origin", "Cache-Control", "Expires", "Last-Modified", "ETag"
+    };
+
+    private final ExecutorService mExecutor;
+
+    private final Transcoder mTranscoder;
+
+    private final long mTimeoutMillis;
+
+    private final long mCacheBytes;
+
+    private volatile Policy mDefaultPolicy = Policy.COMPRESS;
+
+    private final ConcurrentHashMap<String, Policy> mPolicies = new ConcurrentHashMap<>();
+
+    // URL -> transcoded image, least recently used first.
+    private final LinkedHashMap<String, Image> mCache = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long mCachedBytes;
+
+    private final Stats mTotal = new Stats();
+
+    /**
+     * The response to an image request: the transcoded image, or what the
+     * server sent.
+     */
+    public static final class Image {
+
+        public final int statusCode;
+        public final String reasonPhrase;
+        public final String mimeType;
+
+        /**
+         * The body, or null if it is still being downloaded through
+         * {@link #stream}.
+         */
+        public final byte[] data;
+        public final InputStream stream;
+
+        /**
+         * Size of the image this was made from, or of itself if it was not
+         * transcoded; -1 if not known.
+         */
+        public final int originalSize;
+
+        /**
+         * Response headers worth passing on, e.g. for CORS and caching.
+         */
+        public final Map<String, String> headers;
+
+        /**
+         * {@code Set-Cookie} values of the response, for the cookie store;
+         * empty when served from the cache.
+         */
+        public final List<String> cookies;
+
+        public Image(String mimeType, byte[] data, int originalSize, Map<String, String> headers) {
+            this(HttpURLConnection.HTTP_OK, "OK", mimeType, data, null, originalSize, headers, Collections.<String>emptyList());
+        }
+
+        Image(int statusCode, String reasonPhrase, String mimeType, byte[] data, InputStream stream, int originalSize,
+              Map<String, String> headers, List<String> cookies) {
+            this.statusCode = statusCode;
+            this.reasonPhrase = reasonPhrase;
+            this.mimeType = mimeType;
+            this.data = data;
+            this.stream = stream;
+            this.originalSize = originalSize;
+            this.headers = headers;
+            this.cookies = cookies;
+        }
+
+        /**
+         * The body; a streamed one can only be read once.
+         */
+        public InputStream body() {
+            return stream != null ? stream : new ByteArrayInputStream(data);
+        }
+
+        public int savedBytes() {
+            return data != null ? originalSize - data.length : 0;
+        }
+    }
+
+    /**
+     * Counters for one page, or for everything since start.
+     */
+    public static final class Stats {
+
+        public final AtomicLong images = new AtomicLong();
+        public final AtomicLong compressed = new AtomicLong();
+        public final AtomicLong cacheHits = new AtomicLong();
+        public final AtomicLong blocked = new AtomicLong();
+        public final AtomicLong skipped = new AtomicLong();
+        public final AtomicLong originalBytes = new AtomicLong();
+        public final AtomicLong servedBytes = new AtomicLong();
+        public final AtomicLong addedMillis = new AtomicLong();
+
+        public long savedBytes() {
+            return originalBytes.get() - servedBytes.get();
+        }
+
+        /**
+         * E.g. {@code 图片 12 (压缩 9, 缓存 2, 跳过 1), 屏蔽 3, 120.5KB → 48.2KB, 节省 60%, 增加 85ms}.
+         */
+        public String format() {
+            long original = originalBytes.get();
+            return String.format(Locale.ROOT, "图片 %d (压缩 %d, 缓存 %d, 跳过 %d), 屏蔽 %d, %.1fKB → %.1fKB, 节省 %.0f%%, 增加 %dms",
+                                 images.get(), compressed.get(), cacheHits.get(), skipped.get(), blocked.get(),
+                                 original / 1024.0, servedBytes.get() / 1024.0,
+                                 original > 0 ? 100.0 * savedBytes() / original : 0.0, addedMillis.get());
+        }
+    }
+
+    public ImageSaver(ExecutorService executor, Transcoder transcoder, long timeoutMillis, long cacheBytes) {
+        this.mExecutor = executor;
+        this.mTranscoder = transcoder;
+        this.mTimeoutMillis = timeoutMillis;
+        this.mCacheBytes = cacheBytes;
+    }
+
+    /**
+     * Whether a sub-resource request is for a raster image, judged by its
+     * {@code Accept} header (may be null) or the extension of its path.
+     */
+    public static boolean isImageRequest(String url, String accept) {
+        if (!url.startsWith("http://") && !url.startsWith("https://")) return false;
+        if (accept != null && accept.startsWith("image/")) return true;
+        String path = pathOf(url).toLowerCase(Locale.ROOT);
+        for (String extension : IMAGE_EXTENSIONS) {
+            if (path.endsWith(extension)) return true;
+        }
+        return false;
+    }
+
+    public void setDefaultPolicy(Policy policy) {
+        mDefaultPolicy = policy;
+    }
+
+    public Policy getDefaultPolicy() {
+        return mDefaultPolicy;
+    }
+
+    /**
+     * Sets the policy for {@code host} and its subdomains; null goes back to
+     * the default.
+     */
+    public void setPolicy(String host, Policy policy) {
+        host = host.toLowerCase(Locale.ROOT);
+        if (policy == null) {
+            mPolicies.remove(host);
+        } else {
+            mPolicies.put(host, policy);
+        }
+    }
+
+    public Map<String, Policy> getPolicies() {
+        return new LinkedHashMap<>(mPolicies);
+    }
+
+    /**
+     * The policy for an image on a page: the one set for the image's host (or
+     * a parent domain), else the one set for the page's, else the default.
+     * {@code pageUrl} may be null.
+     */
+    public Policy policyFor(String pageUrl, String imageUrl) {
+        if (mPolicies.isEmpty()) return mDefaultPolicy;
+        Policy policy = lookup(hostOf(imageUrl));
+        if (policy == null && pageUrl != null) policy = lookup(hostOf(pageUrl));
+        return policy != null ? policy : mDefaultPolicy;
+    }
+
+    private Policy lookup(String host) {
+        while (host != null) {
+            Policy policy = mPolicies.get(host);
+            if (policy != null) return policy;
+            int dot = host.indexOf('.');
+            host = dot >= 0 ? host.substring(dot + 1) : null;
+        }
+        return null;
+    }
+
+    /**
+     * Counts a request that was blocked by {@link Policy#BLOCK}.
+     */
+    public void recordBlocked(Stats page) {
+        if (page != null) page.blocked.incrementAndGet();
+        mTotal.blocked.incrementAndGet();
+    }
+
+    /**
+     * Fetches {@code url} and transcodes it, or serves an earlier result.
+     * Blocks the calling thread, which is meant to be the WebView's network
+     * thread. A response that is not transcoded is passed on with its status,
+     * streamed if it is too large to buffer; the caller must close its
+     * {@link Image#body}. Returns null when the WebView should load the URL
+     * itself: after a network error, or for a redirect it did not follow,
+     * which the WebView cannot be handed.
+     */
+    public Image load(String url, Map<String, String> requestHeaders, Stats page) {
+        Image image;
+        synchronized (this) {
+            image = mCache.get(url);
+        }
+        if (image != null) {
+            record(page, image.originalSize, image.data.length, 0, false, true);
+            return image;
+        }
+
+        final String mimeType;
+        final byte[] original;
+        final List<String> cookies;
+        Map<String, String> headers = new LinkedHashMap<>();
+        HttpURLConnection connection = null;
+        boolean streaming = false;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            connection.setInstanceFollowRedirects(true);
+            for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            int status = connection.getResponseCode();
+            if (status < 200 || status >= 600 || (status >= 300 && status < 400)) return null;
+            String reason = connection.getResponseMessage();
+            if (reason == null || reason.isEmpty()) reason = status == HttpURLConnection.HTTP_OK ? "OK" : "Status " + status;
+            mimeType = mimeTypeOf(connection.getContentType());
+            for (String name : KEPT_HEADERS) {
+                String value = connection.getHeaderField(name);
+                if (value != null) headers.put(name, value);
+            }
+            cookies = cookiesOf(connection);
+            int length = connection.getContentLength();
+            InputStream input = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (input == null) input = new ByteArrayInputStream(new byte[0]);
+            input = new ConnectionStream(input, connection);
+            if (status != HttpURLConnection.HTTP_OK || !isTranscoded(mimeType) || length > MAX_IMAGE_BYTES) {
+                streaming = true;
+                if (status == HttpURLConnection.HTTP_OK) record(page, length, length, 0, false, false);
+                return new Image(status, reason, mimeType, null, input, length, headers, cookies);
+            }
+            byte[] head = read(input, MAX_IMAGE_BYTES);
+            if (head.length > MAX_IMAGE_BYTES) {
+                // The server sent no length, or a wrong one: pass on what was read and the rest.
+                streaming = true;
+                record(page, -1, -1, 0, false, false);
+                return new Image(status, reason, mimeType, null, new SequenceInputStream(new ByteArrayInputStream(head), input), -1, headers,
+                                 cookies);
+            }
+            original = head;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (connection != null && !streaming) connection.disconnect();
+        }
+
+        Image unchanged = new Image(HttpURLConnection.HTTP_OK, "OK", mimeType, original, null, original.length, headers, cookies);
+        long start = System.nanoTime();
+        Image transcoded = transcode(original, mimeType);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        if (transcoded == null || transcoded.data.length >= original.length) {
+            record(page, original.length, original.length, elapsed, false, false);
+            return unchanged;
+        }
+        image = new Image(transcoded.mimeType, transcoded.data, original.length, headers);
+        put(url, image);
+        record(page, image.originalSize, image.data.length, elapsed, true, false);
+        return cookies.isEmpty() ? image
+            : new Image(image.statusCode, image.reasonPhrase, image.mimeType, image.data, null, image.originalSize, headers, cookies);
+    }
+
+    private Image transcode(final byte[] original, final String mimeType) {
+        Future<Image> future;
+        try {
+            future = mExecutor.submit(new Callable<Image>() {
+
+                    @Override
+                    public Image call() throws IOException {
+                        return mTranscoder.transcode(original, mimeType);
+                    }
+                });
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+        try {
+            return future.get(mTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Sizes of -1 are not known and left out of the byte counts.
+     */
+    private void record(Stats page, int originalSize, int servedSize, long elapsed, boolean compressed, boolean cached) {
+        for (Stats stats : new Stats[] { page, mTotal }) {
+            if (stats == null) continue;
+            stats.images.incrementAndGet();
+            if (compressed) stats.compressed.incrementAndGet();
+            if (cached) stats.cacheHits.incrementAndGet();
+            if (!compressed && !cached) stats.skipped.incrementAndGet();
+            if (originalSize >= 0) stats.originalBytes.addAndGet(originalSize);
+            if (servedSize >= 0) stats.servedBytes.addAndGet(servedSize);
+            stats.addedMillis.addAndGet(elapsed);
+        }
+    }
+
+    private synchronized void put(String url, Image image) {
+        if (image.data.length > mCacheBytes) return;
+        Image previous = mCache.put(url, image);
+        if (previous != null) mCachedBytes -= previous.data.length;
+        mCachedBytes += image.data.length;
+        Iterator<Image> iterator = mCache.values().iterator();
+        while (mCachedBytes > mCacheBytes && iterator.hasNext()) {
+            mCachedBytes -= iterator.next().data.length;
+            iterator.remove();
+        }
+    }
+
+    public synchronized long cacheSize() {
+        return mCachedBytes;
+    }
+
+    /**
+     * Drops every cached result; returns how many bytes were freed.
+     */
+    public synchronized long clearCache() {
+        long freed = mCachedBytes;
+        mCache.clear();
+        mCachedBytes = 0;
+        return freed;
+    }
+
+    /**
+     * Counters for everything since start.
+     */
+    public Stats getTotal() {
+        return mTotal;
+    }
+
+    /**
+     * Reads {@code input} to the end and closes it, unless more than
+     * {@code limit} bytes arrive: then it returns what it read so far, which
+     * is longer than {@code limit}, and leaves {@code input} open for the rest.
+     */
+    private static byte[] read(InputStream input, int limit) throws IOException {
+        boolean done = false;
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(16 * 1024);
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+                if (output.size() > limit) return output.toByteArray();
+            }
+            done = true;
+            return output.toByteArray();
+        } finally {
+            if (done) IoUtils.closeIO(input);
+        }
+    }
+
+    /**
+     * A response body that releases its connection when closed.
+     */
+    private static final class ConnectionStream extends FilterInputStream {
+
+        private final HttpURLConnection mConnection;
+
+        ConnectionStream(InputStream input, HttpURLConnection connection) {
+            super(input);
+            this.mConnection = connection;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                mConnection.disconnect();
+            }
+        }
+    }
+
+    private static List<String> cookiesOf(HttpURLConnection connection) {
+        List<String> cookies = new ArrayList<>();
+        for (int i = 0; ; i++) {
+            String value = connection.getHeaderField(i);
+            if (value == null) break;
+            if ("Set-Cookie".equalsIgnoreCase(connection.getHeaderFieldKey(i))) cookies.add(value);
+        }
+        return cookies;
+    }
+
+    private static boolean isTranscoded(String mimeType) {
+        for (String type : TRANSCODED_TYPES) {
+            if (type.equals(mimeType)) return true;
+        }
+        return false;
+    }
+
+    private static String mimeTypeOf(String contentType) {
+        if (contentType == null) return "application/octet-stream";
+        int semicolon = contentType.indexOf(';');
+        return (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String pathOf(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) end = query;
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) end = fragment;
+        return url.substring(0, end);
+    }
+
+    /**
+     * Lower-case host of an http(s) URL, or null.
+     */
+    static String hostOf(String url) {
+        int start = url.startsWith("https://") ? 8 : url.startsWith("http://") ? 7 : -1;
+        if (start < 0) return null;
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#' || c == ':') break;
+            end++;
+        }
+        return end > start ? url.substring(start, end).toLowerCase(Locale.ROOT) : null;
+    }
+}
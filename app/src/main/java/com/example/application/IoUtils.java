@@ -0,0 +1,198 @@
+package com.example.application;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Stream and file helpers without Android dependencies, so they can also be
+ * benchmarked on a plain JVM. {@link GlobalApplication} exposes them under its
+ * historical names.
+ *
+ * File writes go through {@link FileChannel} straight from the caller's array,
+ * file-to-file and stream-to-file copies use {@code transferTo}/{@code transferFrom},
+ * and stream copies reuse a per-thread buffer instead of allocating one per call.
+ */
+public final class IoUtils {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 1024 * 8;
+
+    private static final long TRANSFER_CHUNK = 1024 * 1024;
+
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private IoUtils() {
+    }
+
+    public static void write(InputStream input, OutputStream output) throws IOException {
+        byte[] buf = BUFFERS.get();
+        int len;
+        while ((len = input.read(buf)) != -1) {
+            output.write(buf, 0, len);
+        }
+    }
+
+    public static void write(File file, byte[] data) throws IOException {
+        mkdirsParent(file);
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            writeFully(output.getChannel(), ByteBuffer.wrap(data));
+        } finally {
+            closeIO(output);
+        }
+    }
+
+    /**
+     * Writes to a temporary file next to {@code file}, syncs it and renames it
+     * over {@code file}, so readers see either the old or the new content.
+     */
+    public static void writeAtomic(File file, byte[] data) throws IOException {
+        mkdirsParent(file);
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream output = new FileOutputStream(temp);
+        boolean written = false;
+        try {
+            FileChannel channel = output.getChannel();
+            writeFully(channel, ByteBuffer.wrap(data));
+            channel.force(false);
+            written = true;
+        } finally {
+            closeIO(output);
+            if (!written) temp.delete();
+        }
+        commit(temp, file);
+    }
+
+    /**
+     * Renames a fully written temporary file over {@code target}; deletes the
+     * temporary file if that fails.
+     */
+    public static void commit(File temp, File target) throws IOException {
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + target);
+        }
+    }
+
+    public static void copy(File source, File target) throws IOException {
+        mkdirsParent(target);
+        FileInputStream input = new FileInputStream(source);
+        FileOutputStream output = null;
+        try {
+            output = new FileOutputStream(target);
+            FileChannel in = input.getChannel();
+            FileChannel out = output.getChannel();
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, Math.min(TRANSFER_CHUNK, size - position), out);
+                if (transferred <= 0) break;
+                position += transferred;
+            }
+        } finally {
+            closeIO(input, output);
+        }
+    }
+
+    /**
+     * Copies the rest of {@code input} into {@code file}; returns the number of bytes.
+     * The stream is not closed.
+     */
+    public static long copy(InputStream input, File file) throws IOException {
+        mkdirsParent(file);
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            FileChannel out = output.getChannel();
+            if (input instanceof FileInputStream) {
+                FileChannel in = ((FileInputStream) input).getChannel();
+                long start = in.position();
+                long size = in.size() - start;
+                long position = 0;
+                while (position < size) {
+                    long transferred = in.transferTo(start + position, Math.min(TRANSFER_CHUNK, size - position), out);
+                    if (transferred <= 0) break;
+                    position += transferred;
+                }
+                in.position(start + position);
+                return position;
+            }
+            ReadableByteChannel in = Channels.newChannel(input);
+            long position = 0;
+            long transferred;
+            while ((transferred = out.transferFrom(in, position, TRANSFER_CHUNK)) > 0) {
+                position += transferred;
+            }
+            return position;
+        } finally {
+            closeIO(output);
+        }
+    }
+
+    public static String toString(InputStream input) throws IOException {
+        try {
+            return readString(input);
+        } finally {
+            closeIO(input);
+        }
+    }
+
+    /**
+     * Reads the rest of {@code input} as UTF-8 without closing it. Files are read
+     * into an array of their exact size; other streams into a growing array that
+     * is decoded in place.
+     */
+    private static String readString(InputStream input) throws IOException {
+        byte[] data;
+        int length = 0;
+        if (input instanceof FileInputStream) {
+            FileChannel channel = ((FileInputStream) input).getChannel();
+            long remaining = channel.size() - channel.position();
+            // Files under /proc report a size of 0 and are read as streams.
+            data = new byte[remaining > 0 && remaining < Integer.MAX_VALUE - 8 ? (int) remaining + 1 : BUFFER_SIZE];
+        } else {
+            data = new byte[Math.max(input.available() + 1, BUFFER_SIZE)];
+        }
+        int read;
+        while ((read = input.read(data, length, data.length - length)) != -1) {
+            length += read;
+            if (length == data.length) data = Arrays.copyOf(data, data.length * 2);
+        }
+        return new String(data, 0, length, UTF_8);
+    }
+
+    public static void closeIO(Closeable... closeables) {
+        for (Closeable closeable : closeables) {
+            try {
+                if (closeable != null) closeable.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void mkdirsParent(File file) {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+    }
+}
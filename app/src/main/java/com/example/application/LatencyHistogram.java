@@ -0,0 +1,127 @@
+package com.example.application;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Fixed-size log-linear histogram in the style of HdrHistogram.
+ *
+ * Values below {@code 2^SUB_BUCKET_BITS} are counted exactly. Above that, each
+ * power-of-two range is split into {@code 2^(SUB_BUCKET_BITS - 1)} equal slots,
+ * so a reported percentile is at most one slot (about 3%) above the recorded
+ * value. Memory is fixed by the highest trackable value; larger values are
+ * clamped to it. Not thread-safe.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+
+    private final long mHighestTrackableValue;
+
+    private final int[] mCounts;
+
+    private long mTotalCount;
+
+    private long mMax;
+
+    public LatencyHistogram(long highestTrackableValue) {
+        if (highestTrackableValue < SUB_BUCKET_COUNT) highestTrackableValue = SUB_BUCKET_COUNT;
+        this.mHighestTrackableValue = highestTrackableValue;
+        this.mCounts = new int[indexOf(highestTrackableValue) + 1];
+    }
+
+    private static int indexOf(long value) {
+        int bucket = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1));
+        int subBucket = (int) (value >>> bucket);
+        return bucket == 0 ? subBucket : bucket * SUB_BUCKET_HALF + subBucket;
+    }
+
+    /**
+     * Highest value that maps to the same slot as {@code index}.
+     */
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+        int bucket = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index - bucket * SUB_BUCKET_HALF;
+        return ((subBucket + 1) << bucket) - 1;
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        if (value > mHighestTrackableValue) value = mHighestTrackableValue;
+        mCounts[indexOf(value)]++;
+        mTotalCount++;
+        if (value > mMax) mMax = value;
+    }
+
+    public long getTotalCount() {
+        return mTotalCount;
+    }
+
+    public long getMax() {
+        return mMax;
+    }
+
+    /**
+     * Smallest recorded value (to slot precision) that at least {@code percentile}
+     * percent of recorded values are less than or equal to; 0 when empty.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (mTotalCount == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * mTotalCount));
+        long seen = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if (seen >= target) return Math.min(highestValueAt(i), mMax);
+        }
+        return mMax;
+    }
+
+    public void add(LatencyHistogram other) {
+        int length = Math.min(mCounts.length, other.mCounts.length);
+        for (int i = 0; i < length; i++) mCounts[i] += other.mCounts[i];
+        for (int i = length; i < other.mCounts.length; i++) mCounts[length - 1] += other.mCounts[i];
+        mTotalCount += other.mTotalCount;
+        mMax = Math.max(mMax, Math.min(other.mMax, mHighestTrackableValue));
+    }
+
+    public void reset() {
+        Arrays.fill(mCounts, 0);
+        mTotalCount = 0;
+        mMax = 0;
+    }
+
+    /**
+     * Writes the non-empty slots only, as (index, count) pairs.
+     */
+    public void write(DataOutput output) throws IOException {
+        int used = 0;
+        for (int count : mCounts) if (count != 0) used++;
+        output.writeLong(mHighestTrackableValue);
+        output.writeLong(mMax);
+        output.writeInt(used);
+        for (int i = 0; i < mCounts.length; i++) {
+            if (mCounts[i] == 0) continue;
+            output.writeShort(i);
+            output.writeInt(mCounts[i]);
+        }
+    }
+
+    public static LatencyHistogram read(DataInput input) throws IOException {
+        LatencyHistogram histogram = new LatencyHistogram(input.readLong());
+        histogram.mMax = input.readLong();
+        int used = input.readInt();
+        for (int i = 0; i < used; i++) {
+            int index = input.readUnsignedShort();
+            int count = input.readInt();
+            if (index >= histogram.mCounts.length || count < 0) throw new IOException("Corrupt histogram");
+            histogram.mCounts[index] += count;
+            histogram.mTotalCount += count;
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.application;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams the records of a {@link LogCodec.Reader} to gzip-compressed NDJSON,
+ * oldest first, one object per line:
+ *
+ * <pre>
+ * {"id":7,"time":1760673784567,"type":"RESOURCE_LOAD","tab":2,"url":"https://...","durationMs":35,"bytes":12390,"text":"..."}
+ * </pre>
+ *
+ * Absent fields are left out. Every record is decoded into one reused
+ * {@link LogRecord} and escaped into one reused line buffer, so memory use
+ * does not grow with the number of records. No Android dependencies, so it
+ * can be benchmarked on a plain JVM.
+ */
+public final class LogExporter {
+
+    /**
+     * Records between progress reports and cancellation checks.
+     */
+    public static final int PROGRESS_INTERVAL = 4096;
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    public interface Listener {
+
+        /**
+         * Called on the exporting thread every {@link #PROGRESS_INTERVAL}
+         * records and once at the end.
+         */
+        void onProgress(int exported, int total);
+    }
+
+    private LogExporter() {}
+
+    /**
+     * Writes every record of {@code reader} to {@code output} and finishes the
+     * gzip stream; {@code output} is left open. Throws
+     * {@link CancellationException} once {@code cancelled} is set.
+     *
+     * @return the number of records written
+     */
+    public static int export(LogCodec.Reader reader, OutputStream output, Listener listener,
+                             AtomicBoolean cancelled) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(output, GZIP_BUFFER_SIZE);
+        Writer writer = new OutputStreamWriter(gzip, "UTF-8");
+        LogRecord record = new LogRecord();
+        StringBuilder line = new StringBuilder(256);
+        char[] chars = new char[256];
+        int total = reader.size();
+        for (int i = 0; i < total; i++) {
+            if (i % PROGRESS_INTERVAL == 0) {
+                if (cancelled != null && cancelled.get()) throw new CancellationException("Export cancelled");
+                if (listener != null && i > 0) listener.onProgress(i, total);
+            }
+            reader.get(i, record);
+            line.setLength(0);
+            encode(reader.getRecordId(i), record, line);
+            if (chars.length < line.length()) chars = new char[Math.max(line.length(), chars.length * 2)];
+            line.getChars(0, line.length(), chars, 0);
+            writer.write(chars, 0, line.length());
+        }
+        writer.flush();
+        gzip.finish();
+        gzip.flush();
+        if (listener != null) listener.onProgress(total, total);
+        return total;
+    }
+
+    static void encode(long id, LogRecord record, StringBuilder line) {
+        line.append("{\"id\":").append(id);
+        line.append(",\"time\":").append(record.time);
+        line.append(",\"type\":\"").append(record.type.name()).append('"');
+        if (record.tabId >= 0) line.append(",\"tab\":").append(record.tabId);
+        if (record.url != null) appendString(line.append(",\"url\":"), record.url);
+        if (record.durationMillis != LogRecord.NONE) line.append(",\"durationMs\":").append(record.durationMillis);
+        if (record.bytes != LogRecord.NONE) line.append(",\"bytes\":").append(record.bytes);
+        if (record.text != null) appendString(line.append(",\"text\":"), record.text);
+        line.append("}\n");
+    }
+
+    private static void appendString(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    line.append('\\').append(c);
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+}
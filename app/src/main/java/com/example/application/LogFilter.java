@@ -0,0 +1,198 @@
+package com.example.application;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A developer console search: a case-insensitive substring or a regular
+ * expression over a record as the console shows it, without the time,
+ * optionally restricted to page or resource loads.
+ *
+ * Types are checked on the first byte of a record, so restricting the type
+ * skips decoding the records of other types. A filter that {@link #refines}
+ * the previous one only has to look at the previous matches. A plain ASCII
+ * query is matched against the record's UTF-8 bytes with ASCII case folding,
+ * without decoding it to strings; other queries search the formatted text. {@link #scan}
+ * walks newest to oldest and reports matches in chunks, so results can be
+ * shown while the scan goes on. No Android dependencies, so it can be
+ * benchmarked on a plain JVM. Immutable.
+ */
+public final class LogFilter {
+
+    public static final int TYPE_ALL = 0;
+    public static final int TYPE_PAGE = 1;
+    public static final int TYPE_RESOURCE = 2;
+
+    /**
+     * Records scanned between reports and cancellation checks.
+     */
+    public static final int CHUNK_SIZE = 4096;
+
+    private final String mText;
+
+    private final boolean mRegex;
+
+    private final int mType;
+
+    private final Pattern mPattern;
+
+    // mText as bytes if it is a plain ASCII query, else null.
+    private final byte[] mNeedle;
+
+    public interface Sink {
+
+        /**
+         * Matches so far, as reader indices newest first. Entries below
+         * {@code count} never change, so {@code matches} can be shown without
+         * copying; the array is replaced, not modified, when it grows.
+         */
+        void onMatches(int[] matches, int count, boolean done);
+    }
+
+    /**
+     * @throws java.util.regex.PatternSyntaxException if {@code regex} is set
+     *         and {@code text} is not a valid expression
+     */
+    public LogFilter(String text, boolean regex, int type) {
+        this.mText = regex ? text : text.toLowerCase(Locale.ROOT);
+        this.mRegex = regex && !text.isEmpty();
+        this.mType = type;
+        this.mPattern = mRegex ? Pattern.compile(text, Pattern.CASE_INSENSITIVE) : null;
+        this.mNeedle = !mRegex && isAscii(mText) ? mText.getBytes(Charset.forName("US-ASCII")) : null;
+    }
+
+    /**
+     * Whether this filter matches every record.
+     */
+    public boolean isEmpty() {
+        return mType == TYPE_ALL && !mRegex && mText.isEmpty();
+    }
+
+    /**
+     * Whether everything this filter matches is also matched by
+     * {@code previous}, so only the previous matches need to be scanned.
+     */
+    public boolean refines(LogFilter previous) {
+        if (previous == null || (previous.mType != TYPE_ALL && previous.mType != mType)) return false;
+        if (previous.mRegex) return mRegex && mText.equals(previous.mText);
+        return !mRegex && mText.contains(previous.mText);
+    }
+
+    public boolean matches(LogCodec.Reader reader, int index) {
+        return matches(reader, index, new LogRecord(), new StringBuilder(), new LogCodec.Bytes());
+    }
+
+    /**
+     * {@code record}, {@code text} and {@code bytes} are scratch space reused
+     * across calls.
+     */
+    private boolean matches(LogCodec.Reader reader, int index, LogRecord record, StringBuilder text, LogCodec.Bytes bytes) {
+        if (mType != TYPE_ALL) {
+            LogRecord.Type type = reader.getType(index);
+            if (mType == TYPE_PAGE && type != LogRecord.Type.PAGE_LOAD && type != LogRecord.Type.PAGE_FINISHED) return false;
+            if (mType == TYPE_RESOURCE && type != LogRecord.Type.RESOURCE_LOAD && type != LogRecord.Type.RESOURCE_BLOCKED
+                && type != LogRecord.Type.IMAGE_COMPRESSED) return false;
+        }
+        if (mNeedle != null) {
+            if (mNeedle.length == 0) return true;
+            reader.formatBody(index, bytes);
+            return indexOfIgnoreCase(bytes.data, bytes.length, mNeedle) >= 0;
+        }
+        reader.decode(index, record);
+        text.setLength(0);
+        record.formatBody(text);
+        if (mRegex) {
+            Matcher matcher = mPattern.matcher(text);
+            return matcher.find();
+        }
+        return indexOfIgnoreCase(text, mText) >= 0;
+    }
+
+    /**
+     * Matches the records of {@code reader}, or only {@code candidates} (reader
+     * indices newest first, e.g. the matches of a filter this one refines),
+     * reporting to {@code sink} every {@link #CHUNK_SIZE} records. Returns
+     * false without a final report if {@code cancelled} was set.
+     */
+    public boolean scan(LogCodec.Reader reader, int[] candidates, int candidateCount, Sink sink, AtomicBoolean cancelled) {
+        int total = candidates != null ? candidateCount : reader.size();
+        int[] matches = new int[Math.min(total, CHUNK_SIZE)];
+        int count = 0;
+        LogRecord record = new LogRecord();
+        StringBuilder text = new StringBuilder();
+        LogCodec.Bytes bytes = new LogCodec.Bytes();
+        for (int i = 0; i < total; i++) {
+            if (i % CHUNK_SIZE == 0 && i > 0) {
+                if (cancelled.get()) return false;
+                sink.onMatches(matches, count, false);
+            }
+            int index = candidates != null ? candidates[i] : reader.size() - 1 - i;
+            if (!matches(reader, index, record, text, bytes)) continue;
+            if (count == matches.length) matches = Arrays.copyOf(matches, Math.max(count * 2, CHUNK_SIZE));
+            matches[count++] = index;
+        }
+        if (cancelled.get()) return false;
+        sink.onMatches(matches, count, true);
+        return true;
+    }
+
+    /**
+     * Naive search with case folding; {@code needle} is already lower case.
+     * Log lines are short, so this beats setting up anything smarter.
+     */
+    static int indexOfIgnoreCase(CharSequence text, String needle) {
+        if (needle.isEmpty()) return 0;
+        char first = needle.charAt(0);
+        int last = text.length() - needle.length();
+        outer:
+        for (int i = 0; i <= last; i++) {
+            if (toLower(text.charAt(i)) != first) continue;
+            for (int j = 1; j < needle.length(); j++) {
+                if (toLower(text.charAt(i + j)) != needle.charAt(j)) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * {@link #indexOfIgnoreCase(CharSequence, String)} over the first
+     * {@code length} bytes of {@code text}; {@code needle} is lower case ASCII.
+     * Only ASCII letters are folded.
+     */
+    static int indexOfIgnoreCase(byte[] text, int length, byte[] needle) {
+        if (needle.length == 0) return 0;
+        byte first = needle[0];
+        byte firstUpper = first >= 'a' && first <= 'z' ? (byte) (first - ('a' - 'A')) : first;
+        int last = length - needle.length;
+        outer:
+        for (int i = 0; i <= last; i++) {
+            if (text[i] != first && text[i] != firstUpper) continue;
+            for (int j = 1; j < needle.length; j++) {
+                if (toLower(text[i + j]) != needle[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static byte toLower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    private static char toLower(char c) {
+        if (c < 0x80) return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        return Character.toLowerCase(c);
+    }
+}
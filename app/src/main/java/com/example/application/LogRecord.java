@@ -0,0 +1,124 @@
+package com.example.application;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * One developer console log event. Stored by {@link LogSink} in the binary
+ * form of {@link LogCodec} and only rendered to text by {@link #format} when
+ * shown. Mutable so readers can decode into one instance; a record handed to
+ * {@link LogSink} must not be changed afterwards. No Android dependencies.
+ */
+public final class LogRecord {
+
+    public static final long NONE = -1;
+
+    public enum Type {
+        PAGE_LOAD("页面加载"),
+        PAGE_FINISHED("页面完成"),
+        RESOURCE_LOAD("资源加载"),
+        RESOURCE_BLOCKED("资源拦截"),
+        SNAPSHOT_OPEN("快照打开"),
+        MESSAGE("消息"),
+        // Stored by ordinal, so new types go last. bytes is what recompressing saved.
+        IMAGE_COMPRESSED("图片压缩");
+
+        private static final Type[] VALUES = values();
+
+        public final String label;
+
+        Type(String label) {
+            this.label = label;
+        }
+
+        static Type of(int ordinal) {
+            return ordinal < VALUES.length ? VALUES[ordinal] : MESSAGE;
+        }
+    }
+
+    /**
+     * Wall-clock milliseconds, derived from a monotonic clock so they never go
+     * backwards within a process.
+     */
+    public long time;
+    public Type type = Type.MESSAGE;
+
+    /**
+     * Id of the tab the event belongs to, or -1.
+     */
+    public int tabId = -1;
+    public String url;
+    public String text;
+    public long durationMillis = NONE;
+    public long bytes = NONE;
+
+    public static LogRecord message(long time, String text) {
+        LogRecord record = new LogRecord();
+        record.time = time;
+        record.text = text;
+        return record;
+    }
+
+    public static LogRecord event(long time, Type type, int tabId, String url, long durationMillis, long bytes) {
+        LogRecord record = new LogRecord();
+        record.time = time;
+        record.type = type;
+        record.tabId = tabId;
+        record.url = url;
+        record.durationMillis = durationMillis;
+        record.bytes = bytes;
+        return record;
+    }
+
+    void clear() {
+        time = 0;
+        type = Type.MESSAGE;
+        tabId = -1;
+        url = null;
+        text = null;
+        durationMillis = NONE;
+        bytes = NONE;
+    }
+
+    /**
+     * Appends e.g. {@code 10-17 12:03:04.567 [T2] 资源加载: https://... (35ms, 12.1KB)}.
+     */
+    public void format(StringBuilder builder, SimpleDateFormat timeFormat) {
+        builder.append(timeFormat.format(new Date(time))).append(' ');
+        formatBody(builder);
+    }
+
+    /**
+     * Appends what {@link #format} does after the time; this is the text the
+     * console search looks at.
+     */
+    public void formatBody(StringBuilder builder) {
+        if (tabId >= 0) builder.append("[T").append(tabId).append("] ");
+        if (type != Type.MESSAGE) builder.append(type.label).append(": ");
+        if (url != null) builder.append(url);
+        if (text != null) builder.append(url != null ? " " : "").append(text);
+        if (durationMillis != NONE || bytes != NONE) {
+            builder.append(" (");
+            if (durationMillis != NONE) builder.append(durationMillis).append("ms");
+            if (durationMillis != NONE && bytes != NONE) builder.append(", ");
+            if (bytes != NONE) {
+                // String.format is too slow for the search loop.
+                long tenths = Math.round(bytes * 10 / 1024.0);
+                builder.append(tenths / 10).append('.').append(tenths % 10).append("KB");
+            }
+            builder.append(')');
+        }
+    }
+
+    public static SimpleDateFormat newTimeFormat() {
+        return new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.getDefault());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        format(builder, newTimeFormat());
+        return builder.toString();
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.application;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer / single-consumer ring buffer.
+ *
+ * Producers claim a sequence number with a CAS and publish into the slot; the
+ * consumer drains slots strictly in sequence order, so insertion order is kept.
+ * When the buffer is full new elements are rejected and counted as dropped.
+ */
+public final class LogRingBuffer<E> {
+
+    private final AtomicReferenceArray<E> mSlots;
+
+    private final int mMask;
+
+    private final AtomicLong mTail = new AtomicLong();
+
+    private final AtomicLong mHead = new AtomicLong();
+
+    private final AtomicLong mDropped = new AtomicLong();
+
+    public LogRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        mSlots = new AtomicReferenceArray<E>(capacity);
+        mMask = capacity - 1;
+    }
+
+    public boolean offer(E element) {
+        if (element == null) throw new NullPointerException();
+        for (;;) {
+            long tail = mTail.get();
+            if (tail - mHead.get() > mMask) {
+                mDropped.incrementAndGet();
+                return false;
+            }
+            if (mTail.compareAndSet(tail, tail + 1)) {
+                mSlots.lazySet((int) tail & mMask, element);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Moves up to {@code max} published elements into {@code sink}. Must only be
+     * called from one thread at a time.
+     */
+    public int drain(List<? super E> sink, int max) {
+        long head = mHead.get();
+        int count = 0;
+        while (count < max) {
+            int index = (int) head & mMask;
+            E element = mSlots.get(index);
+            if (element == null) break;
+            mSlots.lazySet(index, null);
+            sink.add(element);
+            head++;
+            count++;
+        }
+        if (count > 0) mHead.set(head);
+        return count;
+    }
+
+    public int size() {
+        return (int) Math.max(0, mTail.get() - mHead.get());
+    }
+
+    public int capacity() {
+        return mMask + 1;
+    }
+
+    public long dropped() {
+        return mDropped.get();
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.application;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Developer console log sink.
+ *
+ * {@link #append} only stamps a {@link LogRecord} and pushes it into a
+ * {@link LogRingBuffer}; a background writer drains the buffer and appends the
+ * batch to a {@link SegmentedLog} through a {@link LogCodec.Writer} every
+ * {@link #FLUSH_INTERVAL_MS} or as soon as {@link #FLUSH_BATCH_SIZE} entries are pending.
+ */
+public class LogSink {
+
+    private static final String TAG = "LogSink";
+
+    private static final int BUFFER_CAPACITY = 4096;
+    private static final int FLUSH_BATCH_SIZE = 64;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final int SEGMENT_SIZE = 1024 * 1024;
+    private static final int MAX_SEGMENTS = 16;
+
+    private static LogSink sInstance;
+
+    private final LogRingBuffer<LogRecord> mBuffer = new LogRingBuffer<>(BUFFER_CAPACITY);
+
+    private final ScheduledExecutorService mWriter = Executors.newSingleThreadScheduledExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final AtomicBoolean mFlushPending = new AtomicBoolean();
+
+    // Wall-clock time at creation and the monotonic clock at the same moment.
+    private final long mWallBase = System.currentTimeMillis();
+    private final long mClockBase = SystemClock.elapsedRealtime();
+
+    // Only touched on mWriter.
+    private final List<LogRecord> mBatch = new ArrayList<>(FLUSH_BATCH_SIZE);
+    private final LogCodec.Writer mOutput;
+
+    private final Runnable mFlushTask = new Runnable() {
+
+        @Override
+        public void run() {
+            mFlushPending.set(false);
+            flush();
+        }
+    };
+
+    public static synchronized LogSink getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new LogSink(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private LogSink(Context context) {
+        mOutput = new LogCodec.Writer(new File(context.getFilesDir(), "records"), SEGMENT_SIZE, MAX_SEGMENTS);
+        // Logs used to live in browser_prefs, then as text in files/logs; they are not carried over.
+        context.getSharedPreferences("browser_prefs", Context.MODE_PRIVATE).edit().remove("logs").apply();
+        final File oldDir = new File(context.getFilesDir(), "logs");
+        mWriter.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (File segment : SegmentedLog.listSegments(oldDir)) segment.delete();
+                    oldDir.delete();
+                }
+            });
+        mWriter.scheduleWithFixedDelay(mFlushTask, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    /**
+     * Logs a free-form message. Safe to call from any thread.
+     */
+    public void append(String message) {
+        offer(LogRecord.message(now(), message));
+    }
+
+    /**
+     * Logs an event; {@code durationMillis} and {@code bytes} may be
+     * {@link LogRecord#NONE}. Safe to call from any thread, including
+     * per-resource WebView callbacks.
+     */
+    public void append(LogRecord.Type type, int tabId, String url, long durationMillis, long bytes) {
+        offer(LogRecord.event(now(), type, tabId, url, durationMillis, bytes));
+    }
+
+    private long now() {
+        return mWallBase + SystemClock.elapsedRealtime() - mClockBase;
+    }
+
+    private void offer(LogRecord record) {
+        mBuffer.offer(record);
+        if (mBuffer.size() >= FLUSH_BATCH_SIZE && mFlushPending.compareAndSet(false, true)) {
+            mWriter.execute(mFlushTask);
+        }
+    }
+
+    /**
+     * Writes buffered entries out now instead of on the next tick; returns how
+     * many were pending.
+     */
+    public int trimMemory() {
+        int pending = mBuffer.size();
+        if (pending > 0 && mFlushPending.compareAndSet(false, true)) {
+            mWriter.execute(mFlushTask);
+        }
+        return pending;
+    }
+
+    private void flush() {
+        try {
+            while (mBuffer.drain(mBatch, FLUSH_BATCH_SIZE) > 0) {
+                for (LogRecord record : mBatch) {
+                    mOutput.append(record);
+                }
+                mBatch.clear();
+            }
+            mOutput.flush();
+        } catch (IOException e) {
+            // The writer has reset its encoder and reopens the log next time.
+            mBatch.clear();
+            Log.w(TAG, "Failed to write logs", e);
+        }
+    }
+
+    /**
+     * Flushes anything still buffered and delivers a reader over every stored log
+     * on the main thread. Index 0 of the reader is the oldest entry.
+     */
+    public void load(final Callback<LogCodec.Reader> callback) {
+        mWriter.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    flush();
+                    LogCodec.Reader reader;
+                    try {
+                        reader = LogCodec.Reader.open(mOutput.openReader());
+                    } catch (IOException e) {
+                        Log.w(TAG, "Failed to read logs", e);
+                        reader = LogCodec.Reader.empty();
+                    }
+                    final LogCodec.Reader result = reader;
+                    mMainHandler.post(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                callback.onResult(result);
+                            }
+                        });
+                }
+            });
+    }
+
+    public void clear() {
+        mWriter.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    while (mBuffer.drain(mBatch, BUFFER_CAPACITY) > 0) {
+                        mBatch.clear();
+                    }
+                    try {
+                        mOutput.clear();
+                    } catch (IOException e) {
+                        Log.w(TAG, "Failed to clear logs", e);
+                    }
+                }
+            });
+    }
+}
@@ -1,64 +1,275 @@
 package com.example.application;
 
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.Typeface;
+import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Display;
 import android.view.KeyEvent;
+import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewGroup;
 import android.view.inputmethod.EditorInfo;
+import android.webkit.CookieManager;
 import android.webkit.WebChromeClient;
-import android.webkit.WebSettings;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.button.MaterialButton;
-import com.google.android.material.textfield.TextInputEditText;
+import com.google.android.material.textfield.MaterialAutoCompleteTextView;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 public class MainActivity extends AppCompatActivity {
     
     private WebView webView;
-    private TextInputEditText urlEditText;
+    private MaterialAutoCompleteTextView urlEditText;
     private MaterialButton backButton, forwardButton, refreshButton, homeButton;
     
-    private List<String> historyList = new ArrayList<>();
-    private int currentIndex = -1;
+    private NavigationStack navigationStack;
     private static final String HOME_URL = "https://www.baidu.com";
+    private static final String STATE_NAVIGATION_ENTRIES = "navigation_entries";
+    private static final String STATE_NAVIGATION_INDEX = "navigation_index";
+    private static final int MAX_SUGGESTIONS = 8;
+    private static final int MAX_PRECONNECTS = 3;
     private SharedPreferences prefs;
+    private HistoryStore historyStore;
+    private LogSink logSink;
+    private UrlSuggestions urlSuggestions;
+    private RequestFilter requestFilter;
+    private WebViewPool webViewPool;
+    private TabManager tabManager;
+    private PageMetrics pageMetrics;
+    private PageMetrics.Navigation currentNavigation;
+    private FrameMonitor frameMonitor;
+    private Prefetcher prefetcher;
+    private SnapshotStore snapshotStore;
+    private DataSaver dataSaver;
+    private SessionStore sessionStore;
+    private SessionStore.Callback<SessionCodec.Session> sessionCallback;
+    private TabManager.Tab placeholderTab;
+    private TabManager.Tab restoringTab;
+    private long restoreStart;
+    private WebView revalidatingView;
+    private TabManager.Tab revalidatingTab;
+    private boolean revalidateFailed;
+    private boolean webViewPrewarmed;
+    private static boolean firstPageReported;
+    private static int firstPageSpan = -1;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        int span = StartupTrace.begin("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
+        int layoutSpan = StartupTrace.begin("setContentView");
         setContentView(R.layout.activity_main);
 		
 		MaterialToolbar toolbar = findViewById(R.id.toolbar);
 		setSupportActionBar(toolbar);
+        StartupTrace.end(layoutSpan);
         
+        int prefsSpan = StartupTrace.begin("prefs");
         prefs = getSharedPreferences("browser_prefs", MODE_PRIVATE);
-        loadHistory();
+        historyStore = HistoryStore.getInstance(this);
+        logSink = LogSink.getInstance(this);
+        urlSuggestions = UrlSuggestions.getInstance(this);
+        requestFilter = RequestFilter.getInstance(this);
+        requestFilter.ensureLoaded();
+        pageMetrics = PageMetrics.getInstance(this);
+        frameMonitor = FrameMonitor.getInstance(this);
+        prefetcher = Prefetcher.getInstance(this);
+        snapshotStore = SnapshotStore.getInstance(this);
+        dataSaver = DataSaver.getInstance(this);
+        sessionStore = SessionStore.getInstance(this);
+        StartupTrace.end(prefsSpan);
         
+        int viewsSpan = StartupTrace.begin("initViews");
         initViews();
-        initWebView();
+        StartupTrace.end(viewsSpan);
+        int tabSpan = StartupTrace.begin("openTab");
+        webViewPrewarmed = webViewPool.hasIdle();
+        tabManager.registerMemoryHooks(MemoryPressureManager.getInstance(this));
+        // Restores right here if the session is already known; otherwise an
+        // empty tab waits for it, and nothing is saved until it has arrived.
+        sessionCallback = new SessionStore.Callback<SessionCodec.Session>() {
+            @Override
+            public void onResult(SessionCodec.Session session) {
+                sessionCallback = null;
+                restoreSession(session);
+            }
+        };
+        sessionStore.loadSession(sessionCallback);
+        boolean restored = tabManager.getCurrent() != null;
+        if (!restored) {
+            tabManager.open(null);
+        }
+        StartupTrace.end(tabSpan);
         
+        if (firstPageSpan < 0) {
+            firstPageSpan = StartupTrace.beginAsync("firstPage");
+        }
         String url = getIntent().getStringExtra("url");
+        if (restored) {
+            if (url != null) {
+                openFromHistory(url);
+            }
+        } else {
+            if (url == null && savedInstanceState != null && savedInstanceState.getStringArray(STATE_NAVIGATION_ENTRIES) != null) {
+                navigationStack.restore(savedInstanceState.getStringArray(STATE_NAVIGATION_ENTRIES),
+                                        savedInstanceState.getInt(STATE_NAVIGATION_INDEX));
+                url = navigationStack.current();
+            }
+            if (url != null) {
+                loadUrl(url);
+            } else if (sessionCallback != null) {
+                placeholderTab = tabManager.getCurrent();
+            } else {
+                loadUrl(HOME_URL);
+            }
+        }
+        StartupTrace.end(span);
+    }
+    
+    /**
+     * Keeps the current tab's back/forward list across recreation, e.g. on
+     * rotation, as a URL array and an index. Only used when there is no saved
+     * session to restore.
+     */
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (navigationStack != null && navigationStack.size() > 0) {
+            outState.putStringArray(STATE_NAVIGATION_ENTRIES, navigationStack.getEntries());
+            outState.putInt(STATE_NAVIGATION_INDEX, navigationStack.getIndex());
+        }
+    }
+    
+    /**
+     * History entries are opened in a new tab of the existing activity.
+     */
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        String url = intent.getStringExtra("url");
         if (url != null) {
+            openFromHistory(url);
+        }
+    }
+    
+    /**
+     * Opens {@code url} in a new tab. If there is a snapshot of it, the snapshot
+     * is shown at once while the live page loads in a WebView outside the tab;
+     * the live page replaces it when it finishes, unless it failed to load.
+     */
+    private void openFromHistory(String url) {
+        tabManager.open(null);
+        File snapshot = snapshotStore.isEnabled() ? snapshotStore.find(url) : null;
+        if (snapshot == null) {
             loadUrl(url);
-        } else {
-            loadUrl(HOME_URL);
+            return;
+        }
+        cancelRevalidation();
+        TabManager.Tab tab = tabManager.getCurrent();
+        tab.url = url;
+        webView.getSettings().setAllowFileAccess(true);
+        webView.loadUrl(Uri.fromFile(snapshot).toString());
+        urlEditText.setText(url, false);
+        if (prefs.getBoolean("logging_enabled", false)) {
+            addLog(LogRecord.Type.SNAPSHOT_OPEN, webView, url, LogRecord.NONE);
+        }
+        prefetcher.onNavigate(url);
+        revalidatingTab = tab;
+        revalidateFailed = false;
+        revalidatingView = webViewPool.acquire(this);
+        initWebView(revalidatingView);
+        revalidatingView.loadUrl(url);
+    }
+    
+    private void finishRevalidation() {
+        WebView view = revalidatingView;
+        TabManager.Tab tab = revalidatingTab;
+        revalidatingView = null;
+        revalidatingTab = null;
+        WebView shown = tab.getWebView();
+        // Keep the tab as it is if the user has navigated away from the snapshot.
+        if (revalidateFailed || shown == null || !SnapshotStore.isSnapshotUrl(shown.getUrl())) {
+            webViewPool.release(view);
+            if (revalidateFailed && tab == tabManager.getCurrent()) {
+                Toast.makeText(this, "网络不可用，当前显示离线快照", Toast.LENGTH_SHORT).show();
+            }
+            return;
+        }
+        tabManager.replaceWebView(tab, view);
+        addToHistory(tab, view, view.getUrl());
+        snapshotStore.save(view, view.getUrl());
+        if (tab == tabManager.getCurrent()) {
+            urlEditText.setText(view.getUrl(), false);
+            updateButtons();
+        }
+    }
+    
+    private void cancelRevalidation() {
+        if (revalidatingView != null) {
+            webViewPool.release(revalidatingView);
+            revalidatingView = null;
+            revalidatingTab = null;
         }
     }
     
     private void initViews() {
         urlEditText = findViewById(R.id.url_edit_text);
-        webView = findViewById(R.id.web_view);
+        webViewPool = ((GlobalApplication) getApplication()).getWebViewPool();
+        FrameLayout webViewContainer = findViewById(R.id.web_view_container);
+        tabManager = new TabManager(this, webViewPool, webViewContainer, new TabManager.Listener() {
+            @Override
+            public void onWebViewCreated(TabManager.Tab tab, WebView view) {
+                initWebView(view);
+            }
+            
+            @Override
+            public void onTabSelected(TabManager.Tab tab) {
+                webView = tab.getWebView();
+                navigationStack = tab.navigationStack;
+                if (tab != restoringTab) {
+                    restoringTab = null;
+                }
+                currentNavigation = null;
+                frameMonitor.finishPage();
+                if (tab.url != null) {
+                    frameMonitor.startPage(tab.url);
+                }
+                urlEditText.setText(tab.url != null ? tab.url : "", false);
+                updateButtons();
+                sessionStore.requestSave();
+            }
+        });
         backButton = findViewById(R.id.back_button);
         forwardButton = findViewById(R.id.forward_button);
         refreshButton = findViewById(R.id.refresh_button);
@@ -79,6 +290,23 @@ public class MainActivity extends AppCompatActivity {
             }
         });
         
+        urlEditText.setOnFocusChangeListener(new View.OnFocusChangeListener() {
+            @Override
+            public void onFocusChange(View v, boolean hasFocus) {
+                if (hasFocus) {
+                    urlSuggestions.ensureBuilt();
+                    prefetchLikelyPages();
+                }
+            }
+        });
+        urlEditText.setAdapter(new SuggestionAdapter());
+        urlEditText.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                loadUrl((String) parent.getItemAtPosition(position));
+            }
+        });
+        
         backButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -108,88 +336,339 @@ public class MainActivity extends AppCompatActivity {
         });
     }
     
-    private void initWebView() {
-        WebSettings webSettings = webView.getSettings();
-        webSettings.setJavaScriptEnabled(true);
-        webSettings.setSupportZoom(true);
-        webSettings.setBuiltInZoomControls(true);
-        webSettings.setDisplayZoomControls(false);
-        webSettings.setLoadWithOverviewMode(true);
-        webSettings.setUseWideViewPort(true);
-        
-        webView.setWebViewClient(new WebViewClient() {
+    /**
+     * Attaches clients to a tab's WebView. Callbacks from background tabs only
+     * update that tab; the toolbar and page metrics follow the current tab.
+     */
+    private void initWebView(WebView view) {
+        view.addJavascriptInterface(pageMetrics.createBridge(), PageMetrics.BRIDGE_NAME);
+        view.setWebViewClient(new WebViewClient() {
+            @Override
+            public void onPageStarted(WebView view, String url, Bitmap favicon) {
+                super.onPageStarted(view, url, favicon);
+                if (!SnapshotStore.isSnapshotUrl(url) && view.getSettings().getAllowFileAccess()) {
+                    // Granted only to show a snapshot; leaving it takes it away.
+                    view.getSettings().setAllowFileAccess(false);
+                }
+                if (tabManager.findTab(view) != null) {
+                    reportDataSaver(TabManager.tabIdOf(view));
+                    if (!SnapshotStore.isSnapshotUrl(url)) dataSaver.startPage(TabManager.tabIdOf(view), url);
+                }
+                if (view != webView || SnapshotStore.isSnapshotUrl(url)) return;
+                currentNavigation = pageMetrics.startNavigation(url);
+                frameMonitor.finishPage();
+                frameMonitor.startPage(url);
+            }
+            
             @Override
             public void onPageFinished(WebView view, String url) {
                 super.onPageFinished(view, url);
-                urlEditText.setText(url);
-                addToHistory(url);
+                TabManager.Tab tab = tabManager.findTab(view);
+                if (tab == null) {
+                    if (view == revalidatingView) {
+                        finishRevalidation();
+                    } else {
+                        prefetcher.onPrerenderFinished(view);
+                    }
+                    return;
+                }
+                if (SnapshotStore.isSnapshotUrl(url)) return;
+                boolean restoredPage = tabManager.finishRestore(tab, url);
+                addToHistory(tab, view, url);
+                snapshotStore.save(view, url);
+                if (view != webView) return;
+                if (tab == restoringTab) {
+                    restoringTab = null;
+                    if (restoredPage) {
+                        // Not a fresh load: keep it out of the per-host statistics.
+                        currentNavigation = null;
+                        reportRestore(url);
+                    }
+                }
+                if (currentNavigation != null) {
+                    long elapsed = pageMetrics.finishNavigation(currentNavigation);
+                    if (prefs.getBoolean("logging_enabled", false)) {
+                        addLog(LogRecord.Type.PAGE_FINISHED, view, url, elapsed);
+                    }
+                    currentNavigation = null;
+                    view.evaluateJavascript(PageMetrics.TIMING_SCRIPT, null);
+                }
+                frameMonitor.renamePage(url);
+                urlEditText.setText(url, false);
                 updateButtons();
+                reportFirstPage();
+            }
+            
+            @Override
+            @SuppressWarnings("deprecation")
+            public void onReceivedError(WebView view, int errorCode, String description, String failingUrl) {
+                super.onReceivedError(view, errorCode, description, failingUrl);
+                if (view == revalidatingView) {
+                    revalidateFailed = true;
+                }
+            }
+            
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                String url = request.getUrl().toString();
+                if (!request.isForMainFrame() && requestFilter.shouldBlock(url)) {
+                    if (prefs.getBoolean("logging_enabled", false)) {
+                        addLog(LogRecord.Type.RESOURCE_BLOCKED, view, url, LogRecord.NONE);
+                    }
+                    return new WebResourceResponse("text/plain", "UTF-8", new ByteArrayInputStream(new byte[0]));
+                }
+                if (!request.isForMainFrame() && dataSaver.isEnabled() && "GET".equalsIgnoreCase(request.getMethod())
+                    && ImageSaver.isImageRequest(url, request.getRequestHeaders().get("Accept"))) {
+                    WebResourceResponse response = saveData(view, url, request.getRequestHeaders());
+                    if (response != null) {
+                        return response;
+                    }
+                }
+                if (request.isForMainFrame() || !ResourceCache.isCacheable(request.getMethod(), url)) {
+                    return super.shouldInterceptRequest(view, request);
+                }
+                Map<String, String> headers = withCookie(url, request.getRequestHeaders());
+                try {
+                    ResourceCache.Response response = ((GlobalApplication) getApplication()).getResourceCache().fetch(url, headers);
+                    if (response == null) {
+                        return null;
+                    }
+                    setCookies(url, response.cookies);
+                    return new WebResourceResponse(response.mimeType, response.encoding, response.statusCode,
+                                                   response.reasonPhrase, response.headers, response.data);
+                } catch (IOException e) {
+                    return null;
+                }
             }
             
             @Override
             public void onLoadResource(WebView view, String url) {
                 super.onLoadResource(view, url);
+                if (currentNavigation != null && view == webView) {
+                    currentNavigation.resourceCount++;
+                }
                 if (prefs.getBoolean("logging_enabled", false)) {
-                    addLog("资源加载: " + url);
+                    addLog(LogRecord.Type.RESOURCE_LOAD, view, url, LogRecord.NONE);
                 }
             }
         });
         
-        webView.setWebChromeClient(new WebChromeClient());
+        view.setWebChromeClient(new WebChromeClient());
+    }
+    
+    /**
+     * Applies the data saver policy to an image request; null lets the request
+     * go on as usual. Runs on the WebView's network thread.
+     */
+    private WebResourceResponse saveData(WebView view, String url, Map<String, String> requestHeaders) {
+        int tabId = TabManager.tabIdOf(view);
+        ImageSaver.Policy policy = dataSaver.policyFor(tabId, url);
+        if (policy == ImageSaver.Policy.BLOCK) {
+            if (prefs.getBoolean("logging_enabled", false)) {
+                addLog(LogRecord.Type.RESOURCE_BLOCKED, view, url, LogRecord.NONE);
+            }
+            return dataSaver.block(tabId);
+        }
+        if (policy != ImageSaver.Policy.COMPRESS) return null;
+        long start = SystemClock.uptimeMillis();
+        ImageSaver.Image image = dataSaver.load(tabId, url, withCookie(url, requestHeaders));
+        if (image == null) return null;
+        setCookies(url, image.cookies);
+        if (image.data != null && prefs.getBoolean("logging_enabled", false)) {
+            logSink.append(LogRecord.Type.IMAGE_COMPRESSED, tabId, url, SystemClock.uptimeMillis() - start, image.savedBytes());
+        }
+        return DataSaver.toResponse(image);
+    }
+    
+    /**
+     * Stores cookies set by a response fetched outside the WebView, which
+     * would otherwise never reach the cookie store.
+     */
+    private static void setCookies(String url, List<String> cookies) {
+        if (cookies.isEmpty()) return;
+        CookieManager cookieManager = CookieManager.getInstance();
+        for (String cookie : cookies) {
+            cookieManager.setCookie(url, cookie);
+        }
+    }
+
+    private static Map<String, String> withCookie(String url, Map<String, String> requestHeaders) {
+        Map<String, String> headers = new HashMap<>(requestHeaders);
+        String cookie = CookieManager.getInstance().getCookie(url);
+        if (cookie != null) {
+            headers.put("Cookie", cookie);
+        }
+        return headers;
+    }
+    
+    /**
+     * Logs what the data saver did for the page tab {@code tabId} showed.
+     */
+    private void reportDataSaver(int tabId) {
+        String report = dataSaver.finishPage(tabId);
+        if (report != null && prefs.getBoolean("logging_enabled", false)) {
+            addLog("省流 " + report);
+        }
     }
     
     private void loadUrl(String url) {
+        if (placeholderTab != null && placeholderTab == tabManager.getCurrent()) {
+            // Used before the session arrived: it stays, the session goes behind it.
+            placeholderTab = null;
+        }
         if (!url.startsWith("http://") && !url.startsWith("https://")) {
             url = "https://" + url;
         }
-        webView.loadUrl(url);
         if (prefs.getBoolean("logging_enabled", false)) {
-            addLog("页面加载: " + url);
+            addLog(LogRecord.Type.PAGE_LOAD, webView, url, LogRecord.NONE);
+        }
+        prefetcher.onNavigate(url);
+        if (!showPrerendered(url)) {
+            webView.loadUrl(url);
         }
     }
     
-    private void addToHistory(String url) {
-        if (currentIndex < historyList.size() - 1) {
-            historyList = historyList.subList(0, currentIndex + 1);
+    /**
+     * Warms the most visited origins and, if enabled, prerenders the top one
+     * in a WebView that belongs to no tab until it is opened.
+     */
+    private void prefetchLikelyPages() {
+        List<String> likely = new ArrayList<>(MAX_PRECONNECTS);
+        urlSuggestions.top(MAX_PRECONNECTS, likely);
+        for (String url : likely) {
+            prefetcher.preconnect(url);
         }
-        if (!historyList.contains(url)) {
-            historyList.add(url);
+        if (!likely.isEmpty() && !likely.get(0).equals(webView.getUrl()) && prefetcher.shouldPrerender(likely.get(0))) {
+            WebView view = webViewPool.acquire(this);
+            initWebView(view);
+            prefetcher.startPrerender(likely.get(0), view, webViewPool);
         }
-        currentIndex = historyList.size() - 1;
-        saveHistory();
     }
     
-    private void loadHistory() {
-        Set<String> historySet = prefs.getStringSet("history", new HashSet<String>());
-        historyList.addAll(historySet);
-        currentIndex = historyList.size() - 1;
+    /**
+     * Swaps the prerendered page into the current tab. Only done for a tab that
+     * has no back history and shows nothing or the start page, since the
+     * tab's old WebView, and its back/forward list with it, is released.
+     */
+    private boolean showPrerendered(String url) {
+        if (!isFresh(webView)) return false;
+        WebView view = prefetcher.takePrerender(url);
+        if (view == null) return false;
+        tabManager.replaceWebView(tabManager.getCurrent(), view);
+        currentNavigation = null;
+        if (view.getProgress() == 100 && view.getUrl() != null) {
+            addToHistory(tabManager.getCurrent(), view, view.getUrl());
+            urlEditText.setText(view.getUrl(), false);
+            updateButtons();
+        }
+        return true;
     }
     
-    private void saveHistory() {
-        SharedPreferences.Editor editor = prefs.edit();
-        Set<String> historySet = new HashSet<>(historyList);
-        editor.putStringSet("history", historySet);
-        editor.apply();
+    private static boolean isFresh(WebView view) {
+        if (view == null) return false;
+        if (view.canGoBack()) return false;
+        String url = view.getUrl();
+        return url == null || url.equals(HOME_URL) || url.equals(HOME_URL + "/");
     }
     
-    private void addLog(String log) {
-        Set<String> logSet = prefs.getStringSet("logs", new HashSet<String>());
-        List<String> logs = new ArrayList<>(logSet);
-        logs.add(0, log);
-        if (logs.size() > 100) {
-            logs = logs.subList(0, 100);
+    private void addToHistory(TabManager.Tab tab, WebView view, String url) {
+        if (tab != null) {
+            tab.url = url;
+            tab.title = view.getTitle();
+            tab.navigationStack.push(url);
+        }
+        urlSuggestions.recordVisit(url, historyStore.recordVisit(url));
+        sessionStore.requestSave();
+    }
+    
+    /**
+     * Opens the tabs of a saved session, then starts saving. During
+     * {@code onCreate}, before any tab is open, its current tab is selected.
+     * Arriving later, it takes the place of the empty tab left waiting for it;
+     * if a page has been opened meanwhile, its tabs are added behind the open
+     * ones so that page stays. Without a session the waiting tab loads the
+     * start page. A session that fails to restore is deleted.
+     */
+    private void restoreSession(SessionCodec.Session session) {
+        TabManager.Tab placeholder = placeholderTab;
+        placeholderTab = null;
+        boolean select = placeholder != null ? placeholder == tabManager.getCurrent() : tabManager.getCurrent() == null;
+        if (session != null) {
+            restoreStart = SystemClock.uptimeMillis();
+            try {
+                TabManager.Tab current = tabManager.restoreSession(session, select);
+                restoringTab = select ? current : null;
+            } catch (RuntimeException e) {
+                Log.w("MainActivity", "Failed to restore session", e);
+                sessionStore.discard();
+                session = null;
+            }
         }
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putStringSet("logs", new HashSet<>(logs));
-        editor.apply();
+        if (placeholder != null) {
+            if (session == null && placeholder == tabManager.getCurrent()) {
+                loadUrl(HOME_URL);
+            } else {
+                tabManager.close(placeholder);
+            }
+        }
+        sessionStore.setSource(new SessionStore.Source() {
+            @Override
+            public SessionCodec.Session capture() {
+                return tabManager.captureSession();
+            }
+        });
+        if (!select) sessionStore.requestSave();
+    }
+    
+    /**
+     * Logs the time from handing the saved session to the tabs to the restored
+     * page finishing, next to the median time a fresh load of that host takes;
+     * the restore should be the faster of the two.
+     */
+    private void reportRestore(String url) {
+        long elapsed = SystemClock.uptimeMillis() - restoreStart;
+        long fresh = pageMetrics.getPageLoadPercentile(url, 50);
+        String message = "会话恢复耗时: " + elapsed + "ms" + (fresh >= 0 ? " (新加载 p50 " + fresh + "ms)" : "");
+        if (fresh >= 0 && elapsed >= fresh) {
+            Log.w("MainActivity", message + " 慢于新加载");
+        } else {
+            Log.i("MainActivity", message);
+        }
+        if (prefs.getBoolean("logging_enabled", false)) {
+            addLog(message);
+        }
+    }
+    
+    /**
+     * Logs the time from application start to the first finished page of this
+     * process, and whether the WebView came from the pool.
+     */
+    private void reportFirstPage() {
+        if (firstPageReported) return;
+        firstPageReported = true;
+        long elapsed = SystemClock.uptimeMillis() - GlobalApplication.getStartUptime();
+        String message = "首页加载耗时: " + elapsed + "ms (WebView " + (webViewPrewarmed ? "预热" : "新建") + ")";
+        Log.i("MainActivity", message);
+        if (prefs.getBoolean("logging_enabled", false)) {
+            addLog(message);
+        }
+        StartupTrace.end(firstPageSpan);
+        StartupTrace.finishLaunch(this, webViewPrewarmed ? "WebView 预热" : "WebView 新建");
+    }
+    
+    private void addLog(String message) {
+        logSink.append(message);
+    }
+    
+    private void addLog(LogRecord.Type type, WebView view, String url, long durationMillis) {
+        logSink.append(type, TabManager.tabIdOf(view), url, durationMillis, LogRecord.NONE);
     }
     
     private void goBack() {
         if (webView.canGoBack()) {
             webView.goBack();
-        } else if (currentIndex > 0) {
-            currentIndex--;
-            loadUrl(historyList.get(currentIndex));
+        } else if (navigationStack.canGoBack()) {
+            loadUrl(navigationStack.back());
         } else {
             Toast.makeText(this, "已经是第一页", Toast.LENGTH_SHORT).show();
         }
@@ -198,17 +677,68 @@ public class MainActivity extends AppCompatActivity {
     private void goForward() {
         if (webView.canGoForward()) {
             webView.goForward();
-        } else if (currentIndex < historyList.size() - 1) {
-            currentIndex++;
-            loadUrl(historyList.get(currentIndex));
+        } else if (navigationStack.canGoForward()) {
+            loadUrl(navigationStack.forward());
         } else {
             Toast.makeText(this, "已经是最后一页", Toast.LENGTH_SHORT).show();
         }
     }
     
     private void updateButtons() {
-        backButton.setEnabled(webView.canGoBack() || currentIndex > 0);
-        forwardButton.setEnabled(webView.canGoForward() || currentIndex < historyList.size() - 1);
+        backButton.setEnabled(webView.canGoBack() || navigationStack.canGoBack());
+        forwardButton.setEnabled(webView.canGoForward() || navigationStack.canGoForward());
+    }
+    
+    private class SuggestionAdapter extends ArrayAdapter<String> {
+
+        private List<String> suggestions = new ArrayList<>();
+
+        public SuggestionAdapter() {
+            super(MainActivity.this, android.R.layout.simple_dropdown_item_1line);
+        }
+
+        @Override
+        public int getCount() {
+            return suggestions.size();
+        }
+
+        @Override
+        public String getItem(int position) {
+            return suggestions.get(position);
+        }
+
+        @Override
+        public Filter getFilter() {
+            return filter;
+        }
+
+        private final Filter filter = new Filter() {
+            @Override
+            protected FilterResults performFiltering(CharSequence constraint) {
+                List<String> result = new ArrayList<>(MAX_SUGGESTIONS);
+                if (constraint != null) {
+                    urlSuggestions.lookup(constraint, MAX_SUGGESTIONS, result);
+                }
+                if (!result.isEmpty()) {
+                    prefetcher.preconnect(result.get(0));
+                }
+                FilterResults results = new FilterResults();
+                results.values = result;
+                results.count = result.size();
+                return results;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            protected void publishResults(CharSequence constraint, FilterResults results) {
+                suggestions = (List<String>) results.values;
+                if (results.count > 0) {
+                    notifyDataSetChanged();
+                } else {
+                    notifyDataSetInvalidated();
+                }
+            }
+        };
     }
     
     @Override
@@ -217,20 +747,130 @@ public class MainActivity extends AppCompatActivity {
         return true;
     }
     
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.menu_data_saver).setChecked(dataSaver.isEnabled());
+        menu.findItem(R.id.menu_image_policy).setVisible(dataSaver.isEnabled() && ImageSaver.hostOf(String.valueOf(webView.getUrl())) != null);
+        return super.onPrepareOptionsMenu(menu);
+    }
+    
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         if (item.getItemId() == R.id.menu_history) {
             Intent intent = new Intent(this, HistoryActivity.class);
             startActivity(intent);
             return true;
+        } else if (item.getItemId() == R.id.menu_tabs) {
+            showTabs();
+            return true;
         } else if (item.getItemId() == R.id.menu_developer_console) {
             Intent intent = new Intent(this, DeveloperConsoleActivity.class);
             startActivity(intent);
             return true;
+        } else if (item.getItemId() == R.id.menu_data_saver) {
+            dataSaver.setEnabled(!item.isChecked());
+            item.setChecked(!item.isChecked());
+            return true;
+        } else if (item.getItemId() == R.id.menu_image_policy) {
+            showImagePolicy();
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
     
+    /**
+     * Lets the user pick how images on the current site are handled.
+     */
+    private void showImagePolicy() {
+        final String host = ImageSaver.hostOf(String.valueOf(webView.getUrl()));
+        if (host == null) return;
+        final ImageSaver.Policy[] policies = { null, ImageSaver.Policy.COMPRESS, ImageSaver.Policy.ALLOW, ImageSaver.Policy.BLOCK };
+        String[] labels = new String[policies.length];
+        labels[0] = getString(R.string.image_policy_default);
+        for (int i = 1; i < policies.length; i++) {
+            labels[i] = DataSaver.label(policies[i]);
+        }
+        int checked = Arrays.asList(policies).indexOf(dataSaver.getPolicy(host));
+        new AlertDialog.Builder(this)
+            .setTitle(host)
+            .setSingleChoiceItems(labels, checked, new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    dataSaver.setPolicy(host, policies[which]);
+                    dialog.dismiss();
+                    webView.reload();
+                }
+            })
+            .setNegativeButton(android.R.string.cancel, null)
+            .show();
+    }
+    
+    private void showTabs() {
+        final TabAdapter adapter = new TabAdapter();
+        new AlertDialog.Builder(this)
+            .setTitle(R.string.tabs)
+            .setAdapter(adapter, new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    tabManager.select(adapter.getItem(which));
+                }
+            })
+            .setPositiveButton(R.string.new_tab, new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    tabManager.open(null);
+                    loadUrl(HOME_URL);
+                }
+            })
+            .setNegativeButton(android.R.string.cancel, null)
+            .show();
+    }
+    
+    private class TabAdapter extends BaseAdapter {
+        
+        @Override
+        public int getCount() {
+            return tabManager.getTabs().size();
+        }
+        
+        @Override
+        public TabManager.Tab getItem(int position) {
+            return tabManager.getTabs().get(position);
+        }
+        
+        @Override
+        public long getItemId(int position) {
+            return getItem(position).id;
+        }
+        
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            View view = convertView != null ? convertView : LayoutInflater.from(parent.getContext()).inflate(R.layout.tab_item, parent, false);
+            final TabManager.Tab tab = getItem(position);
+            ImageView thumbnailView = view.findViewById(R.id.thumbnail_image_view);
+            TextView titleView = view.findViewById(R.id.title_text_view);
+            TextView urlView = view.findViewById(R.id.url_text_view);
+            thumbnailView.setImageBitmap(tab.thumbnail);
+            titleView.setText(tab.title != null && !tab.title.isEmpty() ? tab.title : getString(R.string.new_tab));
+            titleView.setTypeface(null, tab == tabManager.getCurrent() ? Typeface.BOLD : Typeface.NORMAL);
+            urlView.setText(tab.url != null ? tab.url : "");
+            urlView.setAlpha(tab.isSuspended() ? 0.5f : 1f);
+            view.findViewById(R.id.close_button).setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    reportDataSaver(tab.id);
+                    if (!tabManager.close(tab)) {
+                        tabManager.open(null);
+                        loadUrl(HOME_URL);
+                    }
+                    sessionStore.requestSave();
+                    notifyDataSetChanged();
+                }
+            });
+            return view;
+        }
+    }
+    
     @Override
     public void onBackPressed() {
         if (webView.canGoBack()) {
@@ -240,11 +880,34 @@ public class MainActivity extends AppCompatActivity {
         }
     }
     
+    @Override
+    protected void onResume() {
+        super.onResume();
+        frameMonitor.resume(getRefreshRate());
+    }
+
+    @SuppressWarnings("deprecation")
+    private float getRefreshRate() {
+        Display display = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? getDisplay() : getWindowManager().getDefaultDisplay();
+        return display != null ? display.getRefreshRate() : 0;
+    }
+    
+    @Override
+    protected void onPause() {
+        frameMonitor.pause();
+        sessionStore.saveNow();
+        super.onPause();
+    }
+    
     @Override
     protected void onDestroy() {
-        if (webView != null) {
-            webView.destroy();
-        }
+        frameMonitor.finishPage();
+        prefetcher.cancelPrerender();
+        cancelRevalidation();
+        if (sessionCallback != null) sessionStore.cancelLoad(sessionCallback);
+        sessionStore.setSource(null);
+        tabManager.unregisterMemoryHooks(MemoryPressureManager.getInstance(this));
+        tabManager.destroy();
         super.onDestroy();
     }
 }
\ No newline at end of file
@@ -0,0 +1,316 @@
+package com.example.application;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Printer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Times every message the main looper dispatches and records the slow ones.
+ *
+ * Installed as the main looper's message {@link Printer} by
+ * {@code PartCrashHandler}. Dispatch times go into a {@link LatencyHistogram};
+ * a watchdog thread samples the main thread's stack once a message has run
+ * longer than the threshold, so a slow message is reported with what it was
+ * doing, not just how long it took. Reports are kept in a small
+ * {@link SegmentedLog} under {@code files/main_thread}. Off by default, since
+ * the looper builds a log string for every message while a printer is set.
+ */
+public class MainThreadMonitor implements Printer {
+
+    private static final String TAG = "MainThreadMonitor";
+
+    public static final String PREF_ENABLED = "main_thread_monitor_enabled";
+
+    public static final String PREF_THRESHOLD = "main_thread_threshold_ms";
+
+    public static final long DEFAULT_THRESHOLD_MS = 200;
+
+    private static final long HIGHEST_LATENCY_MS = 60 * 1000;
+
+    private static final int MAX_STACK_FRAMES = 40;
+
+    private static final int SEGMENT_SIZE = 256 * 1024;
+
+    private static final int MAX_SEGMENTS = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static MainThreadMonitor sInstance;
+
+    private final File mDir;
+
+    private final SharedPreferences mPrefs;
+
+    private final Thread mMainThread = Looper.getMainLooper().getThread();
+
+    private final LatencyHistogram mHistogram = new LatencyHistogram(HIGHEST_LATENCY_MS);
+
+    private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private SegmentedLog mLog;
+
+    private volatile long mThresholdMillis;
+
+    // Written on the main thread, read by the watchdog.
+    private volatile long mDispatchStart;
+    private volatile int mDispatchSeq;
+
+    // Written by the watchdog, read on the main thread.
+    private volatile StackTraceElement[] mStack;
+    private volatile int mStackSeq = -1;
+
+    private String mTarget;
+
+    private Thread mWatchdog;
+
+    public static synchronized MainThreadMonitor getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MainThreadMonitor(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * The monitor if something has created it already, or null.
+     */
+    public static synchronized MainThreadMonitor peekInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Creates the monitor and reads its settings on a background thread, then
+     * starts monitoring if it was left enabled; keeps the preference read off
+     * the main thread during startup.
+     */
+    public static void attachInBackground(Context context) {
+        final Context appContext = context.getApplicationContext();
+        new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    getInstance(appContext).attach();
+                }
+            }, "MainThreadMonitor").start();
+    }
+
+    private MainThreadMonitor(Context context) {
+        this.mDir = new File(context.getFilesDir(), "main_thread");
+        this.mPrefs = context.getSharedPreferences("browser_prefs", Context.MODE_PRIVATE);
+        this.mThresholdMillis = mPrefs.getLong(PREF_THRESHOLD, DEFAULT_THRESHOLD_MS);
+    }
+
+    /**
+     * Starts monitoring if it was left enabled.
+     */
+    public void attach() {
+        if (mPrefs.getBoolean(PREF_ENABLED, false)) {
+            start();
+        }
+    }
+
+    public boolean isEnabled() {
+        return mWatchdog != null;
+    }
+
+    public synchronized void setEnabled(boolean enabled) {
+        mPrefs.edit().putBoolean(PREF_ENABLED, enabled).apply();
+        if (enabled) {
+            start();
+        } else {
+            stop();
+        }
+    }
+
+    public void setThresholdMillis(long thresholdMillis) {
+        mThresholdMillis = Math.max(16, thresholdMillis);
+        mPrefs.edit().putLong(PREF_THRESHOLD, mThresholdMillis).apply();
+    }
+
+    public long getThresholdMillis() {
+        return mThresholdMillis;
+    }
+
+    private synchronized void start() {
+        if (mWatchdog != null) return;
+        mWatchdog = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    watch();
+                }
+            }, "main-watchdog");
+        mWatchdog.setDaemon(true);
+        mWatchdog.start();
+        Looper.getMainLooper().setMessageLogging(this);
+    }
+
+    private synchronized void stop() {
+        if (mWatchdog == null) return;
+        Looper.getMainLooper().setMessageLogging(null);
+        mWatchdog.interrupt();
+        mWatchdog = null;
+        mDispatchStart = 0;
+    }
+
+    /**
+     * Called by the looper with ">>>>> Dispatching to ..." before and
+     * "<<<<< Finished to ..." after each message.
+     */
+    @Override
+    public void println(String x) {
+        if (x.isEmpty()) return;
+        if (x.charAt(0) == '>') {
+            mTarget = x;
+            mDispatchSeq++;
+            mDispatchStart = SystemClock.uptimeMillis();
+        } else if (x.charAt(0) == '<' && mDispatchStart != 0) {
+            long duration = SystemClock.uptimeMillis() - mDispatchStart;
+            mDispatchStart = 0;
+            synchronized (mHistogram) {
+                mHistogram.record(duration);
+            }
+            if (duration >= mThresholdMillis) {
+                report(mTarget, duration, mStackSeq == mDispatchSeq ? mStack : null);
+            }
+        }
+    }
+
+    /**
+     * Forgets the message in progress; called when it threw out of
+     * {@link Looper#loop()}, which skips the "finished" line.
+     */
+    public void abandonDispatch() {
+        mDispatchStart = 0;
+    }
+
+    /**
+     * Polls at half the threshold and samples the main thread's stack once per
+     * slow message.
+     */
+    private void watch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(Math.max(8, mThresholdMillis / 2));
+            } catch (InterruptedException e) {
+                return;
+            }
+            int seq = mDispatchSeq;
+            long start = mDispatchStart;
+            if (start == 0 || seq == mStackSeq || SystemClock.uptimeMillis() - start < mThresholdMillis) continue;
+            StackTraceElement[] stack = mMainThread.getStackTrace();
+            if (mDispatchSeq == seq && mDispatchStart == start) {
+                mStack = stack;
+                mStackSeq = seq;
+            }
+        }
+    }
+
+    private void report(final String target, final long duration, final StackTraceElement[] stack) {
+        final long time = System.currentTimeMillis();
+        mWriter.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    StringBuilder builder = new StringBuilder();
+                    builder.append(new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.getDefault()).format(new Date(time)))
+                        .append("  ").append(duration).append("ms\n")
+                        .append(target.replace(">>>>> Dispatching to ", "")).append('\n');
+                    if (stack != null) {
+                        int frames = Math.min(stack.length, MAX_STACK_FRAMES);
+                        for (int i = 0; i < frames; i++) {
+                            builder.append("\tat ").append(stack[i]).append('\n');
+                        }
+                    } else {
+                        builder.append("\t(未采样到调用栈)\n");
+                    }
+                    try {
+                        log().append(builder.toString().getBytes(UTF_8));
+                        log().flush();
+                    } catch (IOException e) {
+                        Log.w(TAG, "Failed to record slow message", e);
+                    }
+                }
+            });
+    }
+
+    private SegmentedLog log() throws IOException {
+        if (mLog == null) {
+            mLog = new SegmentedLog(mDir, SEGMENT_SIZE, MAX_SEGMENTS);
+        }
+        return mLog;
+    }
+
+    /**
+     * Dispatch time percentiles followed by the most recent slow messages,
+     * newest first; delivered on the main thread.
+     */
+    public void loadReport(final int maxReports, final Callback<String> callback) {
+        mWriter.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    final StringBuilder builder = new StringBuilder();
+                    synchronized (mHistogram) {
+                        builder.append(String.format(Locale.ROOT, "消息数 %d  阈值 %dms\np50 %dms  p95 %dms  p99 %dms  max %dms\n\n",
+                                                     mHistogram.getTotalCount(), mThresholdMillis,
+                                                     mHistogram.getValueAtPercentile(50),
+                                                     mHistogram.getValueAtPercentile(95),
+                                                     mHistogram.getValueAtPercentile(99),
+                                                     mHistogram.getMax()));
+                    }
+                    try {
+                        SegmentedLog.Reader reader = log().openReader();
+                        int count = Math.min(reader.size(), maxReports);
+                        for (int i = 0; i < count; i++) {
+                            String report = reader.getString(reader.size() - 1 - i);
+                            if (report != null) builder.append(report).append('\n');
+                        }
+                    } catch (IOException e) {
+                        builder.append(e);
+                    }
+                    mMainHandler.post(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                callback.onResult(builder.toString());
+                            }
+                        });
+                }
+            });
+    }
+
+    public void clear() {
+        synchronized (mHistogram) {
+            mHistogram.reset();
+        }
+        mWriter.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        log().clear();
+                    } catch (IOException e) {
+                        Log.w(TAG, "Failed to clear reports", e);
+                    }
+                }
+            });
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.application;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.Debug;
+import android.util.Log;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Coordinates memory release when {@link GlobalApplication} receives
+ * {@code onTrimMemory} or {@code onLowMemory}.
+ *
+ * Trim levels come on two scales: the {@code RUNNING_*} levels while the app
+ * is in the foreground, and {@code UI_HIDDEN} and up once it is not. Caches
+ * register a {@link Releasable} with the lowest level on either scale, or
+ * both, at which they should give up memory. A trim runs the hooks of its own
+ * scale registered at or below its level, cheapest first, so pressure
+ * escalates from flushing buffers to dropping bitmaps and WebViews;
+ * {@code TRIM_MEMORY_COMPLETE} runs every hook. The last {@link #MAX_EVENTS} trims and what each released are kept
+ * for the developer console. Main thread only.
+ */
+public class MemoryPressureManager {
+
+    private static final String TAG = "MemoryPressure";
+
+    private static final int MAX_EVENTS = 16;
+
+    // The ComponentCallbacks2.TRIM_MEMORY_RUNNING_* values, which are
+    // deprecated since API 34 because it no longer sends them; older
+    // releases still do.
+    public static final int RUNNING_MODERATE = 5;
+
+    public static final int RUNNING_LOW = 10;
+
+    public static final int RUNNING_CRITICAL = 15;
+
+    private static MemoryPressureManager sInstance;
+
+    private final Context mContext;
+
+    private final List<Hook> mHooks = new ArrayList<>();
+
+    private final ArrayDeque<String> mEvents = new ArrayDeque<>();
+
+    public interface Releasable {
+
+        /**
+         * Releases what this hook holds; returns a short description of what
+         * was released, or null if there was nothing to release.
+         */
+        String release(int level);
+    }
+
+    public static synchronized MemoryPressureManager getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MemoryPressureManager(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private MemoryPressureManager(Context context) {
+        this.mContext = context;
+    }
+
+    /**
+     * Runs {@code releasable} for trims on the scale of {@code level} at
+     * {@code level} and above. Hooks with the same level run in registration
+     * order.
+     */
+    public void register(String name, int level, Releasable releasable) {
+        int index = mHooks.size();
+        while (index > 0 && mHooks.get(index - 1).level > level) index--;
+        mHooks.add(index, new Hook(name, level, releasable));
+    }
+
+    /**
+     * Runs {@code releasable} for running trims at {@code runningLevel} and
+     * above and for background trims at {@code backgroundLevel} and above.
+     */
+    public void register(String name, int runningLevel, int backgroundLevel, Releasable releasable) {
+        register(name, runningLevel, releasable);
+        register(name, backgroundLevel, releasable);
+    }
+
+    public void unregister(Releasable releasable) {
+        for (int i = mHooks.size() - 1; i >= 0; i--) {
+            if (mHooks.get(i).releasable == releasable) mHooks.remove(i);
+        }
+    }
+
+    public void onTrimMemory(int level) {
+        StringBuilder released = new StringBuilder();
+        List<Releasable> ran = new ArrayList<>();
+        for (Hook hook : new ArrayList<>(mHooks)) {
+            if (!runsAt(hook.level, level) || ran.contains(hook.releasable)) continue;
+            ran.add(hook.releasable);
+            String result;
+            try {
+                result = hook.releasable.release(level);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Hook " + hook.name + " failed", e);
+                continue;
+            }
+            if (result != null) {
+                if (released.length() > 0) released.append(", ");
+                released.append(hook.name).append(' ').append(result);
+            }
+        }
+        String event = new SimpleDateFormat("MM-dd HH:mm:ss", Locale.getDefault()).format(new Date())
+            + "  " + levelName(level) + ": " + (released.length() > 0 ? released : "无可释放");
+        Log.i(TAG, event);
+        mEvents.addFirst(event);
+        while (mEvents.size() > MAX_EVENTS) mEvents.removeLast();
+    }
+
+    private static boolean runsAt(int hookLevel, int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) return true;
+        return isRunning(hookLevel) == isRunning(level) && hookLevel <= level;
+    }
+
+    private static boolean isRunning(int level) {
+        return level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+    }
+
+    /**
+     * Current Java heap, native heap and PSS, the registered hooks and the
+     * recent trims, newest first.
+     */
+    public String formatReport() {
+        Runtime runtime = Runtime.getRuntime();
+        ActivityManager activityManager = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+        Debug.MemoryInfo memoryInfo = new Debug.MemoryInfo();
+        Debug.getMemoryInfo(memoryInfo);
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "Java 堆   %s / %s (上限 %s)\n",
+                                     mb(runtime.totalMemory() - runtime.freeMemory()), mb(runtime.totalMemory()), mb(runtime.maxMemory())));
+        builder.append(String.format(Locale.ROOT, "Native 堆 %s / %s\n",
+                                     mb(Debug.getNativeHeapAllocatedSize()), mb(Debug.getNativeHeapSize())));
+        builder.append(String.format(Locale.ROOT, "PSS       %s\n", mb(memoryInfo.getTotalPss() * 1024L)));
+        builder.append(String.format(Locale.ROOT, "memoryClass %dMB%s\n\n",
+                                     activityManager.getMemoryClass(), activityManager.isLowRamDevice() ? "  低内存设备" : ""));
+
+        builder.append("释放顺序:\n");
+        for (Hook hook : mHooks) {
+            builder.append("  ").append(levelName(hook.level)).append("  ").append(hook.name).append('\n');
+        }
+        builder.append("\n最近的内存回收:\n");
+        if (mEvents.isEmpty()) builder.append("  无\n");
+        for (String event : mEvents) {
+            builder.append("  ").append(event).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static String mb(long bytes) {
+        return String.format(Locale.ROOT, "%.1fMB", bytes / (1024.0 * 1024.0));
+    }
+
+    private static String levelName(int level) {
+        switch (level) {
+            case RUNNING_MODERATE: return "RUNNING_MODERATE";
+            case RUNNING_LOW: return "RUNNING_LOW";
+            case RUNNING_CRITICAL: return "RUNNING_CRITICAL";
+            case ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN: return "UI_HIDDEN";
+            case ComponentCallbacks2.TRIM_MEMORY_BACKGROUND: return "BACKGROUND";
+            case ComponentCallbacks2.TRIM_MEMORY_MODERATE: return "MODERATE";
+            case ComponentCallbacks2.TRIM_MEMORY_COMPLETE: return "COMPLETE";
+            default: return "LEVEL_" + level;
+        }
+    }
+
+    private static class Hook {
+
+        final String name;
+        final int level;
+        final Releasable releasable;
+
+        Hook(String name, int level, Releasable releasable) {
+            this.name = name;
+            this.level = level;
+            this.releasable = releasable;
+        }
+    }
+}
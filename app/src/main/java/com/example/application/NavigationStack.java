@@ -0,0 +1,181 @@
+package com.example.application;
+
+/**
+ * Back/forward list of the URLs visited in one tab, kept separately from the
+ * WebView's own history and from the persistent {@link HistoryStore}.
+ *
+ * Entries form a doubly linked list, so push, back and forward take constant
+ * time however long the session. Visiting a page drops the forward entries and
+ * appends it; the order of the entries is never changed. Pushing the URL of
+ * the entry just before or after the current one moves there instead, since
+ * the WebView's own back and forward report their pages like any other load.
+ * Past {@code maxSize} entries the oldest is dropped. {@link #getEntries} and {@link #restore} give a compact form for
+ * {@code onSaveInstanceState}.
+ */
+public class NavigationStack {
+
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    private final int mMaxSize;
+
+    private int mSize;
+
+    private Node mHead;
+
+    private Node mTail;
+
+    private Node mCurrent;
+
+    private int mIndex = -1;
+
+    public NavigationStack() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public NavigationStack(int maxSize) {
+        this.mMaxSize = maxSize;
+    }
+
+    public void push(String url) {
+        if (mCurrent != null) {
+            if (mCurrent.url.equals(url)) return;
+            if (mCurrent.prev != null && mCurrent.prev.url.equals(url)) {
+                back();
+                return;
+            }
+            if (mCurrent.next != null && mCurrent.next.url.equals(url)) {
+                forward();
+                return;
+            }
+        }
+        append(url);
+    }
+
+    private void append(String url) {
+        // Each entry is unlinked at most once after being pushed, so dropping
+        // the forward entries is amortised constant time.
+        while (mTail != mCurrent) {
+            unlink(mTail);
+        }
+        Node node = new Node(url);
+        node.prev = mTail;
+        if (mTail != null) {
+            mTail.next = node;
+        } else {
+            mHead = node;
+        }
+        mTail = node;
+        mSize++;
+        if (mSize > mMaxSize) {
+            unlink(mHead);
+        }
+        mCurrent = node;
+        mIndex = mSize - 1;
+    }
+
+    public boolean canGoBack() {
+        return mCurrent != null && mCurrent.prev != null;
+    }
+
+    public boolean canGoForward() {
+        return mCurrent != null && mCurrent.next != null;
+    }
+
+    /**
+     * Moves back one entry and returns its URL; call only if {@link #canGoBack}.
+     */
+    public String back() {
+        mCurrent = mCurrent.prev;
+        mIndex--;
+        return mCurrent.url;
+    }
+
+    /**
+     * Moves forward one entry and returns its URL; call only if {@link #canGoForward}.
+     */
+    public String forward() {
+        mCurrent = mCurrent.next;
+        mIndex++;
+        return mCurrent.url;
+    }
+
+    /**
+     * The current URL, or null if nothing has been pushed.
+     */
+    public String current() {
+        return mCurrent != null ? mCurrent.url : null;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Position of the current entry in {@link #getEntries}, or -1 if empty.
+     */
+    public int getIndex() {
+        return mIndex;
+    }
+
+    /**
+     * All entries, oldest first.
+     */
+    public String[] getEntries() {
+        String[] entries = new String[mSize];
+        int i = 0;
+        for (Node node = mHead; node != null; node = node.next) {
+            entries[i++] = node.url;
+        }
+        return entries;
+    }
+
+    /**
+     * Replaces the contents with {@code entries} as returned by
+     * {@link #getEntries}, positioned at {@code index}. Null entries and
+     * entries beyond the size limit are dropped.
+     */
+    public void restore(String[] entries, int index) {
+        mHead = mTail = mCurrent = null;
+        mSize = 0;
+        mIndex = -1;
+        if (entries == null) return;
+        int steps = 0;
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i] == null) continue;
+            append(entries[i]);
+            if (i > index) steps++;
+        }
+        while (steps-- > 0 && canGoBack()) {
+            back();
+        }
+    }
+
+    private void unlink(Node node) {
+        mSize--;
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            mHead = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        } else {
+            mTail = node.prev;
+        }
+        if (node == mCurrent) {
+            mCurrent = node.prev;
+        }
+        node.prev = node.next = null;
+    }
+
+    private static final class Node {
+
+        final String url;
+        Node prev;
+        Node next;
+
+        Node(String url) {
+            this.url = url;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.application;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.JavascriptInterface;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Per-host page load latency, kept as fixed-size {@link LatencyHistogram}s.
+ *
+ * Each navigation contributes the client-side time from {@code onPageStarted} to
+ * {@code onPageFinished} and the number of {@code onLoadResource} calls. The
+ * page's own Navigation Timing values arrive later through {@link #BRIDGE_NAME},
+ * injected with {@link #TIMING_SCRIPT}. Only the most recently used
+ * {@link #MAX_HOSTS} hosts are kept. Stats are saved to
+ * {@code files/page_metrics.bin} a few seconds after they change.
+ */
+public class PageMetrics {
+
+    private static final String TAG = "PageMetrics";
+
+    public static final String BRIDGE_NAME = "PageMetricsBridge";
+
+    /**
+     * Waits for {@code loadEventEnd}, polling for up to two seconds, then reports
+     * Navigation Timing Level 2 values (or Level 1 on old WebViews).
+     */
+    public static final String TIMING_SCRIPT =
+        "(function(){var tries=0;function report(){" +
+        "var b=window." + BRIDGE_NAME + ";if(!b||!window.performance)return;" +
+        "var p=window.performance,n=p.getEntriesByType&&p.getEntriesByType('navigation')[0],ttfb,dcl,load;" +
+        "if(n){ttfb=n.responseStart;dcl=n.domContentLoadedEventEnd;load=n.loadEventEnd;}" +
+        "else if(p.timing){var t=p.timing,s=t.navigationStart;ttfb=t.responseStart-s;" +
+        "dcl=t.domContentLoadedEventEnd?t.domContentLoadedEventEnd-s:0;load=t.loadEventEnd?t.loadEventEnd-s:0;}" +
+        "else return;" +
+        "if(!load&&++tries<20){setTimeout(report,100);return;}" +
+        "b.report(location.hostname,ttfb,dcl,load);}report();})();";
+
+    private static final String FILE_NAME = "page_metrics.bin";
+
+    private static final int FILE_VERSION = 1;
+
+    private static final int MAX_HOSTS = 32;
+
+    private static final long HIGHEST_LATENCY_MS = 10 * 60 * 1000;
+
+    private static final long HIGHEST_RESOURCE_COUNT = 10000;
+
+    private static final long WRITE_DELAY_MS = 5000;
+
+    private static PageMetrics sInstance;
+
+    private final File mFile;
+
+    private final LinkedHashMap<String, HostStats> mHosts = new LinkedHashMap<String, HostStats>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, HostStats> eldest) {
+            return size() > MAX_HOSTS;
+        }
+    };
+
+    private final ScheduledExecutorService mWriter = Executors.newSingleThreadScheduledExecutor();
+
+    private final AtomicBoolean mDirty = new AtomicBoolean();
+
+    private volatile String mLastHost;
+
+    public static synchronized PageMetrics getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PageMetrics(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return sInstance;
+    }
+
+    private PageMetrics(File file) {
+        this.mFile = file;
+        mWriter.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    load();
+                }
+            });
+    }
+
+    public Navigation startNavigation(String url) {
+        return new Navigation(hostOf(url));
+    }
+
+    /**
+     * Records the finished navigation and returns how long it took in milliseconds.
+     */
+    public long finishNavigation(Navigation navigation) {
+        long elapsed = SystemClock.elapsedRealtime() - navigation.startTime;
+        mLastHost = navigation.host;
+        synchronized (this) {
+            HostStats stats = statsFor(navigation.host);
+            stats.pageLoad.record(elapsed);
+            stats.resources.record(navigation.resourceCount);
+        }
+        scheduleWrite();
+        return elapsed;
+    }
+
+    /**
+     * Values from the page's Navigation Timing entry, in milliseconds from the
+     * start of the navigation; zero or negative values are skipped. Reports for
+     * any host other than the last finished navigation are ignored.
+     */
+    public void recordTiming(String host, long ttfb, long domContentLoaded, long loadEvent) {
+        if (host == null || !host.toLowerCase(Locale.ROOT).equals(mLastHost)) return;
+        synchronized (this) {
+            HostStats stats = statsFor(mLastHost);
+            if (ttfb > 0) stats.ttfb.record(ttfb);
+            if (domContentLoaded > 0) stats.domContentLoaded.record(domContentLoaded);
+            if (loadEvent > 0) stats.loadEvent.record(loadEvent);
+        }
+        scheduleWrite();
+    }
+
+    /**
+     * The given percentile of page load times for the host of {@code url}, in
+     * ms, or -1 if none were recorded.
+     */
+    public synchronized long getPageLoadPercentile(String url, int percentile) {
+        HostStats stats = mHosts.get(hostOf(url));
+        if (stats == null || stats.pageLoad.getTotalCount() == 0) return -1;
+        return stats.pageLoad.getValueAtPercentile(percentile);
+    }
+
+    public synchronized void clear() {
+        mHosts.clear();
+        scheduleWrite();
+    }
+
+    /**
+     * Hosts with the most navigations first; p50/p95/p99 per metric, in ms.
+     */
+    public synchronized String formatReport() {
+        List<Map.Entry<String, HostStats>> entries = new ArrayList<>(mHosts.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, HostStats>>() {
+            @Override
+            public int compare(Map.Entry<String, HostStats> a, Map.Entry<String, HostStats> b) {
+                return Long.compare(b.getValue().pageLoad.getTotalCount(), a.getValue().pageLoad.getTotalCount());
+            }
+        });
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, HostStats> entry : entries) {
+            HostStats stats = entry.getValue();
+            builder.append(entry.getKey()).append("  (").append(stats.pageLoad.getTotalCount()).append(" 次)\n");
+            builder.append(String.format(Locale.ROOT, "  %-10s %7s %7s %7s\n", "", "p50", "p95", "p99"));
+            appendRow(builder, "页面加载", stats.pageLoad);
+            appendRow(builder, "TTFB", stats.ttfb);
+            appendRow(builder, "DOMReady", stats.domContentLoaded);
+            appendRow(builder, "onload", stats.loadEvent);
+            appendRow(builder, "资源数", stats.resources);
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static void appendRow(StringBuilder builder, String label, LatencyHistogram histogram) {
+        if (histogram.getTotalCount() == 0) return;
+        builder.append(String.format(Locale.ROOT, "  %-10s %7d %7d %7d\n", label,
+                                     histogram.getValueAtPercentile(50),
+                                     histogram.getValueAtPercentile(95),
+                                     histogram.getValueAtPercentile(99)));
+    }
+
+    public Bridge createBridge() {
+        return new Bridge();
+    }
+
+    private HostStats statsFor(String host) {
+        HostStats stats = mHosts.get(host);
+        if (stats == null) {
+            stats = new HostStats();
+            mHosts.put(host, stats);
+        }
+        return stats;
+    }
+
+    private static String hostOf(String url) {
+        String host = Uri.parse(url).getHost();
+        return host != null ? host.toLowerCase(Locale.ROOT) : "";
+    }
+
+    private void scheduleWrite() {
+        if (!mDirty.compareAndSet(false, true)) return;
+        mWriter.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    write();
+                }
+            }, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void load() {
+        if (!mFile.isFile()) return;
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (input.readInt() != FILE_VERSION) return;
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String host = input.readUTF();
+                HostStats loaded = HostStats.read(input);
+                synchronized (this) {
+                    // Keep anything recorded while loading.
+                    HostStats current = mHosts.get(host);
+                    if (current != null) {
+                        loaded.add(current);
+                    }
+                    mHosts.put(host, loaded);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read " + mFile, e);
+        } finally {
+            GlobalApplication.closeIO(input);
+        }
+    }
+
+    private void write() {
+        mDirty.set(false);
+        File temp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            synchronized (this) {
+                output.writeInt(FILE_VERSION);
+                output.writeInt(mHosts.size());
+                for (Map.Entry<String, HostStats> entry : mHosts.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    entry.getValue().write(output);
+                }
+            }
+            output.close();
+            output = null;
+            IoUtils.commit(temp, mFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + mFile, e);
+            temp.delete();
+        } finally {
+            GlobalApplication.closeIO(output);
+        }
+    }
+
+    /**
+     * One page load in progress; owned by the WebViewClient that started it.
+     */
+    public static class Navigation {
+
+        final String host;
+        final long startTime = SystemClock.elapsedRealtime();
+        public int resourceCount;
+
+        Navigation(String host) {
+            this.host = host;
+        }
+    }
+
+    private static class HostStats {
+
+        final LatencyHistogram pageLoad;
+        final LatencyHistogram ttfb;
+        final LatencyHistogram domContentLoaded;
+        final LatencyHistogram loadEvent;
+        final LatencyHistogram resources;
+
+        HostStats() {
+            this(new LatencyHistogram(HIGHEST_LATENCY_MS), new LatencyHistogram(HIGHEST_LATENCY_MS),
+                 new LatencyHistogram(HIGHEST_LATENCY_MS), new LatencyHistogram(HIGHEST_LATENCY_MS),
+                 new LatencyHistogram(HIGHEST_RESOURCE_COUNT));
+        }
+
+        HostStats(LatencyHistogram pageLoad, LatencyHistogram ttfb, LatencyHistogram domContentLoaded,
+                  LatencyHistogram loadEvent, LatencyHistogram resources) {
+            this.pageLoad = pageLoad;
+            this.ttfb = ttfb;
+            this.domContentLoaded = domContentLoaded;
+            this.loadEvent = loadEvent;
+            this.resources = resources;
+        }
+
+        void add(HostStats other) {
+            pageLoad.add(other.pageLoad);
+            ttfb.add(other.ttfb);
+            domContentLoaded.add(other.domContentLoaded);
+            loadEvent.add(other.loadEvent);
+            resources.add(other.resources);
+        }
+
+        void write(DataOutputStream output) throws IOException {
+            pageLoad.write(output);
+            ttfb.write(output);
+            domContentLoaded.write(output);
+            loadEvent.write(output);
+            resources.write(output);
+        }
+
+        static HostStats read(DataInputStream input) throws IOException {
+            return new HostStats(LatencyHistogram.read(input), LatencyHistogram.read(input),
+                                 LatencyHistogram.read(input), LatencyHistogram.read(input),
+                                 LatencyHistogram.read(input));
+        }
+    }
+
+    /**
+     * Exposed to pages as {@link #BRIDGE_NAME}. Called on the WebView's JavaBridge
+     * thread. Any page can call it, so reports are only accepted for the host that
+     * just finished loading and values are clamped by the histograms.
+     */
+    public class Bridge {
+
+        @JavascriptInterface
+        public void report(String host, double ttfb, double domContentLoaded, double loadEvent) {
+            recordTiming(host, Math.round(ttfb), Math.round(domContentLoaded), Math.round(loadEvent));
+        }
+    }
+}
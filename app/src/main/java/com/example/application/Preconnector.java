@@ -0,0 +1,205 @@
+package com.example.application;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Warms DNS and connections to origins the user is likely to open next, and
+ * counts how often that paid off.
+ *
+ * {@link #preconnect} resolves the host and, when connecting is allowed, sends
+ * a {@code HEAD /} so a keep-alive connection (and for https the TLS session)
+ * is waiting in {@link HttpURLConnection}'s pool. A later navigation to the
+ * same origin within the warm window counts as a hit; how much time a hit saved
+ * is not known here, since the WebView keeps its own connections. Warm-ups are
+ * limited to {@code maxInFlight} at once and {@code maxPerMinute} per rolling
+ * minute; requests over budget are dropped, not queued. No Android
+ * dependencies, so it can be exercised against a local HTTP server on a plain
+ * JVM. Thread-safe.
+ */
+public final class Preconnector {
+
+    private static final int TIMEOUT_MS = 3000;
+
+    private static final int MAX_ORIGINS = 64;
+
+    private final Executor mExecutor;
+
+    private final int mMaxInFlight;
+
+    private final long mWarmWindowMillis;
+
+    private final long[] mStartTimes;
+
+    private int mStartIndex;
+
+    private int mInFlight;
+
+    private volatile boolean mConnectAllowed = true;
+
+    // Origin -> completed warm-up; access ordered so the least recent is evicted.
+    private final LinkedHashMap<String, Warmup> mWarmups = new LinkedHashMap<String, Warmup>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Warmup> eldest) {
+            return size() > MAX_ORIGINS;
+        }
+    };
+
+    private long mRequested;
+    private long mSkipped;
+    private long mHits;
+    private long mMisses;
+
+    public Preconnector(Executor executor, int maxInFlight, int maxPerMinute, long warmWindowMillis) {
+        this.mExecutor = executor;
+        this.mMaxInFlight = maxInFlight;
+        this.mWarmWindowMillis = warmWindowMillis;
+        this.mStartTimes = new long[maxPerMinute];
+    }
+
+    /**
+     * When false, warm-ups only resolve DNS; used on metered networks.
+     */
+    public void setConnectAllowed(boolean allowed) {
+        mConnectAllowed = allowed;
+    }
+
+    /**
+     * Starts warming the origin of {@code url} unless it is already warm, being
+     * warmed, or over budget. Returns whether a warm-up was started.
+     */
+    public boolean preconnect(String url) {
+        final URL parsed = parse(url);
+        if (parsed == null) return false;
+        final String origin = originOf(parsed);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            mRequested++;
+            Warmup warmup = mWarmups.get(origin);
+            if (warmup != null && (warmup.pending || now - warmup.time < mWarmWindowMillis)) return false;
+            // mStartTimes is a ring of the last maxPerMinute start times.
+            if (mInFlight >= mMaxInFlight || (mStartTimes[mStartIndex] != 0 && now - mStartTimes[mStartIndex] < 60 * 1000)) {
+                mSkipped++;
+                return false;
+            }
+            mStartTimes[mStartIndex] = now;
+            mStartIndex = (mStartIndex + 1) % mStartTimes.length;
+            mInFlight++;
+            mWarmups.put(origin, new Warmup(now, true));
+        }
+        final boolean connect = mConnectAllowed;
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    boolean warmed = warm(parsed, connect);
+                    synchronized (Preconnector.this) {
+                        mInFlight--;
+                        if (warmed) {
+                            mWarmups.put(origin, new Warmup(System.currentTimeMillis(), false));
+                        } else {
+                            mWarmups.remove(origin);
+                        }
+                    }
+                }
+            });
+        return true;
+    }
+
+    /**
+     * Records a navigation: a hit if its origin was warmed within the window,
+     * otherwise a miss. Returns whether it was a hit.
+     */
+    public synchronized boolean onNavigate(String url) {
+        URL parsed = parse(url);
+        if (parsed == null) return false;
+        Warmup warmup = mWarmups.get(originOf(parsed));
+        if (warmup == null || warmup.pending || System.currentTimeMillis() - warmup.time >= mWarmWindowMillis) {
+            mMisses++;
+            return false;
+        }
+        mHits++;
+        return true;
+    }
+
+    public synchronized long getRequestedCount() {
+        return mRequested;
+    }
+
+    public synchronized long getSkippedCount() {
+        return mSkipped;
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    private static boolean warm(URL url, boolean connect) {
+        try {
+            InetAddress.getAllByName(url.getHost());
+        } catch (IOException e) {
+            return false;
+        }
+        if (!connect) return true;
+        HttpURLConnection connection = null;
+        InputStream input = null;
+        try {
+            connection = (HttpURLConnection) new URL(url.getProtocol(), url.getHost(), url.getPort(), "/").openConnection();
+            connection.setRequestMethod("HEAD");
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            connection.setInstanceFollowRedirects(false);
+            int code = connection.getResponseCode();
+            // Closing the (empty) body hands the connection back to the pool;
+            // disconnect() would close the socket.
+            input = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+            return true;
+        } catch (IOException e) {
+            if (connection != null) connection.disconnect();
+            return false;
+        } finally {
+            IoUtils.closeIO(input);
+        }
+    }
+
+    private static URL parse(String url) {
+        if (url == null) return null;
+        if (!url.startsWith("http://") && !url.startsWith("https://")) {
+            url = "https://" + url;
+        }
+        try {
+            URL parsed = new URL(url);
+            return parsed.getHost().isEmpty() ? null : parsed;
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    private static String originOf(URL url) {
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        return url.getProtocol() + "://" + url.getHost().toLowerCase(Locale.ROOT) + ":" + port;
+    }
+
+    private static final class Warmup {
+
+        final long time;
+        final boolean pending;
+
+        Warmup(long time, boolean pending) {
+            this.time = time;
+            this.pending = pending;
+        }
+    }
+}
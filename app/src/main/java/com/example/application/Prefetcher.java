@@ -0,0 +1,209 @@
+package com.example.application;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.webkit.WebView;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+
+/**
+ * Speculative work for the navigations {@code MainActivity} expects next.
+ *
+ * Likely URLs (the most visited history entries when the address bar gets
+ * focus, the top suggestion while typing) have their origins warmed by a
+ * {@link Preconnector}: DNS always, connections only on unmetered networks.
+ * Optionally, enabled from the developer console, the top history entry is
+ * prerendered in a hidden WebView that is swapped into the current tab if the
+ * user opens that URL within {@link #PRERENDER_TTL_MS}. Nothing is done in
+ * battery saver mode; prerendering also needs an unmetered network, a device
+ * that is not low on RAM, and stays within {@link #MAX_PRERENDERS_PER_HOUR}.
+ * Main thread only, except {@link #preconnect}.
+ */
+public class Prefetcher {
+
+    public static final String PREF_PRERENDER = "prefetch_prerender_enabled";
+
+    private static final int MAX_IN_FLIGHT = 2;
+
+    private static final int MAX_PRECONNECTS_PER_MINUTE = 12;
+
+    private static final long WARM_WINDOW_MS = 5 * 60 * 1000;
+
+    private static final int MAX_PRERENDERS_PER_HOUR = 6;
+
+    private static final long PRERENDER_TTL_MS = 60 * 1000;
+
+    private static Prefetcher sInstance;
+
+    private final Context mContext;
+
+    private final SharedPreferences mPrefs;
+
+    private final Preconnector mPreconnector = new Preconnector(Executors.newFixedThreadPool(MAX_IN_FLIGHT),
+                                                                MAX_IN_FLIGHT, MAX_PRECONNECTS_PER_MINUTE, WARM_WINDOW_MS);
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final long[] mPrerenderTimes = new long[MAX_PRERENDERS_PER_HOUR];
+
+    private int mPrerenderIndex;
+
+    private WebView mPrerenderView;
+
+    private WebViewPool mPrerenderPool;
+
+    private String mPrerenderUrl;
+
+    private long mPrerenderStart;
+
+    private long mPrerenderFinish;
+
+    private long mPrerenderCount;
+
+    private long mPrerenderHits;
+
+    private long mPrerenderSavedMillis;
+
+    private final Runnable mExpireTask = new Runnable() {
+
+        @Override
+        public void run() {
+            cancelPrerender();
+        }
+    };
+
+    public static synchronized Prefetcher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new Prefetcher(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private Prefetcher(Context context) {
+        this.mContext = context;
+        this.mPrefs = context.getSharedPreferences("browser_prefs", Context.MODE_PRIVATE);
+    }
+
+    public boolean isPrerenderEnabled() {
+        return mPrefs.getBoolean(PREF_PRERENDER, false);
+    }
+
+    public void setPrerenderEnabled(boolean enabled) {
+        mPrefs.edit().putBoolean(PREF_PRERENDER, enabled).apply();
+        if (!enabled) cancelPrerender();
+    }
+
+    /**
+     * Warms the origin of {@code url}; safe to call from any thread.
+     */
+    public void preconnect(String url) {
+        if (isPowerSaveMode()) return;
+        mPreconnector.setConnectAllowed(isUnmetered());
+        mPreconnector.preconnect(url);
+    }
+
+    /**
+     * Records a navigation for the hit rate of earlier warm-ups.
+     */
+    public void onNavigate(String url) {
+        mPreconnector.onNavigate(url);
+    }
+
+    public boolean shouldPrerender(String url) {
+        if (!isPrerenderEnabled() || mPrerenderView != null) return false;
+        if (isPowerSaveMode() || !isUnmetered()) return false;
+        ActivityManager activityManager = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager.isLowRamDevice()) return false;
+        long oldest = mPrerenderTimes[mPrerenderIndex];
+        return oldest == 0 || SystemClock.elapsedRealtime() - oldest >= 60 * 60 * 1000;
+    }
+
+    /**
+     * Loads {@code url} into {@code webView}, which must not be attached to a
+     * window; it is released to {@code pool} if not taken in time.
+     */
+    public void startPrerender(String url, WebView webView, WebViewPool pool) {
+        cancelPrerender();
+        mPrerenderTimes[mPrerenderIndex] = SystemClock.elapsedRealtime();
+        mPrerenderIndex = (mPrerenderIndex + 1) % mPrerenderTimes.length;
+        mPrerenderCount++;
+        mPrerenderView = webView;
+        mPrerenderPool = pool;
+        mPrerenderUrl = url;
+        mPrerenderStart = SystemClock.uptimeMillis();
+        mPrerenderFinish = 0;
+        webView.loadUrl(url);
+        mMainHandler.postDelayed(mExpireTask, PRERENDER_TTL_MS);
+    }
+
+    public boolean isPrerender(WebView webView) {
+        return webView != null && webView == mPrerenderView;
+    }
+
+    public void onPrerenderFinished(WebView webView) {
+        if (isPrerender(webView)) mPrerenderFinish = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Hands over the prerendered WebView if it was loaded for {@code url}; the
+     * time it has already spent loading is counted as saved.
+     */
+    public WebView takePrerender(String url) {
+        if (mPrerenderView == null) return null;
+        if (!url.equals(mPrerenderUrl) && !url.equals(mPrerenderView.getUrl())) return null;
+        WebView webView = mPrerenderView;
+        mPrerenderHits++;
+        mPrerenderSavedMillis += (mPrerenderFinish != 0 ? mPrerenderFinish : SystemClock.uptimeMillis()) - mPrerenderStart;
+        mMainHandler.removeCallbacks(mExpireTask);
+        mPrerenderView = null;
+        mPrerenderPool = null;
+        return webView;
+    }
+
+    public boolean cancelPrerender() {
+        mMainHandler.removeCallbacks(mExpireTask);
+        if (mPrerenderView == null) return false;
+        mPrerenderPool.release(mPrerenderView);
+        mPrerenderView = null;
+        mPrerenderPool = null;
+        return true;
+    }
+
+    public String formatReport() {
+        long hits = mPreconnector.getHitCount();
+        long misses = mPreconnector.getMissCount();
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "预连接: 请求 %d, 超出预算 %d\n",
+                                     mPreconnector.getRequestedCount(), mPreconnector.getSkippedCount()));
+        builder.append(String.format(Locale.ROOT, "  命中 %d / 导航 %d (%.0f%%)\n",
+                                     hits, hits + misses, hits + misses > 0 ? 100.0 * hits / (hits + misses) : 0.0));
+        builder.append(String.format(Locale.ROOT, "预渲染: %s, 启动 %d\n",
+                                     isPrerenderEnabled() ? "开启" : "关闭", mPrerenderCount));
+        builder.append(String.format(Locale.ROOT, "  命中 %d (%.0f%%), 节省 %dms\n",
+                                     mPrerenderHits, mPrerenderCount > 0 ? 100.0 * mPrerenderHits / mPrerenderCount : 0.0,
+                                     mPrerenderSavedMillis));
+        if (mPrerenderView != null) {
+            builder.append("  当前: ").append(mPrerenderUrl).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private boolean isPowerSaveMode() {
+        PowerManager powerManager = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
+        return powerManager.isPowerSaveMode();
+    }
+
+    @SuppressWarnings("deprecation")
+    private boolean isUnmetered() {
+        ConnectivityManager connectivityManager = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo network = connectivityManager.getActiveNetworkInfo();
+        return network != null && network.isConnected() && !connectivityManager.isActiveNetworkMetered();
+    }
+}
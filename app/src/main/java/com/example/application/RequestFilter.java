@@ -0,0 +1,161 @@
+package com.example.application;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads the {@link ContentBlocker} used to drop ad and tracker requests.
+ *
+ * Rules come from the bundled {@code assets/blocklist.txt} plus an optional
+ * user list at {@code files/blocklist.txt}. The compiled form is kept in
+ * {@code files/blocklist.bin} and only rebuilt when either source changes, so
+ * later launches skip parsing. Requests are let through until loading finishes.
+ */
+public class RequestFilter {
+
+    private static final String TAG = "RequestFilter";
+
+    private static final String ASSET_NAME = "blocklist.txt";
+    private static final String USER_LIST_NAME = "blocklist.txt";
+    private static final String COMPILED_NAME = "blocklist.bin";
+
+    private static RequestFilter sInstance;
+
+    private final Context mContext;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final AtomicLong mBlockedCount = new AtomicLong();
+
+    private volatile ContentBlocker mBlocker;
+
+    private boolean mLoadStarted;
+
+    public static synchronized RequestFilter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new RequestFilter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private RequestFilter(Context context) {
+        this.mContext = context;
+    }
+
+    public synchronized void ensureLoaded() {
+        if (mLoadStarted) return;
+        mLoadStarted = true;
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    mBlocker = load();
+                }
+            });
+    }
+
+    /**
+     * Safe to call from the WebView's network threads.
+     */
+    public boolean shouldBlock(String url) {
+        ContentBlocker blocker = mBlocker;
+        if (blocker == null || !blocker.shouldBlock(url)) return false;
+        mBlockedCount.incrementAndGet();
+        return true;
+    }
+
+    public long getBlockedCount() {
+        return mBlockedCount.get();
+    }
+
+    private ContentBlocker load() {
+        File userList = new File(mContext.getFilesDir(), USER_LIST_NAME);
+        File compiled = new File(mContext.getFilesDir(), COMPILED_NAME);
+        long stamp = sourceStamp(userList);
+
+        ContentBlocker blocker = readCompiled(compiled, stamp);
+        if (blocker != null) return blocker;
+
+        Reader reader = null;
+        try {
+            if (userList.isFile()) {
+                reader = new InputStreamReader(new SequenceInputStream(mContext.getAssets().open(ASSET_NAME),
+                                                                       new FileInputStream(userList)), "UTF-8");
+            } else {
+                reader = new InputStreamReader(mContext.getAssets().open(ASSET_NAME), "UTF-8");
+            }
+            blocker = ContentBlocker.compile(reader);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to compile blocklist", e);
+            return null;
+        } finally {
+            GlobalApplication.closeIO(reader);
+        }
+        writeCompiled(blocker, compiled, stamp);
+        return blocker;
+    }
+
+    /**
+     * Identifies the rule sources: the installed APK for the bundled list, and
+     * the size and modification time of the user list.
+     */
+    private long sourceStamp(File userList) {
+        long stamp;
+        try {
+            stamp = mContext.getPackageManager().getPackageInfo(mContext.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            stamp = 0;
+        }
+        if (userList.isFile()) {
+            stamp = stamp * 31 + userList.lastModified();
+            stamp = stamp * 31 + userList.length();
+        }
+        return stamp;
+    }
+
+    private static ContentBlocker readCompiled(File file, long stamp) {
+        if (!file.isFile()) return null;
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+            return ContentBlocker.read(input, stamp);
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding compiled blocklist", e);
+            return null;
+        } finally {
+            GlobalApplication.closeIO(input);
+        }
+    }
+
+    private static void writeCompiled(ContentBlocker blocker, File file, long stamp) {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+            blocker.write(output, stamp);
+            output.close();
+            output = null;
+            IoUtils.commit(temp, file);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save compiled blocklist", e);
+            temp.delete();
+        } finally {
+            GlobalApplication.closeIO(output);
+        }
+    }
+}
@@ -0,0 +1,655 @@
+package com.example.application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disk cache for static sub-resources (scripts, styles, fonts, images).
+ *
+ * Freshness follows {@code Cache-Control: max-age} (or {@code Expires}); stale
+ * entries with an {@code ETag} or {@code Last-Modified} are revalidated with a
+ * conditional request. One variant is kept per URL: an entry stored with
+ * {@code Vary} is only served to requests with the same values for those
+ * headers, which are kept as hashes so cookies never reach the disk, and
+ * {@code Vary: *} is never stored. {@code Set-Cookie} is never stored either;
+ * network responses hand it to the caller in {@link Response#cookies}. The WebView's
+ * {@code Accept-Encoding} is not forwarded, so bodies come back decoded unless
+ * the server compresses anyway, in which case {@code Content-Encoding} is kept
+ * with the entry. Bodies are streamed: hits are read straight from disk and
+ * misses are written to a temp file while the caller consumes them, then
+ * committed once fully read. Entries are evicted least recently used first once
+ * the total size exceeds {@code maxBytes}. Files the index does not know, left
+ * by a kill before it was written, are deleted when the cache is opened.
+ */
+public class ResourceCache {
+
+    private static final int INDEX_VERSION = 3;
+    private static final String INDEX_FILE = "index";
+    private static final long INDEX_WRITE_DELAY_MS = 2000;
+    private static final int TIMEOUT_MS = 15000;
+
+    private static final String[] STATIC_EXTENSIONS = {
+        ".js", ".mjs", ".css", ".woff", ".woff2", ".ttf", ".otf", ".eot",
+        ".png", ".jpg", ".jpeg", ".gif", ".webp", ".svg", ".ico"
+    };
+
+    // Response headers worth replaying from the cache; everything else is dropped.
+    private static final String[] KEPT_HEADERS = {
+        "Access-Control-Allow-Origin", "Timing-Allow-Origin", "Cache-Control", "Content-Language",
+        "Content-Encoding", "Vary"
+    };
+
+    // Request headers the cache sets itself or that would change the body's encoding.
+    private static final String[] DROPPED_REQUEST_HEADERS = {
+        "Accept-Encoding", "If-None-Match", "If-Modified-Since", "If-Match", "If-Unmodified-Since"
+    };
+
+    private final File mDir;
+
+    private final long mMaxBytes;
+
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long mTotalBytes;
+
+    private final ScheduledExecutorService mIndexWriter = Executors.newSingleThreadScheduledExecutor();
+
+    private final AtomicBoolean mIndexDirty = new AtomicBoolean();
+
+    private final AtomicInteger mTempCounter = new AtomicInteger();
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mRevalidated = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    public ResourceCache(File dir, long maxBytes) {
+        this.mDir = dir;
+        this.mMaxBytes = maxBytes;
+        mDir.mkdirs();
+        readIndex();
+        deleteUnindexed();
+    }
+
+    public static class Response {
+
+        public final int statusCode;
+        public final String reasonPhrase;
+        public final String mimeType;
+        public final String encoding;
+        public final Map<String, String> headers;
+        public final InputStream data;
+        public final boolean fromCache;
+
+        /**
+         * {@code Set-Cookie} values of a network response, for the cookie store.
+         */
+        public final List<String> cookies;
+
+        Response(int statusCode, String reasonPhrase, String mimeType, String encoding, Map<String, String> headers, InputStream data,
+                 boolean fromCache, List<String> cookies) {
+            this.statusCode = statusCode;
+            this.reasonPhrase = reasonPhrase;
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.headers = headers;
+            this.data = data;
+            this.fromCache = fromCache;
+            this.cookies = cookies;
+        }
+    }
+
+    private static class Entry {
+
+        String key;
+        String url;
+        String mimeType;
+        String encoding;
+        String etag;
+        String lastModified;
+        long expiresAt;
+        long size;
+        LinkedHashMap<String, String> headers = new LinkedHashMap<>();
+        // Request header name -> hash of the value it had, for each name listed in Vary.
+        LinkedHashMap<String, String> vary = new LinkedHashMap<>();
+
+        boolean matches(Map<String, String> requestHeaders) {
+            for (Map.Entry<String, String> header : vary.entrySet()) {
+                if (!equal(header.getValue(), varyHash(headerValue(requestHeaders, header.getKey())))) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Whether a request is one this cache wants to handle: a plain GET for a URL
+     * whose path looks like a static asset.
+     */
+    public static boolean isCacheable(String method, String url) {
+        if (!"GET".equalsIgnoreCase(method)) return false;
+        if (!url.startsWith("http://") && !url.startsWith("https://")) return false;
+
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) end = query;
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) end = fragment;
+        String path = url.substring(0, end).toLowerCase(Locale.ROOT);
+        for (String extension : STATIC_EXTENSIONS) {
+            if (path.endsWith(extension)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Serves {@code url} from the cache or the network. Returns null when the
+     * response should be left to the caller (e.g. a cross-protocol redirect or a
+     * range request).
+     */
+    public Response fetch(String url, Map<String, String> requestHeaders) throws IOException {
+        for (String name : requestHeaders.keySet()) {
+            if ("Range".equalsIgnoreCase(name)) return null;
+        }
+
+        requestHeaders = forwardedHeaders(requestHeaders);
+        String key = keyFor(url);
+        Entry entry;
+        synchronized (this) {
+            entry = mEntries.get(key);
+        }
+        if (entry != null && !entry.matches(requestHeaders)) entry = null;
+
+        long now = System.currentTimeMillis();
+        if (entry != null && now < entry.expiresAt) {
+            InputStream data = openEntry(entry);
+            if (data != null) {
+                mHits.incrementAndGet();
+                return fromEntry(entry, data, Collections.<String>emptyList());
+            }
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        connection.setInstanceFollowRedirects(true);
+        for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        if (entry != null) {
+            if (entry.etag != null) connection.setRequestProperty("If-None-Match", entry.etag);
+            if (entry.lastModified != null) connection.setRequestProperty("If-Modified-Since", entry.lastModified);
+        }
+
+        int status;
+        try {
+            status = connection.getResponseCode();
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+
+        List<String> cookies = cookiesOf(connection);
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED && entry != null) {
+            connection.disconnect();
+            InputStream data = openEntry(entry);
+            if (data == null) return null;
+            synchronized (this) {
+                entry.expiresAt = expiresAt(connection, now);
+            }
+            mIndexDirty.set(true);
+            scheduleIndexWrite();
+            mRevalidated.incrementAndGet();
+            return fromEntry(entry, data, cookies);
+        }
+
+        if (status >= 400) {
+            // Hand errors back as-is so the WebView does not repeat the request.
+            Entry error = new Entry();
+            parseContentType(connection.getContentType(), error);
+            keepHeaders(connection, error);
+            InputStream body = connection.getErrorStream();
+            return new Response(status, nonEmpty(connection.getResponseMessage()), error.mimeType, error.encoding,
+                                error.headers, body != null ? body : new ByteArrayInputStream(new byte[0]), false, cookies);
+        }
+        if (status != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            return null;
+        }
+
+        mMisses.incrementAndGet();
+        Entry fresh = new Entry();
+        fresh.key = key;
+        fresh.url = url;
+        parseContentType(connection.getContentType(), fresh);
+        fresh.etag = connection.getHeaderField("ETag");
+        fresh.lastModified = connection.getHeaderField("Last-Modified");
+        fresh.expiresAt = expiresAt(connection, now);
+        keepHeaders(connection, fresh);
+        boolean varyAll = false;
+        for (String name : lower(connection.getHeaderField("Vary")).split(",")) {
+            name = name.trim();
+            if (name.equals("*")) varyAll = true;
+            if (!name.isEmpty()) fresh.vary.put(name, varyHash(headerValue(requestHeaders, name)));
+        }
+
+        InputStream body = connection.getInputStream();
+        String cacheControl = lower(connection.getHeaderField("Cache-Control"));
+        boolean storable = !cacheControl.contains("no-store") && !cacheControl.contains("private") && !varyAll
+            && (fresh.expiresAt > now || fresh.etag != null || fresh.lastModified != null);
+        if (storable) {
+            File temp = new File(mDir, key + "." + mTempCounter.incrementAndGet() + ".tmp");
+            body = new TeeInputStream(body, new FileOutputStream(temp), temp, fresh);
+        }
+        return new Response(status, nonEmpty(connection.getResponseMessage()), fresh.mimeType, fresh.encoding,
+                            new LinkedHashMap<>(fresh.headers), body, false, cookies);
+    }
+
+    private static Map<String, String> forwardedHeaders(Map<String, String> requestHeaders) {
+        LinkedHashMap<String, String> forwarded = new LinkedHashMap<>(requestHeaders);
+        Iterator<String> names = forwarded.keySet().iterator();
+        while (names.hasNext()) {
+            String name = names.next();
+            for (String dropped : DROPPED_REQUEST_HEADERS) {
+                if (dropped.equalsIgnoreCase(name)) {
+                    names.remove();
+                    break;
+                }
+            }
+        }
+        return forwarded;
+    }
+
+    private static void keepHeaders(HttpURLConnection connection, Entry entry) {
+        for (String name : KEPT_HEADERS) {
+            String value = connection.getHeaderField(name);
+            if (value != null) entry.headers.put(name, value);
+        }
+    }
+
+    private static List<String> cookiesOf(HttpURLConnection connection) {
+        List<String> cookies = new ArrayList<>();
+        for (int i = 0; ; i++) {
+            String value = connection.getHeaderField(i);
+            if (value == null) break;
+            if ("Set-Cookie".equalsIgnoreCase(connection.getHeaderFieldKey(i))) cookies.add(value);
+        }
+        return cookies;
+    }
+
+    private static String varyHash(String value) {
+        return value != null ? keyFor(value) : null;
+    }
+
+    private static String headerValue(Map<String, String> headers, String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) return header.getValue();
+        }
+        return null;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private InputStream openEntry(Entry entry) {
+        try {
+            return new FileInputStream(new File(mDir, entry.key));
+        } catch (FileNotFoundException e) {
+            synchronized (this) {
+                if (mEntries.get(entry.key) == entry) {
+                    mEntries.remove(entry.key);
+                    mTotalBytes -= entry.size;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static Response fromEntry(Entry entry, InputStream data, List<String> cookies) {
+        return new Response(200, "OK", entry.mimeType, entry.encoding, new LinkedHashMap<>(entry.headers), data, true, cookies);
+    }
+
+    private void commit(Entry entry, File temp) {
+        File target = new File(mDir, entry.key);
+        synchronized (this) {
+            Entry previous = mEntries.remove(entry.key);
+            if (previous != null) mTotalBytes -= previous.size;
+            if (!temp.renameTo(target)) {
+                temp.delete();
+                return;
+            }
+            mEntries.put(entry.key, entry);
+            mTotalBytes += entry.size;
+            trimLocked();
+        }
+        mIndexDirty.set(true);
+        scheduleIndexWrite();
+    }
+
+    private void trimLocked() {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mTotalBytes > mMaxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            mTotalBytes -= eldest.size;
+            new File(mDir, eldest.key).delete();
+        }
+    }
+
+    public synchronized long size() {
+        return mTotalBytes;
+    }
+
+    public long hitCount() {
+        return mHits.get();
+    }
+
+    public long revalidatedCount() {
+        return mRevalidated.get();
+    }
+
+    public long missCount() {
+        return mMisses.get();
+    }
+
+    public void clear() {
+        synchronized (this) {
+            for (Entry entry : mEntries.values()) {
+                new File(mDir, entry.key).delete();
+            }
+            mEntries.clear();
+            mTotalBytes = 0;
+        }
+        mIndexDirty.set(true);
+        scheduleIndexWrite();
+    }
+
+    private static long expiresAt(HttpURLConnection connection, long now) {
+        String cacheControl = lower(connection.getHeaderField("Cache-Control"));
+        if (cacheControl.contains("no-cache") || cacheControl.contains("no-store")) return 0;
+
+        int index = cacheControl.indexOf("max-age=");
+        if (index >= 0) {
+            int start = index + "max-age=".length();
+            int end = start;
+            while (end < cacheControl.length() && Character.isDigit(cacheControl.charAt(end))) end++;
+            try {
+                return now + Long.parseLong(cacheControl.substring(start, end)) * 1000;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return connection.getExpiration();
+    }
+
+    private static void parseContentType(String contentType, Entry entry) {
+        entry.mimeType = "application/octet-stream";
+        entry.encoding = null;
+        if (contentType == null) return;
+
+        String[] parts = contentType.split(";");
+        entry.mimeType = parts[0].trim();
+        for (int i = 1; i < parts.length; i++) {
+            String part = parts[i].trim();
+            if (part.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                entry.encoding = part.substring("charset=".length()).replace("\"", "");
+            }
+        }
+    }
+
+    private static String lower(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    private static String nonEmpty(String reason) {
+        return reason == null || reason.trim().isEmpty() ? "OK" : reason;
+    }
+
+    private static String keyFor(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(url.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void scheduleIndexWrite() {
+        mIndexWriter.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (mIndexDirty.getAndSet(false)) writeIndex();
+                }
+            }, INDEX_WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void writeIndex() {
+        ArrayList<Entry> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(mEntries.values());
+        }
+
+        File temp = new File(mDir, INDEX_FILE + ".tmp");
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            output.writeInt(INDEX_VERSION);
+            output.writeInt(snapshot.size());
+            // Least recently used first, so reading it back restores the LRU order.
+            for (Entry entry : snapshot) {
+                output.writeUTF(entry.key);
+                output.writeUTF(entry.url);
+                output.writeUTF(entry.mimeType);
+                writeNullable(output, entry.encoding);
+                writeNullable(output, entry.etag);
+                writeNullable(output, entry.lastModified);
+                output.writeLong(entry.expiresAt);
+                output.writeLong(entry.size);
+                output.writeInt(entry.headers.size());
+                for (Map.Entry<String, String> header : entry.headers.entrySet()) {
+                    output.writeUTF(header.getKey());
+                    output.writeUTF(header.getValue());
+                }
+                output.writeInt(entry.vary.size());
+                for (Map.Entry<String, String> header : entry.vary.entrySet()) {
+                    output.writeUTF(header.getKey());
+                    writeNullable(output, header.getValue());
+                }
+            }
+            output.close();
+            output = null;
+            IoUtils.commit(temp, new File(mDir, INDEX_FILE));
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeQuietly(output);
+            temp.delete();
+        }
+    }
+
+    private void readIndex() {
+        File file = new File(mDir, INDEX_FILE);
+        if (!file.exists()) return;
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            // Written by another version; deleteUnindexed removes its bodies.
+            if (input.readInt() != INDEX_VERSION) return;
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry();
+                entry.key = input.readUTF();
+                entry.url = input.readUTF();
+                entry.mimeType = input.readUTF();
+                entry.encoding = readNullable(input);
+                entry.etag = readNullable(input);
+                entry.lastModified = readNullable(input);
+                entry.expiresAt = input.readLong();
+                entry.size = input.readLong();
+                int headers = input.readInt();
+                for (int j = 0; j < headers; j++) {
+                    entry.headers.put(input.readUTF(), input.readUTF());
+                }
+                int vary = input.readInt();
+                for (int j = 0; j < vary; j++) {
+                    entry.vary.put(input.readUTF(), readNullable(input));
+                }
+                if (new File(mDir, entry.key).length() == entry.size) {
+                    mEntries.put(entry.key, entry);
+                    mTotalBytes += entry.size;
+                }
+            }
+        } catch (IOException e) {
+            // A damaged index only costs us the cached entries.
+            mEntries.clear();
+            mTotalBytes = 0;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    /**
+     * Deletes bodies and temp files the index does not list: a body committed
+     * after the last index write, or a download cut off by a kill.
+     */
+    private synchronized void deleteUnindexed() {
+        File[] files = mDir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (!file.getName().equals(INDEX_FILE) && !mEntries.containsKey(file.getName())) file.delete();
+        }
+    }
+
+    private static void writeNullable(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) output.writeUTF(value);
+    }
+
+    private static String readNullable(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            if (closeable != null) closeable.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Copies the network body to a temp file while the WebView reads it, and
+     * commits the entry only if the body was read to the end.
+     */
+    private class TeeInputStream extends FilterInputStream {
+
+        private final OutputStream mCopy;
+
+        private final File mTemp;
+
+        private final Entry mEntry;
+
+        private long mWritten;
+
+        private boolean mComplete;
+
+        private boolean mFailed;
+
+        private boolean mClosed;
+
+        TeeInputStream(InputStream in, OutputStream copy, File temp, Entry entry) {
+            super(in);
+            this.mCopy = copy;
+            this.mTemp = temp;
+            this.mEntry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                mComplete = true;
+            } else {
+                copy(new byte[] {(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read < 0) {
+                mComplete = true;
+            } else {
+                copy(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipping would leave a hole in the copy.
+            mFailed = true;
+            return super.skip(n);
+        }
+
+        private void copy(byte[] buffer, int offset, int length) {
+            if (mFailed) return;
+            try {
+                mCopy.write(buffer, offset, length);
+                mWritten += length;
+            } catch (IOException e) {
+                mFailed = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mClosed) return;
+            mClosed = true;
+            try {
+                super.close();
+            } finally {
+                closeQuietly(mCopy);
+                if (mComplete && !mFailed && mWritten > 0 && mWritten <= mMaxBytes) {
+                    mEntry.size = mWritten;
+                    commit(mEntry, mTemp);
+                } else {
+                    mTemp.delete();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package com.example.application;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log split into segment files of at most {@code segmentSize} bytes.
+ *
+ * <pre>
+ * segment := MAGIC:int32 VERSION:int32 record*
+ * record  := length:int32 crc32(payload):int32 payload[length]
+ * </pre>
+ *
+ * All integers are big-endian and {@code length} is always positive. When the
+ * current segment is full a new one is started and the oldest segments beyond
+ * {@code maxSegments} are deleted. On open the newest segment is truncated after
+ * its last intact record, which drops a torn tail left behind by a crash. A
+ * damaged record in the middle of a segment only costs that record: scanning
+ * picks up again at the next header whose checksum matches.
+ *
+ * Not thread-safe; callers confine a writer to one thread.
+ */
+public final class SegmentedLog implements Closeable {
+
+    public static final int MAGIC = 0x414C4F47;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+    public static final int RECORD_HEADER_SIZE = 8;
+
+    private static final String SUFFIX = ".seg";
+    private static final int WRITE_BUFFER_SIZE = 32 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mDir;
+
+    private final int mSegmentSize;
+
+    private final int mMaxSegments;
+
+    private final List<File> mSegments = new ArrayList<>();
+
+    private final ByteBuffer mWriteBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+    private final CRC32 mCrc = new CRC32();
+
+    private long mNextSegmentId;
+
+    private RandomAccessFile mFile;
+
+    private FileChannel mChannel;
+
+    private long mPosition;
+
+    public SegmentedLog(File dir, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize <= HEADER_SIZE + RECORD_HEADER_SIZE) throw new IllegalArgumentException("segmentSize too small: " + segmentSize);
+        if (maxSegments < 1) throw new IllegalArgumentException("maxSegments must be positive");
+        this.mDir = dir;
+        this.mSegmentSize = segmentSize;
+        this.mMaxSegments = maxSegments;
+
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        mSegments.addAll(Arrays.asList(listSegments(dir)));
+        if (mSegments.isEmpty()) {
+            roll();
+        } else {
+            File last = mSegments.get(mSegments.size() - 1);
+            mNextSegmentId = segmentId(last) + 1;
+            recover(last);
+        }
+    }
+
+    private void recover(File segment) throws IOException {
+        mFile = new RandomAccessFile(segment, "rw");
+        mChannel = mFile.getChannel();
+
+        int size = (int) Math.min(mChannel.size(), mSegmentSize);
+        ByteBuffer content = ByteBuffer.allocate(size);
+        while (content.hasRemaining() && mChannel.read(content, content.position()) > 0) {}
+        content.flip();
+
+        int end = scan(content, null, true, new byte[256], mCrc);
+        if (end < 0) {
+            mChannel.truncate(0);
+            writeHeader();
+        } else {
+            if (end < mChannel.size()) mChannel.truncate(end);
+            mPosition = end;
+        }
+    }
+
+    private void roll() throws IOException {
+        closeSegment();
+        File segment = new File(mDir, String.format("%016x%s", mNextSegmentId++, SUFFIX));
+        mFile = new RandomAccessFile(segment, "rw");
+        mChannel = mFile.getChannel();
+        mChannel.truncate(0);
+        writeHeader();
+        mSegments.add(segment);
+
+        while (mSegments.size() > mMaxSegments) {
+            mSegments.remove(0).delete();
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) mChannel.write(header, header.position());
+        mPosition = HEADER_SIZE;
+    }
+
+    public void append(byte[] data) throws IOException {
+        append(data, 0, data.length);
+    }
+
+    /**
+     * Buffers one record. Records become visible to readers after {@link #flush}.
+     */
+    public void append(byte[] data, int offset, int length) throws IOException {
+        if (length <= 0) throw new IllegalArgumentException("empty record");
+        int recordSize = RECORD_HEADER_SIZE + length;
+        if (recordSize > mSegmentSize - HEADER_SIZE) throw new IllegalArgumentException("record too large: " + length);
+
+        if (mPosition + mWriteBuffer.position() + recordSize > mSegmentSize) {
+            flush();
+            roll();
+        }
+        if (recordSize > mWriteBuffer.remaining()) flush();
+
+        mCrc.reset();
+        mCrc.update(data, offset, length);
+        if (recordSize > mWriteBuffer.capacity()) {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            header.putInt(length).putInt((int) mCrc.getValue()).flip();
+            writeFully(header);
+            writeFully(ByteBuffer.wrap(data, offset, length));
+        } else {
+            mWriteBuffer.putInt(length).putInt((int) mCrc.getValue()).put(data, offset, length);
+        }
+    }
+
+    /**
+     * Whether a record of {@code length} bytes still fits in the current
+     * segment, i.e. appending it will not start a new one.
+     */
+    public boolean fits(int length) {
+        return mPosition + mWriteBuffer.position() + RECORD_HEADER_SIZE + length <= mSegmentSize;
+    }
+
+    public void flush() throws IOException {
+        mWriteBuffer.flip();
+        writeFully(mWriteBuffer);
+        mWriteBuffer.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            mPosition += mChannel.write(buffer, mPosition);
+        }
+    }
+
+    /**
+     * Deletes every segment and starts over with an empty one.
+     */
+    public void clear() throws IOException {
+        mWriteBuffer.clear();
+        closeSegment();
+        for (File segment : mSegments) segment.delete();
+        mSegments.clear();
+        roll();
+    }
+
+    /**
+     * Flushes pending records and maps the current segments for reading.
+     */
+    public Reader openReader() throws IOException {
+        flush();
+        return Reader.open(mSegments.toArray(new File[0]));
+    }
+
+    private void closeSegment() {
+        closeQuietly(mChannel);
+        closeQuietly(mFile);
+        mChannel = null;
+        mFile = null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            if (closeable != null) closeable.close();
+        } catch (IOException ignored) {}
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            closeSegment();
+        }
+    }
+
+    public static File[] listSegments(File dir) {
+        File[] segments = dir.listFiles(new FileFilter() {
+
+                @Override
+                public boolean accept(File file) {
+                    return file.isFile() && file.getName().endsWith(SUFFIX);
+                }
+            });
+        if (segments == null) return new File[0];
+        // Names are fixed-width hex ids, so lexical order is creation order.
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private static long segmentId(File segment) {
+        String name = segment.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()), 16);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Walks the records of one segment. A record whose length does not fit is
+     * skipped by searching forward for the next record with a matching
+     * checksum; with {@code verify} every record's checksum is checked as well,
+     * otherwise that is left to the reader.
+     *
+     * @return the offset just past the last intact record, or -1 if the segment
+     *         header itself is invalid
+     */
+    static int scan(ByteBuffer segment, IntArray offsets, boolean verify, byte[] scratch, CRC32 crc) {
+        int limit = segment.limit();
+        if (limit < HEADER_SIZE || segment.getInt(0) != MAGIC || segment.getInt(4) != VERSION) return -1;
+
+        int position = HEADER_SIZE;
+        int end = HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= limit) {
+            int length = segment.getInt(position);
+            if (fits(length, position, limit) && (!verify || checksumMatches(segment, position, length, scratch, crc))) {
+                if (offsets != null) offsets.add(position);
+                position += RECORD_HEADER_SIZE + length;
+                end = position;
+            } else {
+                position = resync(segment, position + 1, scratch, crc);
+                if (position < 0) break;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * The offset of the first record at or after {@code from} whose length fits
+     * and whose checksum matches, or -1 if there is none.
+     */
+    private static int resync(ByteBuffer segment, int from, byte[] scratch, CRC32 crc) {
+        int limit = segment.limit();
+        for (int position = from; position + RECORD_HEADER_SIZE <= limit; position++) {
+            int length = segment.getInt(position);
+            if (fits(length, position, limit) && checksumMatches(segment, position, length, scratch, crc)) return position;
+        }
+        return -1;
+    }
+
+    private static boolean fits(int length, int position, int limit) {
+        return length > 0 && length <= limit - position - RECORD_HEADER_SIZE;
+    }
+
+    private static boolean checksumMatches(ByteBuffer segment, int position, int length, byte[] scratch, CRC32 crc) {
+        ByteBuffer payload = segment.duplicate();
+        payload.position(position + RECORD_HEADER_SIZE);
+        crc.reset();
+        while (length > 0) {
+            int chunk = Math.min(length, scratch.length);
+            payload.get(scratch, 0, chunk);
+            crc.update(scratch, 0, chunk);
+            length -= chunk;
+        }
+        return (int) crc.getValue() == segment.getInt(position + 4);
+    }
+
+    /**
+     * Read-only view over memory-mapped segments. Opening only walks the record
+     * lengths to index their offsets; a record's checksum is checked the first
+     * time it is read, and a record that fails it reads as null. Empty segments
+     * are left out so every mapped segment holds at least one record. Index 0
+     * is the oldest record. Concurrent reads are safe.
+     */
+    public static final class Reader {
+
+        private static final byte CHECKED_INTACT = 1;
+
+        private static final byte CHECKED_CORRUPT = -1;
+
+        private final ByteBuffer[] mBuffers;
+
+        private final long[] mSegmentIds;
+
+        private final int[][] mOffsets;
+
+        private final int[] mFirstIndex;
+
+        private final int mSize;
+
+        // Per record: 0 not checked yet, CHECKED_INTACT or CHECKED_CORRUPT.
+        private final byte[] mChecked;
+
+        private final CRC32 mCrc = new CRC32();
+
+        private final byte[] mScratch = new byte[256];
+
+        private Reader(ByteBuffer[] buffers, long[] segmentIds, int[][] offsets) {
+            this.mBuffers = buffers;
+            this.mSegmentIds = segmentIds;
+            this.mOffsets = offsets;
+            this.mFirstIndex = new int[offsets.length];
+            int size = 0;
+            for (int i = 0; i < offsets.length; i++) {
+                mFirstIndex[i] = size;
+                size += offsets[i].length;
+            }
+            this.mSize = size;
+            this.mChecked = new byte[size];
+        }
+
+        public static Reader open(File[] segments) throws IOException {
+            List<ByteBuffer> buffers = new ArrayList<>(segments.length);
+            long[] segmentIds = new long[segments.length];
+            List<int[]> offsets = new ArrayList<>(segments.length);
+            byte[] scratch = new byte[256];
+            CRC32 crc = new CRC32();
+            IntArray segmentOffsets = new IntArray();
+
+            for (File segment : segments) {
+                MappedByteBuffer buffer = map(segment);
+                if (buffer == null) continue;
+                segmentOffsets.clear();
+                if (scan(buffer, segmentOffsets, false, scratch, crc) < 0 || segmentOffsets.size() == 0) continue;
+                segmentIds[buffers.size()] = segmentId(segment);
+                buffers.add(buffer);
+                offsets.add(segmentOffsets.toArray());
+            }
+            return new Reader(buffers.toArray(new ByteBuffer[0]), Arrays.copyOf(segmentIds, buffers.size()), offsets.toArray(new int[0][]));
+        }
+
+        public static Reader empty() {
+            return new Reader(new ByteBuffer[0], new long[0], new int[0][]);
+        }
+
+        private static MappedByteBuffer map(File segment) throws IOException {
+            RandomAccessFile file;
+            try {
+                file = new RandomAccessFile(segment, "r");
+            } catch (IOException e) {
+                // Rotated out between listing and mapping.
+                return null;
+            }
+            try {
+                FileChannel channel = file.getChannel();
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                closeQuietly(file);
+            }
+        }
+
+        public int size() {
+            return mSize;
+        }
+
+        private int segmentOf(int index) {
+            if (index < 0 || index >= mSize) throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+            int segment = Arrays.binarySearch(mFirstIndex, index);
+            return segment < 0 ? -segment - 2 : segment;
+        }
+
+        /**
+         * Returns an id for record {@code index} that stays the same across readers
+         * of the same log: the segment id in the high 32 bits, the offset in the low.
+         */
+        public long getRecordId(int index) {
+            int segment = segmentOf(index);
+            return mSegmentIds[segment] << 32 | mOffsets[segment][index - mFirstIndex[segment]];
+        }
+
+        /**
+         * Returns a read-only view of the payload of record {@code index}, or
+         * null if it fails its checksum.
+         */
+        public ByteBuffer getRecord(int index) {
+            int segment = segmentOf(index);
+            ByteBuffer buffer = mBuffers[segment];
+            int offset = mOffsets[segment][index - mFirstIndex[segment]];
+            int length = buffer.getInt(offset);
+
+            if (mChecked[index] == 0) check(index, buffer, offset, length);
+            if (mChecked[index] == CHECKED_CORRUPT) return null;
+            ByteBuffer record = buffer.duplicate();
+            record.position(offset + RECORD_HEADER_SIZE);
+            record.limit(offset + RECORD_HEADER_SIZE + length);
+            return record.slice();
+        }
+
+        private synchronized void check(int index, ByteBuffer buffer, int offset, int length) {
+            mChecked[index] = checksumMatches(buffer, offset, length, mScratch, mCrc) ? CHECKED_INTACT : CHECKED_CORRUPT;
+        }
+
+        /**
+         * The payload of record {@code index} as UTF-8, or null if it fails its
+         * checksum.
+         */
+        public String getString(int index) {
+            ByteBuffer record = getRecord(index);
+            if (record == null) return null;
+            byte[] bytes = new byte[record.remaining()];
+            record.get(bytes);
+            return new String(bytes, UTF_8);
+        }
+    }
+
+    /**
+     * Minimal growable int list, avoids boxing while indexing records.
+     */
+    static final class IntArray {
+
+        private int[] mValues = new int[256];
+
+        private int mSize;
+
+        void add(int value) {
+            if (mSize == mValues.length) mValues = Arrays.copyOf(mValues, mSize * 2);
+            mValues[mSize++] = value;
+        }
+
+        void clear() {
+            mSize = 0;
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(mValues, mSize);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.application;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Binary layout of a saved session: a version, the selected tab, then for each
+ * tab its URL, title, scroll position, back/forward entries and position in
+ * them.
+ *
+ * Only plain values are stored, never platform state such as a marshalled
+ * {@code WebView.saveState} bundle, so a file stays readable across WebView and
+ * OS updates. Counts and positions are checked while decoding, so a damaged
+ * file fails with an {@link IOException} instead of a huge allocation or an
+ * index out of range. No Android dependencies.
+ */
+public final class SessionCodec {
+
+    static final int VERSION = 3;
+
+    static final int MAX_TABS = 500;
+
+    static final int MAX_ENTRIES = 1000;
+
+    // Longer URLs (mostly data: URLs) are not worth restoring.
+    static final int MAX_URL_LENGTH = 8192;
+
+    private SessionCodec() {
+    }
+
+    public static byte[] encode(Session session) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(VERSION);
+        output.writeInt(session.current);
+        output.writeInt(session.tabs.size());
+        for (TabState tab : session.tabs) {
+            writeString(output, tab.url);
+            writeString(output, tab.title);
+            output.writeInt(tab.scrollX);
+            output.writeInt(tab.scrollY);
+            output.writeInt(tab.entries.length);
+            for (String entry : tab.entries) {
+                writeString(output, entry);
+            }
+            output.writeInt(tab.index);
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a session written by {@link #encode}. Returns null for another
+     * version or a session without tabs.
+     */
+    public static Session decode(DataInputStream input) throws IOException {
+        if (input.readInt() != VERSION) return null;
+        int current = input.readInt();
+        int count = checkCount(input.readInt(), MAX_TABS);
+        if (count > 0 && (current < 0 || current >= count)) throw new IOException("Bad current tab " + current);
+        List<TabState> tabs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String url = readString(input);
+            String title = readString(input);
+            int scrollX = input.readInt();
+            int scrollY = input.readInt();
+            if (scrollX < 0 || scrollY < 0) throw new IOException("Bad scroll position " + scrollX + "," + scrollY);
+            String[] entries = new String[checkCount(input.readInt(), MAX_ENTRIES)];
+            for (int j = 0; j < entries.length; j++) {
+                entries[j] = readString(input);
+            }
+            int index = input.readInt();
+            if (index < -1 || index >= entries.length) throw new IOException("Bad entry index " + index);
+            tabs.add(new TabState(url, title, scrollX, scrollY, entries, index));
+        }
+        return tabs.isEmpty() ? null : new Session(current, tabs);
+    }
+
+    private static int checkCount(int count, int max) throws IOException {
+        if (count < 0 || count > max) throw new IOException("Bad count " + count);
+        return count;
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        boolean present = value != null && value.length() <= MAX_URL_LENGTH;
+        output.writeBoolean(present);
+        if (present) output.writeUTF(value);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    public static class Session {
+
+        /**
+         * Index of the selected tab in {@link #tabs}.
+         */
+        public final int current;
+        public final List<TabState> tabs;
+
+        public Session(int current, List<TabState> tabs) {
+            this.current = current;
+            this.tabs = Collections.unmodifiableList(tabs);
+        }
+    }
+
+    public static class TabState {
+
+        public final String url;
+        public final String title;
+
+        /**
+         * Where the page at {@link #url} was scrolled to, in WebView pixels.
+         */
+        public final int scrollX;
+        public final int scrollY;
+
+        /**
+         * The tab's back/forward list, oldest first, and the position of the
+         * current entry in it, or -1 if it is empty.
+         */
+        public final String[] entries;
+        public final int index;
+
+        public TabState(String url, String title, int scrollX, int scrollY, String[] entries, int index) {
+            this.url = url;
+            this.title = title;
+            this.scrollX = scrollX;
+            this.scrollY = scrollY;
+            this.entries = entries;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.application;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The open tabs, saved to {@code files/session.bin} so they come back after
+ * the process has been killed.
+ *
+ * Each tab is stored as its URL, title, scroll position and
+ * {@link NavigationStack} in the {@link SessionCodec} layout. Saves are requested after navigations and
+ * debounced by {@link #SAVE_DELAY_MS}; the session is captured on the main
+ * thread (WebView requires it) and written atomically on a background thread.
+ * The file is read on that thread as soon as the store is created, which
+ * {@link GlobalApplication} does at startup, and {@link #loadSession} hands it
+ * over without ever blocking the main thread. A file that cannot be read is
+ * deleted. Main thread only.
+ */
+public class SessionStore {
+
+    private static final String TAG = "SessionStore";
+
+    private static final String FILE_NAME = "session.bin";
+
+    private static final long SAVE_DELAY_MS = 2000;
+
+    private static SessionStore sInstance;
+
+    private final File mFile;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private boolean mLoadDone;
+
+    // Read from disk and not yet handed over.
+    private SessionCodec.Session mLoaded;
+
+    private Callback<SessionCodec.Session> mLoadCallback;
+
+    // The last session captured by this process; newer than the file.
+    private SessionCodec.Session mLast;
+
+    private Source mSource;
+
+    public interface Source {
+
+        /**
+         * The session as it is now; called on the main thread.
+         */
+        SessionCodec.Session capture();
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private final Runnable mSaveTask = new Runnable() {
+
+        @Override
+        public void run() {
+            saveNow();
+        }
+    };
+
+    public static synchronized SessionStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SessionStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private SessionStore(Context context) {
+        this.mFile = new File(context.getFilesDir(), FILE_NAME);
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    final SessionCodec.Session session = read();
+                    mMainHandler.post(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                onLoaded(session);
+                            }
+                        });
+                }
+            });
+    }
+
+    /**
+     * Where sessions are captured from; null stops saving.
+     */
+    public void setSource(Source source) {
+        mSource = source;
+        if (source == null) mMainHandler.removeCallbacks(mSaveTask);
+    }
+
+    /**
+     * Hands over the session to restore: the last one captured by this
+     * process, else the one read from disk, or null if there is none or it
+     * could not be read. The callback runs right away if the session is
+     * already known, otherwise on the main thread once the read finishes. The
+     * session from disk is handed over only once; a later call replaces a
+     * callback still waiting.
+     */
+    public void loadSession(Callback<SessionCodec.Session> callback) {
+        if (mLast != null) {
+            callback.onResult(mLast);
+        } else if (mLoadDone) {
+            SessionCodec.Session session = mLoaded;
+            mLoaded = null;
+            callback.onResult(session);
+        } else {
+            mLoadCallback = callback;
+        }
+    }
+
+    /**
+     * Stops waiting for the session without taking it.
+     */
+    public void cancelLoad(Callback<SessionCodec.Session> callback) {
+        if (mLoadCallback == callback) mLoadCallback = null;
+    }
+
+    /**
+     * Deletes the saved session, e.g. after it failed to restore.
+     */
+    public void discard() {
+        mLast = null;
+        mLoaded = null;
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    mFile.delete();
+                }
+            });
+    }
+
+    /**
+     * Saves the session {@link #SAVE_DELAY_MS} after the last request.
+     */
+    public void requestSave() {
+        if (mSource == null) return;
+        mMainHandler.removeCallbacks(mSaveTask);
+        mMainHandler.postDelayed(mSaveTask, SAVE_DELAY_MS);
+    }
+
+    /**
+     * Captures the session now and writes it in the background.
+     */
+    public void saveNow() {
+        mMainHandler.removeCallbacks(mSaveTask);
+        if (mSource == null) return;
+        final SessionCodec.Session session = mSource.capture();
+        mLast = session;
+        final byte[] data;
+        try {
+            data = SessionCodec.encode(session);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to encode session", e);
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        IoUtils.writeAtomic(mFile, data);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Failed to write session", e);
+                    }
+                }
+            });
+    }
+
+    /**
+     * A callback that was waiting gets the file's session even if one has been
+     * captured since: that capture came from the activity still waiting.
+     */
+    private void onLoaded(SessionCodec.Session session) {
+        mLoadDone = true;
+        Callback<SessionCodec.Session> callback = mLoadCallback;
+        mLoadCallback = null;
+        if (callback != null) {
+            callback.onResult(session);
+        } else {
+            mLoaded = session;
+        }
+    }
+
+    private SessionCodec.Session read() {
+        DataInputStream input;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            return SessionCodec.decode(input);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Discarding unreadable session", e);
+        } finally {
+            IoUtils.closeIO(input);
+        }
+        mFile.delete();
+        return null;
+    }
+}
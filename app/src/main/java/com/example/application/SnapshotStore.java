@@ -0,0 +1,312 @@
+package com.example.application;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.ValueCallback;
+import android.webkit.WebView;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Offline copies of visited pages, saved with {@link WebView#saveWebArchive} as
+ * MHTML under {@code cache/snapshots}.
+ *
+ * Off unless enabled from the developer console. A page is saved once it has
+ * stayed on screen for {@link #SAVE_DELAY_MS} after it finished loading, so
+ * pages the user only passes through are not archived. Saves are at least
+ * {@link #MIN_SAVE_GAP_MS} apart, and each page is saved at most once per
+ * {@link #MIN_SAVE_INTERVAL_MS}; snapshots
+ * are evicted least recently used first once they take more than
+ * {@link #MAX_BYTES}. The list of snapshots is read from the directory on a
+ * background thread when the store is created, so {@link #find} does no disk
+ * I/O. Main thread only, except for the file work done on its own executor.
+ */
+public class SnapshotStore {
+
+    private static final String TAG = "SnapshotStore";
+
+    public static final String PREF_ENABLED = "snapshots_enabled";
+
+    private static final String DIR_NAME = "snapshots";
+
+    private static final String SUFFIX = ".mht";
+
+    private static final long MAX_BYTES = 32 * 1024 * 1024;
+
+    private static final long MIN_SAVE_INTERVAL_MS = 10 * 60 * 1000;
+
+    private static final long SAVE_DELAY_MS = 5000;
+
+    private static final long MIN_SAVE_GAP_MS = 30 * 1000;
+
+    private static SnapshotStore sInstance;
+
+    private final File mDir;
+
+    private final SharedPreferences mPrefs;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    // Key -> snapshot, least recently used first.
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Set<String> mPending = new HashSet<>();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private long mTotalBytes;
+
+    private WebView mSaveView;
+
+    private String mSaveUrl;
+
+    private long mLastSaveTime;
+
+    private final Runnable mSaveTask = new Runnable() {
+
+        @Override
+        public void run() {
+            WebView webView = mSaveView;
+            String url = mSaveUrl;
+            mSaveView = null;
+            mSaveUrl = null;
+            // Skip pages that were left, and WebViews that were detached or released.
+            if (webView == null || webView.getParent() == null || !url.equals(webView.getUrl())) return;
+            mLastSaveTime = SystemClock.uptimeMillis();
+            archive(webView, url);
+        }
+    };
+
+    public static synchronized SnapshotStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SnapshotStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private SnapshotStore(Context context) {
+        this.mDir = new File(context.getCacheDir(), DIR_NAME);
+        this.mPrefs = context.getSharedPreferences("browser_prefs", Context.MODE_PRIVATE);
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    load();
+                }
+            });
+    }
+
+    /**
+     * Whether {@code url} is the location of a snapshot being displayed.
+     */
+    public static boolean isSnapshotUrl(String url) {
+        return url != null && url.startsWith("file:") && url.contains("/" + DIR_NAME + "/");
+    }
+
+    public boolean isEnabled() {
+        return mPrefs.getBoolean(PREF_ENABLED, false);
+    }
+
+    public void setEnabled(boolean enabled) {
+        mPrefs.edit().putBoolean(PREF_ENABLED, enabled).apply();
+        if (!enabled) clear();
+    }
+
+    /**
+     * The snapshot of {@code url}, or null if there is none.
+     */
+    public synchronized File find(String url) {
+        Entry entry = mEntries.get(keyFor(url));
+        return entry != null ? new File(mDir, entry.key + SUFFIX) : null;
+    }
+
+    /**
+     * Schedules saving the page shown in {@code webView} as the snapshot of
+     * {@code url}, unless snapshots are off or it was saved recently. Replaces
+     * a save scheduled for another page.
+     */
+    public void save(WebView webView, String url) {
+        if (!isEnabled() || !(url.startsWith("http://") || url.startsWith("https://"))) return;
+        synchronized (this) {
+            Entry entry = mEntries.get(keyFor(url));
+            if (entry != null && System.currentTimeMillis() - entry.savedTime < MIN_SAVE_INTERVAL_MS) return;
+        }
+        mMainHandler.removeCallbacks(mSaveTask);
+        mSaveView = webView;
+        mSaveUrl = url;
+        long gap = mLastSaveTime != 0 ? mLastSaveTime + MIN_SAVE_GAP_MS - SystemClock.uptimeMillis() : 0;
+        mMainHandler.postDelayed(mSaveTask, Math.max(SAVE_DELAY_MS, gap));
+    }
+
+    private void archive(WebView webView, String url) {
+        final String key = keyFor(url);
+        synchronized (this) {
+            Entry entry = mEntries.get(key);
+            if (mPending.contains(key) || (entry != null && System.currentTimeMillis() - entry.savedTime < MIN_SAVE_INTERVAL_MS)) return;
+            mPending.add(key);
+        }
+        final File temp = new File(mDir, key + ".tmp");
+        webView.saveWebArchive(temp.getPath(), false, new ValueCallback<String>() {
+            @Override
+            public void onReceiveValue(final String path) {
+                mExecutor.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            commit(key, path != null ? temp : null);
+                        }
+                    });
+            }
+        });
+    }
+
+    public void remove(String url) {
+        final String key = keyFor(url);
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    synchronized (SnapshotStore.this) {
+                        Entry entry = mEntries.remove(key);
+                        if (entry == null) return;
+                        mTotalBytes -= entry.size;
+                    }
+                    new File(mDir, key + SUFFIX).delete();
+                }
+            });
+    }
+
+    public void clear() {
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    synchronized (SnapshotStore.this) {
+                        mEntries.clear();
+                        mTotalBytes = 0;
+                    }
+                    File[] files = mDir.listFiles();
+                    if (files == null) return;
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+            });
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    private void commit(String key, File temp) {
+        synchronized (this) {
+            mPending.remove(key);
+        }
+        if (temp == null || !temp.isFile()) return;
+        File target = new File(mDir, key + SUFFIX);
+        try {
+            IoUtils.commit(temp, target);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save snapshot", e);
+            return;
+        }
+        Entry entry = new Entry(key, target.length(), System.currentTimeMillis());
+        synchronized (this) {
+            Entry previous = mEntries.put(key, entry);
+            if (previous != null) mTotalBytes -= previous.size;
+            mTotalBytes += entry.size;
+        }
+        trim();
+    }
+
+    private void trim() {
+        while (true) {
+            Entry eldest;
+            synchronized (this) {
+                if (mTotalBytes <= MAX_BYTES || mEntries.isEmpty()) return;
+                Iterator<Entry> iterator = mEntries.values().iterator();
+                eldest = iterator.next();
+                iterator.remove();
+                mTotalBytes -= eldest.size;
+            }
+            new File(mDir, eldest.key + SUFFIX).delete();
+        }
+    }
+
+    private void load() {
+        if (!mDir.isDirectory() && !mDir.mkdirs()) return;
+        File[] files = mDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX) || name.endsWith(".tmp");
+            }
+        });
+        if (files == null) return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        synchronized (this) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(".tmp")) {
+                    file.delete();
+                    continue;
+                }
+                String key = name.substring(0, name.length() - SUFFIX.length());
+                Entry entry = new Entry(key, file.length(), file.lastModified());
+                mEntries.put(key, entry);
+                mTotalBytes += entry.size;
+            }
+        }
+        trim();
+    }
+
+    private static String keyFor(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(url.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+
+        final String key;
+        final long size;
+        final long savedTime;
+
+        Entry(String key, long size, long savedTime) {
+            this.key = key;
+            this.size = size;
+            this.savedTime = savedTime;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.application;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Records the spans of one cold start and keeps the last few launches on disk.
+ *
+ * Spans are stored in preallocated arrays and timed with
+ * {@link SystemClock#elapsedRealtimeNanos}, so recording costs a few array
+ * writes plus the matching {@link Trace} section. Recording stops at
+ * {@link #finishLaunch}; spans beyond {@link #MAX_SPANS} are dropped. Main
+ * thread only.
+ */
+public final class StartupTrace {
+
+    private static final String TAG = "StartupTrace";
+
+    private static final String FILE_NAME = "startup_trace.bin";
+
+    private static final int FILE_VERSION = 1;
+
+    private static final int MAX_SPANS = 32;
+
+    private static final int MAX_LAUNCHES = 10;
+
+    private static final String[] sNames = new String[MAX_SPANS];
+    private static final long[] sStarts = new long[MAX_SPANS];
+    private static final long[] sEnds = new long[MAX_SPANS];
+    private static final boolean[] sAsync = new boolean[MAX_SPANS];
+
+    private static int sCount;
+
+    private static boolean sFinished;
+
+    private static ExecutorService sExecutor;
+
+    private StartupTrace() {
+    }
+
+    /**
+     * Opens a span that must be closed on the same thread before any span opened
+     * earlier is closed, like {@link Trace#beginSection}.
+     */
+    public static int begin(String name) {
+        return begin(name, false);
+    }
+
+    /**
+     * Opens a span that may outlive the spans opened after it, such as the first
+     * page load. Shown as an async slice on Android 10 and later.
+     */
+    public static int beginAsync(String name) {
+        return begin(name, true);
+    }
+
+    private static int begin(String name, boolean async) {
+        if (sFinished || sCount == MAX_SPANS) return -1;
+        int span = sCount++;
+        sNames[span] = name;
+        sStarts[span] = SystemClock.elapsedRealtimeNanos();
+        sAsync[span] = async;
+        if (!async) {
+            Trace.beginSection(name);
+        } else if (Build.VERSION.SDK_INT >= 29) {
+            Trace.beginAsyncSection(name, span);
+        }
+        return span;
+    }
+
+    public static void end(int span) {
+        if (span < 0 || sEnds[span] != 0) return;
+        sEnds[span] = SystemClock.elapsedRealtimeNanos();
+        if (!sAsync[span]) {
+            Trace.endSection();
+        } else if (Build.VERSION.SDK_INT >= 29) {
+            Trace.endAsyncSection(sNames[span], span);
+        }
+    }
+
+    /**
+     * Stops recording and appends this launch to the stored history. Only the
+     * first call in a process has any effect.
+     */
+    public static void finishLaunch(Context context, String note) {
+        if (sFinished) return;
+        sFinished = true;
+
+        long origin = sCount > 0 ? sStarts[0] : SystemClock.elapsedRealtimeNanos();
+        int offset = 0;
+        if (Build.VERSION.SDK_INT >= 24) {
+            // Time before our code runs: fork, bindApplication and class loading.
+            long processStart = Process.getStartElapsedRealtime() * 1000000L;
+            if (sCount > 0 && processStart < origin) {
+                offset = 1;
+                origin = processStart;
+            }
+        }
+        final Launch launch = new Launch(System.currentTimeMillis(), note, sCount + offset);
+        if (offset == 1) {
+            launch.names[0] = "Process start";
+            launch.starts[0] = 0;
+            launch.durations[0] = sStarts[0] - origin;
+        }
+        for (int i = 0; i < sCount; i++) {
+            launch.names[i + offset] = sNames[i];
+            launch.starts[i + offset] = sStarts[i] - origin;
+            launch.durations[i + offset] = sEnds[i] != 0 ? sEnds[i] - sStarts[i] : -1;
+        }
+        Log.i(TAG, launch.format());
+
+        final File file = new File(context.getApplicationContext().getFilesDir(), FILE_NAME);
+        executor().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    List<Launch> launches = read(file);
+                    launches.add(launch);
+                    while (launches.size() > MAX_LAUNCHES) launches.remove(0);
+                    write(file, launches);
+                }
+            });
+    }
+
+    /**
+     * Loads the stored launches, oldest first, and delivers them on the main thread.
+     */
+    public static void load(Context context, final Callback<List<Launch>> callback) {
+        final File file = new File(context.getApplicationContext().getFilesDir(), FILE_NAME);
+        final Handler handler = new Handler(Looper.getMainLooper());
+        executor().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    final List<Launch> launches = read(file);
+                    handler.post(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                callback.onResult(launches);
+                            }
+                        });
+                }
+            });
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newSingleThreadExecutor();
+        }
+        return sExecutor;
+    }
+
+    private static List<Launch> read(File file) {
+        List<Launch> launches = new ArrayList<>();
+        if (!file.isFile()) return launches;
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != FILE_VERSION) return launches;
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                long wallTime = input.readLong();
+                String note = input.readUTF();
+                int spans = input.readInt();
+                if (spans < 0 || spans > MAX_SPANS + 1) throw new IOException("Corrupt trace");
+                Launch launch = new Launch(wallTime, note, spans);
+                for (int j = 0; j < launch.names.length; j++) {
+                    launch.names[j] = input.readUTF();
+                    launch.starts[j] = input.readLong();
+                    launch.durations[j] = input.readLong();
+                }
+                launches.add(launch);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read " + file, e);
+        } finally {
+            GlobalApplication.closeIO(input);
+        }
+        return launches;
+    }
+
+    private static void write(File file, List<Launch> launches) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeInt(FILE_VERSION);
+            output.writeInt(launches.size());
+            for (Launch launch : launches) {
+                output.writeLong(launch.wallTime);
+                output.writeUTF(launch.note);
+                output.writeInt(launch.names.length);
+                for (int j = 0; j < launch.names.length; j++) {
+                    output.writeUTF(launch.names[j]);
+                    output.writeLong(launch.starts[j]);
+                    output.writeLong(launch.durations[j]);
+                }
+            }
+            output.flush();
+            // A crash halfway through leaves the previous trace in place.
+            IoUtils.writeAtomic(file, bytes.toByteArray());
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + file, e);
+        }
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    /**
+     * One stored launch. Span start times are relative to process start when the
+     * platform reports it, otherwise to the first span. A duration of -1 marks a
+     * span that was still open.
+     */
+    public static class Launch {
+
+        private static final int BAR_WIDTH = 24;
+
+        public final long wallTime;
+        public final String note;
+        public final String[] names;
+        public final long[] starts;
+        public final long[] durations;
+
+        Launch(long wallTime, String note, int count) {
+            this.wallTime = wallTime;
+            this.note = note;
+            this.names = new String[count];
+            this.starts = new long[count];
+            this.durations = new long[count];
+        }
+
+        public long getTotalNanos() {
+            long total = 0;
+            for (int i = 0; i < names.length; i++) {
+                total = Math.max(total, starts[i] + Math.max(durations[i], 0));
+            }
+            return total;
+        }
+
+        /**
+         * Renders the spans as text bars on a shared time axis, for a monospace view.
+         */
+        public String format() {
+            long total = Math.max(getTotalNanos(), 1);
+            StringBuilder builder = new StringBuilder();
+            builder.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date(wallTime)))
+                .append("  ").append(note)
+                .append("  ").append(total / 1000000).append("ms")
+                .append('\n');
+            for (int i = 0; i < names.length; i++) {
+                int from = (int) (starts[i] * BAR_WIDTH / total);
+                int to = durations[i] < 0 ? BAR_WIDTH : (int) ((starts[i] + durations[i]) * BAR_WIDTH / total);
+                builder.append('|');
+                for (int x = 0; x < BAR_WIDTH; x++) {
+                    builder.append(x >= from && (x < to || x == from) ? '#' : ' ');
+                }
+                builder.append("| ")
+                    .append(String.format(Locale.ROOT, "%5d +%5s ", starts[i] / 1000000,
+                                          durations[i] < 0 ? "?" : String.valueOf(durations[i] / 1000000)))
+                    .append(names[i])
+                    .append('\n');
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package com.example.application;
+
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.PixelCopy;
+import android.view.ViewGroup;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+import android.widget.FrameLayout;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Open tabs of a {@link MainActivity}, at most {@link #getMaxLiveTabs()} of
+ * which hold a live {@link WebView}.
+ *
+ * When a tab goes to the background its WebView is paused and a downscaled
+ * thumbnail is captured from it, at most once per
+ * {@link #THUMBNAIL_INTERVAL_MS}. Once there are more live tabs than the budget,
+ * the least recently used background tab is suspended: its
+ * {@link WebView#saveState} bundle is kept in memory and the WebView is
+ * handed back to the {@link WebViewPool} to be destroyed. A suspended tab gets
+ * a new WebView and its state back when it is selected again. Tabs restored
+ * from a saved session have no such state; they load their URL from the HTTP
+ * cache where possible, are scrolled back to where they were once it has
+ * finished, and go back through their {@link NavigationStack}. The budget
+ * depends on the device's memory class. Main thread only.
+ */
+public class TabManager {
+
+    private static final String TAG = "TabManager";
+
+    private static final int THUMBNAIL_SCALE = 4;
+
+    private static final long THUMBNAIL_INTERVAL_MS = 5000;
+
+    private final Context mContext;
+
+    private final WebViewPool mPool;
+
+    private final FrameLayout mContainer;
+
+    private final Listener mListener;
+
+    private final int mMaxLiveTabs;
+
+    private final List<Tab> mTabs = new ArrayList<>();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private Tab mCurrent;
+
+    private int mNextId;
+
+    public interface Listener {
+
+        /**
+         * A WebView was created for {@code tab}, before anything is loaded
+         * into it; clients and JavaScript interfaces are attached here.
+         */
+        void onWebViewCreated(Tab tab, WebView webView);
+
+        void onTabSelected(Tab tab);
+    }
+
+    public TabManager(Context context, WebViewPool pool, FrameLayout container, Listener listener) {
+        this.mContext = context;
+        this.mPool = pool;
+        this.mContainer = container;
+        this.mListener = listener;
+        this.mMaxLiveTabs = computeMaxLiveTabs(context);
+    }
+
+    /**
+     * Low-RAM devices keep only the current tab live; others keep two or three.
+     */
+    private static int computeMaxLiveTabs(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager.isLowRamDevice()) return 1;
+        return activityManager.getMemoryClass() >= 192 ? 3 : 2;
+    }
+
+    public int getMaxLiveTabs() {
+        return mMaxLiveTabs;
+    }
+
+    /**
+     * Opens a tab, loading {@code url} unless it is null, and selects it.
+     */
+    public Tab open(String url) {
+        Tab tab = new Tab(mNextId++, url);
+        mTabs.add(tab);
+        attach(tab);
+        if (url != null) {
+            tab.webView.loadUrl(url);
+        }
+        select(tab);
+        return tab;
+    }
+
+    public void select(Tab tab) {
+        if (tab == mCurrent) return;
+        if (mCurrent != null) {
+            moveToBackground(mCurrent);
+        }
+        mCurrent = tab;
+        if (tab.webView == null) {
+            restore(tab);
+        }
+        mContainer.addView(tab.webView, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        tab.webView.onResume();
+        tab.lastUsed = SystemClock.uptimeMillis();
+        trimLiveTabs();
+        mListener.onTabSelected(tab);
+    }
+
+    /**
+     * Puts {@code webView}, already loaded elsewhere, into {@code tab} in place
+     * of its WebView. The old WebView is released, and the tab's back/forward
+     * history with it.
+     */
+    public void replaceWebView(Tab tab, WebView webView) {
+        if (tab.webView != null) {
+            mPool.release(tab.webView);
+        }
+        tab.webView = webView;
+        webView.setTag(R.id.tab_id, tab.id);
+        if (tab == mCurrent) {
+            mContainer.addView(webView, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+            webView.onResume();
+            mListener.onTabSelected(tab);
+        } else {
+            webView.onPause();
+            trimLiveTabs();
+        }
+    }
+
+    /**
+     * Closes {@code tab}; if it was current, the most recently used remaining
+     * tab is selected. Returns false when no tabs are left.
+     */
+    public boolean close(Tab tab) {
+        if (!mTabs.remove(tab)) return !mTabs.isEmpty();
+        if (tab.webView != null) {
+            mPool.release(tab.webView);
+            tab.webView = null;
+        }
+        if (tab == mCurrent) {
+            mCurrent = null;
+            Tab next = null;
+            for (Tab candidate : mTabs) {
+                if (next == null || candidate.lastUsed > next.lastUsed) next = candidate;
+            }
+            if (next != null) select(next);
+        }
+        return !mTabs.isEmpty();
+    }
+
+    public Tab getCurrent() {
+        return mCurrent;
+    }
+
+    public List<Tab> getTabs() {
+        return Collections.unmodifiableList(mTabs);
+    }
+
+    /**
+     * Releases thumbnails first, then background WebViews, then the WebView
+     * memory cache as pressure rises. Once the app is hidden, the cache goes
+     * first, then thumbnails and background WebViews.
+     */
+    public void registerMemoryHooks(MemoryPressureManager manager) {
+        manager.register("标签页缩略图", MemoryPressureManager.RUNNING_LOW, ComponentCallbacks2.TRIM_MEMORY_BACKGROUND, mThumbnailReleaser);
+        manager.register("后台标签页", MemoryPressureManager.RUNNING_CRITICAL, ComponentCallbacks2.TRIM_MEMORY_MODERATE, mBackgroundTabReleaser);
+        manager.register("WebView 内存缓存", ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN, mCacheReleaser);
+    }
+
+    public void unregisterMemoryHooks(MemoryPressureManager manager) {
+        manager.unregister(mThumbnailReleaser);
+        manager.unregister(mBackgroundTabReleaser);
+        manager.unregister(mCacheReleaser);
+    }
+
+    private final MemoryPressureManager.Releasable mThumbnailReleaser = new MemoryPressureManager.Releasable() {
+        @Override
+        public String release(int level) {
+            int count = 0;
+            for (Tab tab : mTabs) {
+                if (tab.thumbnail != null && tab != mCurrent) {
+                    tab.thumbnail = null;
+                    count++;
+                }
+            }
+            return count > 0 ? count + " 张" : null;
+        }
+    };
+
+    private final MemoryPressureManager.Releasable mBackgroundTabReleaser = new MemoryPressureManager.Releasable() {
+        @Override
+        public String release(int level) {
+            int count = 0;
+            for (Tab tab : mTabs) {
+                if (tab.webView != null && tab != mCurrent) {
+                    suspend(tab);
+                    count++;
+                }
+            }
+            return count > 0 ? count + " 个" : null;
+        }
+    };
+
+    /**
+     * The WebView cache is shared by the whole app, so clearing it through any
+     * live WebView is enough; disk files are kept.
+     */
+    private final MemoryPressureManager.Releasable mCacheReleaser = new MemoryPressureManager.Releasable() {
+        @Override
+        public String release(int level) {
+            if (mCurrent == null || mCurrent.webView == null) return null;
+            mCurrent.webView.clearCache(false);
+            return "已清除";
+        }
+    };
+
+    /**
+     * The tabs in order, each with its URL, title, scroll position and
+     * back/forward list; these come from the live WebView if there is one and
+     * it is not still restoring its page.
+     */
+    public SessionCodec.Session captureSession() {
+        List<SessionCodec.TabState> states = new ArrayList<>(mTabs.size());
+        for (Tab tab : mTabs) {
+            if (tab.webView != null && !tab.restoring) saveScroll(tab, tab.webView);
+            String url = tab.url;
+            String title = tab.title;
+            if (tab.webView != null && !tab.restoring && tab.webView.getUrl() != null) {
+                url = tab.webView.getUrl();
+                title = tab.webView.getTitle();
+            }
+            states.add(new SessionCodec.TabState(url, title, tab.scrollX, tab.scrollY,
+                                                 tab.navigationStack.getEntries(), tab.navigationStack.getIndex()));
+        }
+        return new SessionCodec.Session(Math.max(0, mTabs.indexOf(mCurrent)), states);
+    }
+
+    /**
+     * Opens the tabs of {@code session} suspended, after any open tabs. If
+     * {@code select} is true its current tab is selected, which loads only
+     * that tab's page. Returns the session's current tab, or null if the
+     * session has no tabs.
+     */
+    public Tab restoreSession(SessionCodec.Session session, boolean select) {
+        Tab current = null;
+        for (int i = 0; i < session.tabs.size(); i++) {
+            SessionCodec.TabState state = session.tabs.get(i);
+            Tab tab = new Tab(mNextId++, state.url);
+            tab.title = state.title;
+            tab.scrollX = state.scrollX;
+            tab.scrollY = state.scrollY;
+            tab.restoring = state.url != null;
+            tab.navigationStack.restore(state.entries, state.index);
+            mTabs.add(tab);
+            if (i == session.current || current == null) current = tab;
+        }
+        if (select && current != null) select(current);
+        return current;
+    }
+
+    /**
+     * Called when a page of {@code tab} has finished loading. The first page
+     * of a tab restored from a saved session is scrolled back to where it was,
+     * unless the user has gone elsewhere meanwhile. Returns true for that page.
+     */
+    public boolean finishRestore(Tab tab, String url) {
+        if (!tab.restoring || tab.webView == null) return false;
+        tab.restoring = false;
+        tab.webView.getSettings().setCacheMode(WebSettings.LOAD_DEFAULT);
+        if (url.equals(tab.url)) {
+            tab.webView.scrollTo(tab.scrollX, tab.scrollY);
+        }
+        return true;
+    }
+
+    public Tab findTab(WebView webView) {
+        for (Tab tab : mTabs) {
+            if (tab.webView == webView) return tab;
+        }
+        return null;
+    }
+
+    /**
+     * Id of the tab {@code webView} belongs to, or -1. Unlike {@link #findTab}
+     * this can be called off the main thread, e.g. from shouldInterceptRequest.
+     */
+    public static int tabIdOf(WebView webView) {
+        Object id = webView.getTag(R.id.tab_id);
+        return id instanceof Integer ? (Integer) id : -1;
+    }
+
+    public void destroy() {
+        for (Tab tab : mTabs) {
+            if (tab.webView != null) {
+                mPool.release(tab.webView);
+                tab.webView = null;
+            }
+        }
+        mTabs.clear();
+        mCurrent = null;
+    }
+
+    private void attach(Tab tab) {
+        tab.webView = mPool.acquire(mContext);
+        tab.webView.setTag(R.id.tab_id, tab.id);
+        mListener.onWebViewCreated(tab, tab.webView);
+    }
+
+    private void moveToBackground(Tab tab) {
+        long now = SystemClock.uptimeMillis();
+        if (tab.thumbnail == null || now - tab.thumbnailTime >= THUMBNAIL_INTERVAL_MS) {
+            captureThumbnail(tab);
+            tab.thumbnailTime = now;
+        }
+        tab.webView.onPause();
+        mContainer.removeView(tab.webView);
+    }
+
+    private void trimLiveTabs() {
+        while (true) {
+            int live = 0;
+            Tab eldest = null;
+            for (Tab tab : mTabs) {
+                if (tab.webView == null) continue;
+                live++;
+                if (tab != mCurrent && (eldest == null || tab.lastUsed < eldest.lastUsed)) eldest = tab;
+            }
+            if (live <= mMaxLiveTabs || eldest == null) return;
+            suspend(eldest);
+        }
+    }
+
+    private void suspend(Tab tab) {
+        WebView webView = tab.webView;
+        if (!tab.restoring) {
+            saveScroll(tab, webView);
+            if (webView.getUrl() != null) {
+                tab.url = webView.getUrl();
+                tab.title = webView.getTitle();
+            }
+        }
+        Bundle state = new Bundle();
+        tab.state = webView.saveState(state) != null ? state : null;
+        tab.webView = null;
+        mPool.release(webView);
+    }
+
+    private void restore(Tab tab) {
+        attach(tab);
+        boolean restored = false;
+        if (tab.state != null) {
+            try {
+                restored = tab.webView.restoreState(tab.state) != null;
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to restore tab " + tab.id, e);
+            }
+            tab.state = null;
+        }
+        if (!restored && tab.url != null) {
+            if (tab.restoring) {
+                // What was on screen, not a fresh copy; reloading brings that.
+                tab.webView.getSettings().setCacheMode(WebSettings.LOAD_CACHE_ELSE_NETWORK);
+            }
+            tab.webView.loadUrl(tab.url);
+        }
+    }
+
+    private static void saveScroll(Tab tab, WebView webView) {
+        tab.scrollX = webView.getScrollX();
+        tab.scrollY = webView.getScrollY();
+    }
+
+    /**
+     * Captures the tab's WebView at a fraction of its size, reusing the current
+     * thumbnail when it has the right dimensions. From API 26 {@link PixelCopy}
+     * scales the window's rendered pixels off the main thread and the thumbnail
+     * is set when the copy completes; older releases draw the view into a
+     * scaled software canvas. Does nothing if the view has not been laid out.
+     */
+    private void captureThumbnail(final Tab tab) {
+        WebView webView = tab.webView;
+        int width = webView.getWidth() / THUMBNAIL_SCALE;
+        int height = webView.getHeight() / THUMBNAIL_SCALE;
+        if (width <= 0 || height <= 0) return;
+        Bitmap bitmap = tab.thumbnail;
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        }
+        if (Build.VERSION.SDK_INT >= 26 && mContext instanceof Activity) {
+            int[] location = new int[2];
+            webView.getLocationInWindow(location);
+            Rect source = new Rect(location[0], location[1], location[0] + webView.getWidth(), location[1] + webView.getHeight());
+            final Bitmap target = bitmap;
+            PixelCopy.request(((Activity) mContext).getWindow(), source, target, new PixelCopy.OnPixelCopyFinishedListener() {
+                    @Override
+                    public void onPixelCopyFinished(int result) {
+                        if (result == PixelCopy.SUCCESS && mTabs.contains(tab)) tab.thumbnail = target;
+                    }
+                }, mHandler);
+            return;
+        }
+        bitmap.eraseColor(Color.WHITE);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.scale(1f / THUMBNAIL_SCALE, 1f / THUMBNAIL_SCALE);
+        canvas.translate(-webView.getScrollX(), -webView.getScrollY());
+        webView.draw(canvas);
+        tab.thumbnail = bitmap;
+    }
+
+    public static class Tab {
+
+        public final int id;
+        public final NavigationStack navigationStack = new NavigationStack();
+        public String url;
+        public String title;
+        public Bitmap thumbnail;
+        long thumbnailTime;
+        WebView webView;
+        Bundle state;
+        long lastUsed;
+        // Where the page at url was scrolled to.
+        int scrollX;
+        int scrollY;
+        // Restored from a saved session and its page not yet finished.
+        boolean restoring;
+
+        Tab(int id, String url) {
+            this.id = id;
+            this.url = url;
+        }
+
+        public WebView getWebView() {
+            return webView;
+        }
+
+        public boolean isSuspended() {
+            return webView == null;
+        }
+    }
+}
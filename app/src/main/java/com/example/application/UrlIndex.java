@@ -0,0 +1,488 @@
+package com.example.application;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Prefix index over history URLs for address bar suggestions.
+ *
+ * Each URL contributes a few tokens: the URL without scheme and "www.", its
+ * parent-domain suffixes and its path segments. A token is stored as a packed
+ * (entry, offset) pair into the original URL string and the token array is kept
+ * sorted case-insensitively, so the matches for a query form one contiguous range.
+ * A max segment tree over that array (keyed by visit count) lets a lookup pull the
+ * best entries of the range in order without scanning all of it.
+ *
+ * Tokens of newly added URLs go to a small sorted pending array first and are
+ * merged into the main one, with a single tree rebuild, once
+ * {@link #MAX_PENDING_TOKENS} have piled up; lookups search both.
+ *
+ * {@link #lookup} allocates nothing beyond what it adds to the caller's list.
+ * Not thread-safe.
+ */
+public final class UrlIndex {
+
+    public static final int MAX_RESULTS = 16;
+
+    private static final int MAX_HOST_TOKENS = 2;
+    private static final int MAX_PATH_TOKENS = 3;
+
+    static final int MAX_PENDING_TOKENS = 128;
+
+    private String[] mUrls;
+
+    private int[] mCounts;
+
+    private int mEntryCount;
+
+    private long[] mTokens;
+
+    private int mTokenCount;
+
+    // Sorted like mTokens but not in the tree yet.
+    private final long[] mPending = new long[MAX_PENDING_TOKENS + 1 + MAX_HOST_TOKENS + MAX_PATH_TOKENS];
+
+    private int mPendingCount;
+
+    // Bottom-up segment tree: leaf mTokenCount + i holds the entry of token i,
+    // every inner node the best ranked entry below it.
+    private int[] mTree;
+
+    private int[] mSeen;
+
+    private int mGeneration;
+
+    // Best-first search frontier, reused across lookups.
+    private int[] mHeap = new int[1024];
+
+    private final int[] mOffsets = new int[1 + MAX_HOST_TOKENS + MAX_PATH_TOKENS];
+
+    // Entries found by a lookup, best first.
+    private final int[] mResults = new int[MAX_RESULTS];
+
+    public UrlIndex() {
+        this(new String[0], new int[0], 0);
+    }
+
+    /**
+     * Bulk-builds an index over {@code count} distinct URLs with their visit counts.
+     */
+    public UrlIndex(String[] urls, int[] counts, int count) {
+        mUrls = Arrays.copyOf(urls, Math.max(count, 16));
+        mCounts = Arrays.copyOf(counts, mUrls.length);
+        mSeen = new int[mUrls.length];
+        mEntryCount = count;
+
+        long[] tokens = new long[Math.max(count * 2, 16)];
+        int tokenCount = 0;
+        for (int entry = 0; entry < count; entry++) {
+            int n = tokenize(mUrls[entry], mOffsets);
+            for (int i = 0; i < n; i++) {
+                if (tokenCount == tokens.length) tokens = Arrays.copyOf(tokens, tokenCount * 2);
+                tokens[tokenCount++] = pack(entry, mOffsets[i]);
+            }
+        }
+        mTokens = tokens;
+        mTokenCount = tokenCount;
+        sort(mTokens, new long[tokenCount], 0, tokenCount);
+        rebuildTree();
+    }
+
+    public int size() {
+        return mEntryCount;
+    }
+
+    /**
+     * Bumps the visit count of {@code url}, adding it to the index if it is new.
+     */
+    public void recordVisit(String url) {
+        int entry = findEntry(url);
+        if (entry >= 0) {
+            mCounts[entry]++;
+            int n = tokenize(url, mOffsets);
+            for (int i = 0; i < n; i++) {
+                int index = findToken(pack(entry, mOffsets[i]));
+                if (index >= 0) updateTree(index);
+            }
+            return;
+        }
+
+        if (mEntryCount == mUrls.length) {
+            int capacity = mUrls.length * 2;
+            mUrls = Arrays.copyOf(mUrls, capacity);
+            mCounts = Arrays.copyOf(mCounts, capacity);
+            mSeen = Arrays.copyOf(mSeen, capacity);
+        }
+        entry = mEntryCount++;
+        mUrls[entry] = url;
+        mCounts[entry] = 1;
+
+        int n = tokenize(url, mOffsets);
+        for (int i = 0; i < n; i++) {
+            long token = pack(entry, mOffsets[i]);
+            int index = lowerBound(mPending, mPendingCount, url, mOffsets[i], url.length());
+            while (index < mPendingCount && compareTokens(mPending[index], token) < 0) index++;
+            System.arraycopy(mPending, index, mPending, index + 1, mPendingCount - index);
+            mPending[index] = token;
+            mPendingCount++;
+        }
+        if (mPendingCount >= MAX_PENDING_TOKENS) mergePending();
+    }
+
+    /**
+     * Merges the pending tokens into the main array, from the back so it needs
+     * no scratch space, and rebuilds the tree.
+     */
+    private void mergePending() {
+        int total = mTokenCount + mPendingCount;
+        if (total > mTokens.length) mTokens = Arrays.copyOf(mTokens, Math.max(total, mTokens.length * 2));
+        int i = mTokenCount - 1;
+        int j = mPendingCount - 1;
+        for (int k = total - 1; j >= 0; k--) {
+            if (i >= 0 && compareTokens(mTokens[i], mPending[j]) > 0) {
+                mTokens[k] = mTokens[i--];
+            } else {
+                mTokens[k] = mPending[j--];
+            }
+        }
+        mTokenCount = total;
+        mPendingCount = 0;
+        rebuildTree();
+    }
+
+    /**
+     * Drops {@code url} from the index. Its entry slot is left empty.
+     */
+    public void remove(String url) {
+        int entry = findEntry(url);
+        if (entry < 0) return;
+
+        mTokenCount = removeEntry(mTokens, mTokenCount, entry);
+        mPendingCount = removeEntry(mPending, mPendingCount, entry);
+        mUrls[entry] = null;
+        mCounts[entry] = 0;
+        rebuildTree();
+    }
+
+    private static int removeEntry(long[] tokens, int count, int entry) {
+        int write = 0;
+        for (int read = 0; read < count; read++) {
+            if (entryOf(tokens[read]) != entry) tokens[write++] = tokens[read];
+        }
+        return write;
+    }
+
+    /**
+     * Appends up to {@code limit} URLs matching {@code query} to {@code out},
+     * most visited first. A leading scheme and "www." in the query are ignored.
+     */
+    public void lookup(CharSequence query, int limit, List<String> out) {
+        limit = Math.min(limit, MAX_RESULTS);
+        int start = skipPrefix(query, 0);
+        int end = query.length();
+        if (start >= end || limit <= 0) return;
+
+        int from = lowerBound(mTokens, mTokenCount, query, start, end);
+        int to = upperBound(mTokens, mTokenCount, query, start, end, from);
+        int found = collect(from, to, limit);
+        int pendingFrom = lowerBound(mPending, mPendingCount, query, start, end);
+        int pendingTo = upperBound(mPending, mPendingCount, query, start, end, pendingFrom);
+        found = addPending(pendingFrom, pendingTo, limit, found);
+        for (int i = 0; i < found; i++) out.add(mUrls[mResults[i]]);
+    }
+
+    /**
+     * Appends up to {@code limit} of the most visited URLs to {@code out}.
+     */
+    public void top(int limit, List<String> out) {
+        limit = Math.min(limit, MAX_RESULTS);
+        if (limit <= 0) return;
+        int found = addPending(0, mPendingCount, limit, collect(0, mTokenCount, limit));
+        for (int i = 0; i < found; i++) out.add(mUrls[mResults[i]]);
+    }
+
+    /**
+     * Puts the best {@code limit} distinct entries among tokens {@code [from, to)}
+     * into {@link #mResults}, best first; returns how many there are.
+     */
+    private int collect(int from, int to, int limit) {
+        if (++mGeneration == 0) {
+            Arrays.fill(mSeen, 0);
+            mGeneration = 1;
+        }
+
+        // Seed the frontier with the canonical nodes covering [from, to), then keep
+        // expanding the best node; leaves therefore come out best first.
+        int heapSize = 0;
+        for (int l = from + mTokenCount, r = to + mTokenCount; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0) heapSize = heapPush(heapSize, l++);
+            if ((r & 1) != 0) heapSize = heapPush(heapSize, --r);
+        }
+
+        int found = 0;
+        while (heapSize > 0 && found < limit) {
+            int node = mHeap[0];
+            heapSize = heapPop(heapSize);
+            if (node >= mTokenCount) {
+                int entry = mTree[node];
+                if (mSeen[entry] == mGeneration) continue;
+                mSeen[entry] = mGeneration;
+                mResults[found++] = entry;
+            } else {
+                heapSize = heapPush(heapSize, 2 * node);
+                heapSize = heapPush(heapSize, 2 * node + 1);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Ranks the entries of pending tokens {@code [from, to)} into the first
+     * {@code found} results; returns the new result count.
+     */
+    private int addPending(int from, int to, int limit, int found) {
+        for (int i = from; i < to; i++) {
+            int entry = entryOf(mPending[i]);
+            if (mSeen[entry] == mGeneration) continue;
+            mSeen[entry] = mGeneration;
+            if (found == limit && !ranksAbove(entry, mResults[found - 1])) continue;
+            int j = found < limit ? found++ : found - 1;
+            while (j > 0 && ranksAbove(entry, mResults[j - 1])) {
+                mResults[j] = mResults[j - 1];
+                j--;
+            }
+            mResults[j] = entry;
+        }
+        return found;
+    }
+
+    private int heapPush(int size, int node) {
+        if (size == mHeap.length) mHeap = Arrays.copyOf(mHeap, size * 2);
+        int i = size;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!ranksAbove(mTree[node], mTree[mHeap[parent]])) break;
+            mHeap[i] = mHeap[parent];
+            i = parent;
+        }
+        mHeap[i] = node;
+        return size + 1;
+    }
+
+    private int heapPop(int size) {
+        int last = mHeap[--size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && ranksAbove(mTree[mHeap[child + 1]], mTree[mHeap[child]])) child++;
+            if (!ranksAbove(mTree[mHeap[child]], mTree[last])) break;
+            mHeap[i] = mHeap[child];
+            i = child;
+        }
+        mHeap[i] = last;
+        return size;
+    }
+
+    private void rebuildTree() {
+        int n = mTokenCount;
+        if (mTree == null || mTree.length < 2 * n) mTree = new int[2 * Math.max(n, mTokens.length)];
+        for (int i = 0; i < n; i++) {
+            mTree[n + i] = entryOf(mTokens[i]);
+        }
+        for (int i = n - 1; i > 0; i--) {
+            mTree[i] = best(mTree[2 * i], mTree[2 * i + 1]);
+        }
+    }
+
+    private void updateTree(int index) {
+        for (int i = (index + mTokenCount) >> 1; i > 0; i >>= 1) {
+            mTree[i] = best(mTree[2 * i], mTree[2 * i + 1]);
+        }
+    }
+
+    private int best(int a, int b) {
+        return ranksAbove(b, a) ? b : a;
+    }
+
+    private boolean ranksAbove(int entry, int other) {
+        if (entry == other) return false;
+        if (mCounts[entry] != mCounts[other]) return mCounts[entry] > mCounts[other];
+        return entry > other;
+    }
+
+    private int findToken(long token) {
+        String url = mUrls[entryOf(token)];
+        int offset = offsetOf(token);
+        for (int i = lowerBound(mTokens, mTokenCount, url, offset, url.length()); i < mTokenCount; i++) {
+            if (mTokens[i] == token) return i;
+            if (compareTokens(mTokens[i], token) > 0) break;
+        }
+        return -1;
+    }
+
+    private int findEntry(String url) {
+        int entry = findEntry(mTokens, mTokenCount, url);
+        return entry >= 0 ? entry : findEntry(mPending, mPendingCount, url);
+    }
+
+    private int findEntry(long[] tokens, int count, String url) {
+        int start = skipPrefix(url, 0);
+        int length = url.length() - start;
+        for (int i = lowerBound(tokens, count, url, start, url.length()); i < count; i++) {
+            long token = tokens[i];
+            String candidate = mUrls[entryOf(token)];
+            if (compare(candidate, offsetOf(token), url, start, url.length()) != 0) break;
+            if (candidate.length() - offsetOf(token) == length && candidate.equals(url)) return entryOf(token);
+        }
+        return -1;
+    }
+
+    /**
+     * Index of the first token whose key is not less than {@code query[start, end)}.
+     */
+    private int lowerBound(long[] tokens, int count, CharSequence query, int start, int end) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            long token = tokens[mid];
+            if (compare(mUrls[entryOf(token)], offsetOf(token), query, start, end) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Index just past the last token that starts with {@code query[start, end)}.
+     */
+    private int upperBound(long[] tokens, int count, CharSequence query, int start, int end, int from) {
+        int low = from;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            long token = tokens[mid];
+            if (compare(mUrls[entryOf(token)], offsetOf(token), query, start, end) == 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Case-insensitive comparison of the key at {@code key[offset..]} against the
+     * query; returns 0 when the query is a prefix of the key.
+     */
+    private static int compare(String key, int offset, CharSequence query, int start, int end) {
+        int keyLength = key.length();
+        for (int q = start; q < end; q++, offset++) {
+            if (offset >= keyLength) return -1;
+            int diff = lower(key.charAt(offset)) - lower(query.charAt(q));
+            if (diff != 0) return diff;
+        }
+        return 0;
+    }
+
+    private int compareTokens(long a, long b) {
+        String keyA = mUrls[entryOf(a)];
+        String keyB = mUrls[entryOf(b)];
+        int i = offsetOf(a);
+        int j = offsetOf(b);
+        while (i < keyA.length() && j < keyB.length()) {
+            int diff = lower(keyA.charAt(i++)) - lower(keyB.charAt(j++));
+            if (diff != 0) return diff;
+        }
+        return (keyA.length() - i) - (keyB.length() - j);
+    }
+
+    private void sort(long[] tokens, long[] scratch, int from, int to) {
+        if (to - from < 2) return;
+        int mid = (from + to) >>> 1;
+        sort(tokens, scratch, from, mid);
+        sort(tokens, scratch, mid, to);
+        if (compareTokens(tokens[mid - 1], tokens[mid]) <= 0) return;
+
+        System.arraycopy(tokens, from, scratch, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && compareTokens(scratch[i], scratch[j]) <= 0)) {
+                tokens[k] = scratch[i++];
+            } else {
+                tokens[k] = scratch[j++];
+            }
+        }
+    }
+
+    /**
+     * Writes the token start offsets of {@code url} into {@code offsets}.
+     */
+    static int tokenize(String url, int[] offsets) {
+        int hostStart = skipPrefix(url, 0);
+        int length = url.length();
+        int hostEnd = hostStart;
+        while (hostEnd < length && url.charAt(hostEnd) != '/' && url.charAt(hostEnd) != '?' && url.charAt(hostEnd) != '#') hostEnd++;
+
+        int count = 0;
+        offsets[count++] = hostStart;
+
+        // Parent domains: mail.google.com -> google.com, but never a bare TLD.
+        int hostTokens = 0;
+        for (int i = hostStart; i < hostEnd && hostTokens < MAX_HOST_TOKENS; i++) {
+            if (url.charAt(i) == '.' && url.indexOf('.', i + 1) >= 0 && url.indexOf('.', i + 1) < hostEnd) {
+                offsets[count++] = i + 1;
+                hostTokens++;
+            }
+        }
+
+        int pathTokens = 0;
+        for (int i = hostEnd; i < length - 1 && pathTokens < MAX_PATH_TOKENS; i++) {
+            char c = url.charAt(i);
+            if (c == '?' || c == '#') break;
+            if (c == '/' && url.charAt(i + 1) != '/' && url.charAt(i + 1) != '?') {
+                offsets[count++] = i + 1;
+                pathTokens++;
+            }
+        }
+        return count;
+    }
+
+    private static int skipPrefix(CharSequence text, int start) {
+        int length = text.length();
+        for (int i = start; i < length && i < start + 16; i++) {
+            char c = text.charAt(i);
+            if (c == ':') {
+                if (i + 2 < length && text.charAt(i + 1) == '/' && text.charAt(i + 2) == '/') start = i + 3;
+                break;
+            }
+            if (!Character.isLetter(c)) break;
+        }
+        if (start + 4 <= length
+            && lower(text.charAt(start)) == 'w' && lower(text.charAt(start + 1)) == 'w'
+            && lower(text.charAt(start + 2)) == 'w' && text.charAt(start + 3) == '.') {
+            start += 4;
+        }
+        return start;
+    }
+
+    private static int lower(char c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    private static long pack(int entry, int offset) {
+        return (long) entry << 32 | offset;
+    }
+
+    private static int entryOf(long token) {
+        return (int) (token >>> 32);
+    }
+
+    private static int offsetOf(long token) {
+        return (int) token;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.application;
+
+import android.content.Context;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Address bar suggestions backed by a {@link UrlIndex} over the history store.
+ *
+ * The index is built on a background thread the first time it is needed and is
+ * then kept current by {@link #recordVisit}; lookups before the build finishes
+ * simply return nothing. Visits the history snapshot behind the index already
+ * counted are skipped, so a visit made during the build is counted once.
+ */
+public class UrlSuggestions {
+
+    private static UrlSuggestions sInstance;
+
+    private final HistoryStore mHistoryStore;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private UrlIndex mIndex;
+
+    // Sequence number of the last visit mIndex includes.
+    private long mIndexedVisit;
+
+    private boolean mBuildStarted;
+
+    public static synchronized UrlSuggestions getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new UrlSuggestions(HistoryStore.getInstance(context));
+        }
+        return sInstance;
+    }
+
+    private UrlSuggestions(HistoryStore historyStore) {
+        this.mHistoryStore = historyStore;
+    }
+
+    public synchronized void ensureBuilt() {
+        if (mBuildStarted) return;
+        mBuildStarted = true;
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    HistoryStore.Snapshot snapshot = mHistoryStore.snapshotBlocking();
+                    if (snapshot == null) return;
+                    UrlIndex index = build(snapshot.entries);
+                    synchronized (UrlSuggestions.this) {
+                        mIndex = index;
+                        mIndexedVisit = snapshot.lastVisit;
+                    }
+                }
+            });
+    }
+
+    private static UrlIndex build(List<HistoryStore.Entry> entries) {
+        int count = entries.size();
+        String[] urls = new String[count];
+        int[] counts = new int[count];
+        for (int i = 0; i < count; i++) {
+            HistoryStore.Entry entry = entries.get(i);
+            urls[i] = entry.url;
+            counts[i] = entry.visitCount;
+        }
+        return new UrlIndex(urls, counts, count);
+    }
+
+    /**
+     * Applied on the same thread as the build, so visits made while the index is
+     * still loading are not lost. {@code sequence} is what
+     * {@link HistoryStore#recordVisit} returned for the visit.
+     */
+    public void recordVisit(final String url, final long sequence) {
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    synchronized (UrlSuggestions.this) {
+                        if (mIndex != null && sequence > mIndexedVisit) mIndex.recordVisit(url);
+                    }
+                }
+            });
+    }
+
+    public void remove(final String url) {
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    synchronized (UrlSuggestions.this) {
+                        if (mIndex != null) mIndex.remove(url);
+                    }
+                }
+            });
+    }
+
+    public void clear() {
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    synchronized (UrlSuggestions.this) {
+                        if (mIndex != null) mIndex = new UrlIndex();
+                    }
+                }
+            });
+    }
+
+    /**
+     * Drops the index; it is rebuilt from history the next time suggestions are
+     * needed. Returns false if there was no index to drop.
+     */
+    public synchronized boolean trimMemory() {
+        if (!mBuildStarted) return false;
+        mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    synchronized (UrlSuggestions.this) {
+                        mIndex = null;
+                        mBuildStarted = false;
+                    }
+                }
+            });
+        return true;
+    }
+
+    public synchronized void lookup(CharSequence query, int limit, List<String> out) {
+        if (mIndex != null) mIndex.lookup(query, limit, out);
+    }
+
+    /**
+     * The most visited URLs; nothing until the index has been built.
+     */
+    public synchronized void top(int limit, List<String> out) {
+        if (mIndex != null) mIndex.top(limit, out);
+    }
+}
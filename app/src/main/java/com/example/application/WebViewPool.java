@@ -0,0 +1,139 @@
+package com.example.application;
+
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.ViewGroup;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+import java.util.ArrayDeque;
+
+/**
+ * Keeps a few configured WebViews ready so an activity does not pay for
+ * creating one in {@code onCreate}.
+ *
+ * WebViews are wrapped in a {@link MutableContextWrapper} around the
+ * application context and rebased onto the activity in {@link #acquire}. The
+ * pool is only filled while the main looper is idle, never on the startup
+ * path: on a cold start the first activity usually runs before the first idle
+ * pass and creates its own WebView, which is no slower than creating it
+ * earlier on the same thread. Main thread only.
+ */
+public class WebViewPool {
+
+    private final Context mContext;
+
+    private final int mMaxSize;
+
+    private final ArrayDeque<WebView> mPool = new ArrayDeque<>();
+
+    private boolean mRefillScheduled;
+
+    private boolean mTrimmed;
+
+    private int mHitCount;
+
+    private int mMissCount;
+
+    public WebViewPool(Context context, int maxSize) {
+        this.mContext = context.getApplicationContext();
+        this.mMaxSize = maxSize;
+    }
+
+    /**
+     * Fills the pool on later idle passes, one WebView per pass so each pause
+     * on the main thread stays short.
+     */
+    public void prewarm() {
+        if (mRefillScheduled || mPool.size() >= mMaxSize) return;
+        mRefillScheduled = true;
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+
+                @Override
+                public boolean queueIdle() {
+                    if (mTrimmed) {
+                        mRefillScheduled = false;
+                        return false;
+                    }
+                    if (mPool.size() < mMaxSize) {
+                        mPool.add(create(new MutableContextWrapper(mContext)));
+                    }
+                    mRefillScheduled = mPool.size() < mMaxSize;
+                    return mRefillScheduled;
+                }
+            });
+    }
+
+    public boolean hasIdle() {
+        return !mPool.isEmpty();
+    }
+
+    public WebView acquire(Context context) {
+        WebView webView = mPool.poll();
+        if (webView != null) {
+            mHitCount++;
+            ((MutableContextWrapper) webView.getContext()).setBaseContext(context);
+        } else {
+            mMissCount++;
+            webView = create(new MutableContextWrapper(context));
+        }
+        mTrimmed = false;
+        prewarm();
+        return webView;
+    }
+
+    /**
+     * Detaches and destroys a WebView from {@link #acquire}. Used WebViews are
+     * not recycled, since they keep page state, history and callbacks. The pool
+     * is not refilled here: {@link #acquire} already schedules that, and a
+     * WebView released to save memory must not be replaced by an idle one.
+     */
+    public void release(WebView webView) {
+        ViewGroup parent = (ViewGroup) webView.getParent();
+        if (parent != null) parent.removeView(webView);
+        webView.stopLoading();
+        webView.destroy();
+    }
+
+    /**
+     * Destroys the idle WebViews under memory pressure. The pool is not
+     * refilled until the next {@link #acquire}. Returns how many were destroyed.
+     */
+    public int trim() {
+        mTrimmed = true;
+        int count = mPool.size();
+        WebView webView;
+        while ((webView = mPool.poll()) != null) {
+            webView.destroy();
+        }
+        return count;
+    }
+
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    private static WebView create(Context context) {
+        WebView webView = new WebView(context);
+        configure(webView.getSettings());
+        return webView;
+    }
+
+    /**
+     * File access is off; it is turned on only while a snapshot is shown.
+     */
+    public static void configure(WebSettings webSettings) {
+        webSettings.setJavaScriptEnabled(true);
+        webSettings.setAllowFileAccess(false);
+        webSettings.setSupportZoom(true);
+        webSettings.setBuiltInZoomControls(true);
+        webSettings.setDisplayZoomControls(false);
+        webSettings.setLoadWithOverviewMode(true);
+        webSettings.setUseWideViewPort(true);
+    }
+}
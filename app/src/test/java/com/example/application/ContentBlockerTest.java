@@ -0,0 +1,121 @@
+package com.example.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+
+public class ContentBlockerTest {
+
+    private static final String RULES = "! comment\n"
+        + "||tracker.net^\n"
+        + "||ads.com/x\n"
+        + "||cdn.example.org/banner^\n"
+        + "@@||ads.com/x/ok\n"
+        + "/promo-banner.\n"
+        + "||blocked-by-domain.com^$domain=example.com\n"
+        + "example.com##.ad\n";
+
+    @Test
+    public void hostRulesCoverSubdomainsOnly() throws IOException {
+        ContentBlocker blocker = compile(RULES);
+        assertTrue(blocker.shouldBlock("https://tracker.net/pixel.gif"));
+        assertTrue(blocker.shouldBlock("https://a.b.tracker.net/"));
+        assertTrue(blocker.shouldBlock("http://user@tracker.net:8080/"));
+        assertFalse(blocker.shouldBlock("https://nottracker.net/"));
+        assertFalse(blocker.shouldBlock("https://tracker.net.example.com/"));
+    }
+
+    @Test
+    public void hostPathRulesAreAnchoredToTheHost() throws IOException {
+        ContentBlocker blocker = compile(RULES);
+        assertTrue(blocker.shouldBlock("https://ads.com/x"));
+        assertTrue(blocker.shouldBlock("https://ads.com/x/y.js"));
+        assertTrue(blocker.shouldBlock("https://cdn.ads.com/xyz"));
+        assertTrue(blocker.shouldBlock("HTTPS://ADS.COM/X"));
+        assertFalse(blocker.shouldBlock("https://notads.com/x"));
+        assertFalse(blocker.shouldBlock("https://example.com/?u=ads.com/x"));
+        assertFalse(blocker.shouldBlock("https://example.com/ads.com/x"));
+        assertFalse(blocker.shouldBlock("https://ads.com/y"));
+        assertFalse(blocker.shouldBlock("https://ads.com/"));
+    }
+
+    @Test
+    public void trailingSeparatorNeedsABoundary() throws IOException {
+        ContentBlocker blocker = compile(RULES);
+        assertTrue(blocker.shouldBlock("https://cdn.example.org/banner"));
+        assertTrue(blocker.shouldBlock("https://cdn.example.org/banner/top.png"));
+        assertTrue(blocker.shouldBlock("https://cdn.example.org/banner?size=2"));
+        assertFalse(blocker.shouldBlock("https://cdn.example.org/banners.css"));
+        assertFalse(blocker.shouldBlock("https://example.org/banner"));
+    }
+
+    @Test
+    public void exceptionsWin() throws IOException {
+        ContentBlocker blocker = compile(RULES);
+        assertFalse(blocker.shouldBlock("https://ads.com/x/ok"));
+        assertFalse(blocker.shouldBlock("https://www.ads.com/x/ok/more"));
+        assertTrue(blocker.shouldBlock("https://ads.com/x/no"));
+    }
+
+    @Test
+    public void plainPatternsMatchAnywhere() throws IOException {
+        ContentBlocker blocker = compile(RULES);
+        assertTrue(blocker.shouldBlock("https://news.example.com/static/promo-banner.png"));
+        assertFalse(blocker.shouldBlock("https://news.example.com/static/promo/1.png"));
+    }
+
+    @Test
+    public void skipsUnsupportedRules() throws IOException {
+        ContentBlocker blocker = compile(RULES);
+        assertFalse(blocker.shouldBlock("https://blocked-by-domain.com/"));
+        assertEquals(5, blocker.getRuleCount());
+    }
+
+    @Test
+    public void skipsRulesWithOptionsItCannotHonour() throws IOException {
+        ContentBlocker blocker = compile("||third.com^$third-party\n"
+            + "||scripts.com^$script\n"
+            + "/tracking-pixel.$image,third-party\n"
+            + "||ads.net^\n"
+            + "@@||ads.net^$elemhide\n"
+            + "@@||ads.net^$generichide\n"
+            + "@@||ads.net^$document\n"
+            + "||strong.org^$important\n");
+        assertFalse(blocker.shouldBlock("https://third.com/"));
+        assertFalse(blocker.shouldBlock("https://scripts.com/app.js"));
+        assertFalse(blocker.shouldBlock("https://a.com/tracking-pixel.gif"));
+        assertTrue(blocker.shouldBlock("https://ads.net/banner.js"));
+        assertTrue(blocker.shouldBlock("https://strong.org/"));
+        assertEquals(2, blocker.getRuleCount());
+    }
+
+    @Test
+    public void compiledFormRoundTrips() throws IOException {
+        ContentBlocker blocker = compile(RULES);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        blocker.write(new DataOutputStream(bytes), 42);
+
+        ContentBlocker read = ContentBlocker.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 42);
+        String[] urls = {
+            "https://ads.com/x", "https://notads.com/x", "https://ads.com/x/ok", "https://cdn.example.org/banner",
+            "https://cdn.example.org/banners", "https://tracker.net/", "https://a.com/promo-banner.gif"
+        };
+        for (String url : urls) assertEquals(url, blocker.shouldBlock(url), read.shouldBlock(url));
+        assertEquals(blocker.getRuleCount(), read.getRuleCount());
+
+        assertNull(ContentBlocker.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 43));
+    }
+
+    private static ContentBlocker compile(String rules) throws IOException {
+        return ContentBlocker.compile(new StringReader(rules));
+    }
+}
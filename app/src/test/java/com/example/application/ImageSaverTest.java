@@ -0,0 +1,208 @@
+package com.example.application;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImageSaverTest {
+
+    private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+    // Larger than ImageSaver buffers.
+    private static final int LARGE = 9 * 1024 * 1024;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final AtomicInteger transcodes = new AtomicInteger();
+
+    // Halves every image, standing in for decoding and re-encoding it.
+    private final ImageSaver.Transcoder halve = new ImageSaver.Transcoder() {
+        @Override
+        public ImageSaver.Image transcode(byte[] image, String mimeType) {
+            transcodes.incrementAndGet();
+            return new ImageSaver.Image("image/webp", Arrays.copyOf(image, image.length / 2), image.length, null);
+        }
+    };
+
+    private HttpServer server;
+
+    private String base;
+
+    private ExecutorService executor;
+
+    private ImageSaver saver;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                String path = exchange.getRequestURI().getPath();
+                String type = path.endsWith(".gif") ? "image/gif" : "image/jpeg";
+                int status = path.startsWith("/missing") ? 404 : 200;
+                byte[] body = body(path.startsWith("/large") ? LARGE : 1000);
+                exchange.getResponseHeaders().set("Content-Type", type);
+                exchange.getResponseHeaders().set("Cache-Control", "max-age=600");
+                exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                exchange.getResponseHeaders().set("Last-Modified", "Sat, 17 Oct 2026 12:00:00 GMT");
+                exchange.getResponseHeaders().set("Set-Cookie", "a=b");
+                // A length of 0 makes the server send the body chunked, without Content-Length.
+                exchange.sendResponseHeaders(status, path.contains("chunked") ? 0 : body.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                exchange.close();
+            }
+        });
+        server.start();
+        base = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+        executor = Executors.newSingleThreadExecutor();
+        saver = new ImageSaver(executor, halve, 10000, 8 * 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    @Test
+    public void compressesOnceAndThenServesFromTheCache() throws IOException {
+        ImageSaver.Stats stats = new ImageSaver.Stats();
+        ImageSaver.Image image = saver.load(base + "/photo.jpg", NO_HEADERS, stats);
+        assertEquals(200, image.statusCode);
+        assertEquals("image/webp", image.mimeType);
+        assertEquals(500, image.data.length);
+        assertEquals(1000, image.originalSize);
+        assertEquals(1, stats.compressed.get());
+
+        assertSame(image.data, saver.load(base + "/photo.jpg", NO_HEADERS, stats).data);
+        assertEquals(1, stats.cacheHits.get());
+        assertEquals(1, requests.get());
+        assertEquals(1000, stats.savedBytes());
+    }
+
+    @Test
+    public void keepsCorsAndCachingHeaders() {
+        Map<String, String> headers = saver.load(base + "/photo.jpg", NO_HEADERS, null).headers;
+        assertEquals("max-age=600", headers.get("Cache-Control"));
+        assertEquals("\"v1\"", headers.get("ETag"));
+        assertEquals("Sat, 17 Oct 2026 12:00:00 GMT", headers.get("Last-Modified"));
+        assertFalse(headers.containsKey("Set-Cookie"));
+    }
+
+    @Test
+    public void handsSetCookieToTheCallerButNotToTheCache() {
+        assertEquals(Collections.singletonList("a=b"), saver.load(base + "/photo.jpg", NO_HEADERS, null).cookies);
+        assertTrue(saver.load(base + "/photo.jpg", NO_HEADERS, null).cookies.isEmpty());
+        assertEquals(Collections.singletonList("a=b"), saver.load(base + "/missing.jpg", NO_HEADERS, null).cookies);
+    }
+
+    @Test
+    public void passesOnErrorsWithTheirStatus() throws IOException {
+        ImageSaver.Stats stats = new ImageSaver.Stats();
+        ImageSaver.Image image = saver.load(base + "/missing.jpg", NO_HEADERS, stats);
+        assertEquals(404, image.statusCode);
+        assertFalse(image.reasonPhrase.isEmpty());
+        assertArrayEquals(body(1000), readAll(image.body()));
+        assertEquals(0, transcodes.get());
+        assertEquals(0, stats.images.get());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void streamsTypesItDoesNotTranscode() throws IOException {
+        ImageSaver.Image image = saver.load(base + "/anim.gif", NO_HEADERS, null);
+        assertEquals(200, image.statusCode);
+        assertEquals("image/gif", image.mimeType);
+        assertNull(image.data);
+        assertArrayEquals(body(1000), readAll(image.body()));
+        assertEquals(0, transcodes.get());
+    }
+
+    @Test
+    public void streamsImagesTooLargeToBuffer() throws IOException {
+        ImageSaver.Image image = saver.load(base + "/large.jpg", NO_HEADERS, null);
+        assertNull(image.data);
+        assertEquals(LARGE, image.originalSize);
+        assertArrayEquals(body(LARGE), readAll(image.body()));
+
+        // Without a Content-Length the first part has been read when the size shows.
+        image = saver.load(base + "/large-chunked.jpg", NO_HEADERS, null);
+        assertNull(image.data);
+        assertEquals(-1, image.originalSize);
+        assertArrayEquals(body(LARGE), readAll(image.body()));
+        assertEquals(0, transcodes.get());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void buffersChunkedImagesThatFit() {
+        ImageSaver.Image image = saver.load(base + "/chunked.jpg", NO_HEADERS, null);
+        assertEquals(500, image.data.length);
+        assertEquals(1, transcodes.get());
+    }
+
+    @Test
+    public void networkErrorsLeaveTheRequestToTheWebView() throws IOException {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            closedPort = socket.getLocalPort();
+        }
+        assertNull(saver.load("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + closedPort + "/a.jpg", NO_HEADERS, null));
+    }
+
+    @Test
+    public void policiesApplyToSubdomainsAndFallBackToThePage() {
+        saver.setPolicy("ads.example.com", ImageSaver.Policy.BLOCK);
+        saver.setPolicy("Example.org", ImageSaver.Policy.ALLOW);
+        assertEquals(ImageSaver.Policy.BLOCK, saver.policyFor("https://example.org/", "https://cdn.ads.example.com/b.png"));
+        assertEquals(ImageSaver.Policy.ALLOW, saver.policyFor("https://www.example.org/a", "https://img.example.net/c.png"));
+        assertEquals(ImageSaver.Policy.COMPRESS, saver.policyFor(null, "https://img.example.net/c.png"));
+        assertEquals("ads.example.com", ImageSaver.hostOf("https://ADS.example.com:443/x"));
+        assertTrue(ImageSaver.isImageRequest("https://a.com/x.PNG?v=1", null));
+        assertFalse(ImageSaver.isImageRequest("https://a.com/x.js", "*/*"));
+    }
+
+    private static byte[] body(int length) {
+        byte[] body = new byte[length];
+        for (int i = 0; i < length; i++) body[i] = (byte) (i * 31);
+        return body;
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = input.read(buffer)) != -1) output.write(buffer, 0, count);
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+}
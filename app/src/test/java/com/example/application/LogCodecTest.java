@@ -0,0 +1,175 @@
+package com.example.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LogCodecTest {
+
+    private static final int SEGMENT_SIZE = 256;
+
+    private static final long TIME = 1760673784567L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = folder.newFolder("records");
+    }
+
+    @Test
+    public void roundTripsAcrossSegments() throws IOException {
+        LogCodec.Writer writer = new LogCodec.Writer(dir, SEGMENT_SIZE, 100);
+        List<LogRecord> records = sampleRecords();
+        for (LogRecord record : records) writer.append(record);
+
+        LogCodec.Reader reader = LogCodec.Reader.open(writer.openReader());
+        assertEquals(records.size(), reader.size());
+        LogRecord read = new LogRecord();
+        for (int i = 0; i < records.size(); i++) {
+            reader.get(i, read);
+            assertEquals(records.get(i).toString(), read.toString());
+        }
+    }
+
+    @Test
+    public void formatBodyBytesMatchTheFormattedText() throws IOException {
+        LogCodec.Writer writer = new LogCodec.Writer(dir, SEGMENT_SIZE, 100);
+        List<LogRecord> records = sampleRecords();
+        for (LogRecord record : records) writer.append(record);
+
+        LogCodec.Reader reader = LogCodec.Reader.open(writer.openReader());
+        LogRecord read = new LogRecord();
+        LogCodec.Bytes bytes = new LogCodec.Bytes();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < reader.size(); i++) {
+            reader.decode(i, read);
+            text.setLength(0);
+            read.formatBody(text);
+            reader.formatBody(i, bytes);
+            assertEquals(text.toString(), bytes.toString());
+        }
+    }
+
+    @Test
+    public void recordAfterAFailedWriteDecodesOnItsOwn() throws IOException {
+        LogCodec.Writer writer = new LogCodec.Writer(dir, SEGMENT_SIZE, 100);
+        writer.append(LogRecord.event(TIME, LogRecord.Type.PAGE_LOAD, 1, "https://a.example.com/", LogRecord.NONE, LogRecord.NONE));
+        writer.flush();
+
+        // Replacing the directory with a file makes starting the next segment fail.
+        for (File segment : SegmentedLog.listSegments(dir)) assertTrue(segment.delete());
+        assertTrue(dir.delete());
+        assertTrue(dir.createNewFile());
+        boolean failed = false;
+        for (int i = 0; i < 100 && !failed; i++) {
+            try {
+                writer.append(LogRecord.event(TIME + i, LogRecord.Type.RESOURCE_LOAD, 1, "https://a.example.com/" + i, 5, LogRecord.NONE));
+            } catch (IOException expected) {
+                failed = true;
+            }
+        }
+        assertTrue(failed);
+        assertTrue(dir.delete());
+
+        LogRecord last = LogRecord.event(TIME + 1000, LogRecord.Type.RESOURCE_LOAD, 2, "https://a.example.com/after", 7, 2048);
+        writer.append(last);
+        LogCodec.Reader reader = LogCodec.Reader.open(writer.openReader());
+        assertEquals(1, reader.size());
+        LogRecord read = new LogRecord();
+        reader.get(0, read);
+        assertEquals(last.toString(), read.toString());
+    }
+
+    @Test
+    public void damagedHostLeavesTheOtherIndicesInPlace() throws IOException {
+        LogCodec.Writer writer = new LogCodec.Writer(dir, 4096, 100);
+        String[] urls = {"https://a.com/", "https://b.com/", "https://c.com/", "https://b.com/2", "https://c.com/3"};
+        for (int i = 0; i < urls.length; i++) {
+            writer.append(LogRecord.event(TIME + i * 10, LogRecord.Type.RESOURCE_LOAD, 0, urls[i], LogRecord.NONE, LogRecord.NONE));
+        }
+        writer.flush();
+        File[] segments = SegmentedLog.listSegments(dir);
+        assertEquals(1, segments.length);
+        corrupt(segments[0], "b.com");
+
+        LogCodec.Reader reader = LogCodec.Reader.open(writer.openReader());
+        LogRecord read = new LogRecord();
+        reader.get(1, read);
+        assertEquals(LogCodec.CORRUPT, read.text);
+        reader.get(2, read);
+        assertEquals("https://c.com/", read.url);
+        // b.com may have been announced by the damaged record, and so may a reset.
+        reader.get(3, read);
+        assertEquals("https://?/2", read.url);
+        assertEquals(TIME, read.time);
+        reader.get(4, read);
+        assertEquals("https://c.com/3", read.url);
+        assertEquals(TIME, read.time);
+        LogCodec.Bytes bytes = new LogCodec.Bytes();
+        reader.formatBody(3, bytes);
+        assertEquals("[T0] " + LogRecord.Type.RESOURCE_LOAD.label + ": https://?/2", bytes.toString());
+    }
+
+    @Test
+    public void bytesFormatNumbersLikeStringBuilder() {
+        long[] values = {0, 7, 10, 99, 12345, -1, -10, Long.MAX_VALUE, Long.MIN_VALUE};
+        LogCodec.Bytes bytes = new LogCodec.Bytes();
+        StringBuilder expected = new StringBuilder();
+        for (long value : values) {
+            bytes.put(value).put(" ");
+            expected.append(value).append(' ');
+        }
+        assertEquals(expected.toString(), bytes.toString());
+    }
+
+    // Flips the first byte of {@code text} in {@code segment}.
+    private static void corrupt(File segment, String text) throws IOException {
+        byte[] needle = text.getBytes(Charset.forName("UTF-8"));
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            byte[] data = new byte[(int) file.length()];
+            file.readFully(data);
+            for (int i = 0; i + needle.length <= data.length; i++) {
+                int j = 0;
+                while (j < needle.length && data[i + j] == needle[j]) j++;
+                if (j == needle.length) {
+                    file.seek(i);
+                    file.write(data[i] ^ 0xFF);
+                    return;
+                }
+            }
+        }
+        throw new AssertionError(text + " not found");
+    }
+
+    private static List<LogRecord> sampleRecords() {
+        List<LogRecord> records = new ArrayList<>();
+        records.add(LogRecord.message(TIME, "启动"));
+        for (int i = 0; i < 40; i++) {
+            String host = i % 3 == 0 ? "www.example.com" : i % 3 == 1 ? "static.例子.cn" : "cdn.example.org:8080";
+            records.add(LogRecord.event(TIME + i * 37, LogRecord.Type.RESOURCE_LOAD, i % 4 - 1, "https://" + host + "/assets/" + i + ".js?v=" + i,
+                i % 2 == 0 ? i * 3 : LogRecord.NONE, i % 5 == 0 ? LogRecord.NONE : i * 517L));
+        }
+        records.add(LogRecord.event(TIME - 5, LogRecord.Type.PAGE_LOAD, 0, "http://Example.COM", 120, LogRecord.NONE));
+        records.add(LogRecord.event(TIME, LogRecord.Type.SNAPSHOT_OPEN, 3, "file:///data/snapshot.mht", LogRecord.NONE, LogRecord.NONE));
+        records.add(LogRecord.event(TIME, LogRecord.Type.IMAGE_COMPRESSED, 3, "https://img.example.com/a.png", LogRecord.NONE, 0));
+        records.add(LogRecord.event(TIME, LogRecord.Type.PAGE_FINISHED, 3, "", LogRecord.NONE, 1023));
+        LogRecord withText = LogRecord.event(TIME, LogRecord.Type.RESOURCE_BLOCKED, 1, "https://ads.example.com/x", LogRecord.NONE, LogRecord.NONE);
+        withText.text = "规则 ||ads.example.com^";
+        records.add(withText);
+        return records;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.application;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LogFilterTest {
+
+    private static final long TIME = 1760673784567L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LogCodec.Reader reader;
+
+    @Before
+    public void setUp() throws IOException {
+        File dir = folder.newFolder("records");
+        LogCodec.Writer writer = new LogCodec.Writer(dir, 1024, 4);
+        writer.append(LogRecord.event(TIME, LogRecord.Type.PAGE_LOAD, 0, "https://News.Example.com/", 120, LogRecord.NONE));
+        writer.append(LogRecord.event(TIME + 1, LogRecord.Type.RESOURCE_LOAD, 0, "https://static.example.com/app.js", 35, 12390));
+        writer.append(LogRecord.message(TIME + 2, "网页崩溃 Renderer gone"));
+        writer.append(LogRecord.event(TIME + 3, LogRecord.Type.RESOURCE_BLOCKED, 1, "https://ads.example.net/x.gif", LogRecord.NONE, LogRecord.NONE));
+        reader = LogCodec.Reader.open(writer.openReader());
+    }
+
+    @Test
+    public void plainQueriesIgnoreAsciiCase() {
+        assertArrayEquals(new int[] {1, 0}, scan(new LogFilter("EXAMPLE.COM", false, LogFilter.TYPE_ALL)));
+        assertArrayEquals(new int[] {2}, scan(new LogFilter("renderer", false, LogFilter.TYPE_ALL)));
+        assertArrayEquals(new int[0], scan(new LogFilter("nowhere", false, LogFilter.TYPE_ALL)));
+    }
+
+    @Test
+    public void plainQueriesSeeTheFormattedRecord() {
+        assertArrayEquals(new int[] {3}, scan(new LogFilter("[t1] ", false, LogFilter.TYPE_ALL)));
+        assertArrayEquals(new int[] {1}, scan(new LogFilter("(35ms, 12.1kb)", false, LogFilter.TYPE_ALL)));
+        assertArrayEquals(new int[] {3}, scan(new LogFilter("资源拦截: https", false, LogFilter.TYPE_ALL)));
+        assertArrayEquals(new int[] {2}, scan(new LogFilter("崩溃", false, LogFilter.TYPE_ALL)));
+    }
+
+    @Test
+    public void typesAndRegexes() {
+        assertArrayEquals(new int[] {0}, scan(new LogFilter("", false, LogFilter.TYPE_PAGE)));
+        assertArrayEquals(new int[] {3, 1}, scan(new LogFilter("example", false, LogFilter.TYPE_RESOURCE)));
+        assertArrayEquals(new int[] {1, 0}, scan(new LogFilter("\\(\\d+ms", true, LogFilter.TYPE_ALL)));
+        assertTrue(new LogFilter("example.com/", false, LogFilter.TYPE_ALL).refines(new LogFilter("example", false, LogFilter.TYPE_ALL)));
+    }
+
+    @Test
+    public void byteSearchFindsTheFirstMatch() {
+        byte[] text = "xxAbcabc".getBytes();
+        assertEquals(2, LogFilter.indexOfIgnoreCase(text, text.length, "abc".getBytes()));
+        assertEquals(-1, LogFilter.indexOfIgnoreCase(text, 4, "abc".getBytes()));
+        assertEquals(0, LogFilter.indexOfIgnoreCase(text, 0, new byte[0]));
+    }
+
+    private int[] scan(LogFilter filter) {
+        final int[][] result = new int[1][];
+        filter.scan(reader, null, 0, new LogFilter.Sink() {
+            @Override
+            public void onMatches(int[] matches, int count, boolean done) {
+                if (done) result[0] = Arrays.copyOf(matches, count);
+            }
+        }, new AtomicBoolean());
+        return result[0];
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.application;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class NavigationStackTest {
+
+    @Test
+    public void pushingTheNeighbourMovesTheCursor() {
+        NavigationStack stack = stack("a", "b", "c");
+        // What onPageFinished reports after webView.goBack().
+        stack.push("b");
+        assertArrayEquals(new String[] {"a", "b", "c"}, stack.getEntries());
+        assertEquals(1, stack.getIndex());
+        assertEquals("b", stack.current());
+
+        stack.push("c");
+        assertArrayEquals(new String[] {"a", "b", "c"}, stack.getEntries());
+        assertEquals(2, stack.getIndex());
+    }
+
+    @Test
+    public void visitingDropsTheForwardEntries() {
+        NavigationStack stack = stack("a", "b", "c");
+        stack.back();
+        stack.back();
+        stack.push("d");
+        assertArrayEquals(new String[] {"a", "d"}, stack.getEntries());
+        assertFalse(stack.canGoForward());
+    }
+
+    @Test
+    public void revisitingAPageAppendsItWithoutReordering() {
+        NavigationStack stack = stack("a", "b", "c", "a");
+        assertArrayEquals(new String[] {"a", "b", "c", "a"}, stack.getEntries());
+        assertEquals("c", stack.back());
+        assertEquals("b", stack.back());
+        assertEquals("a", stack.back());
+        assertFalse(stack.canGoBack());
+    }
+
+    @Test
+    public void dropsTheOldestPastTheLimit() {
+        NavigationStack stack = new NavigationStack(3);
+        for (String url : new String[] {"a", "b", "c", "d"}) stack.push(url);
+        assertArrayEquals(new String[] {"b", "c", "d"}, stack.getEntries());
+        assertEquals(2, stack.getIndex());
+        assertEquals(3, stack.size());
+    }
+
+    @Test
+    public void restoresEntriesAndPosition() {
+        NavigationStack stack = new NavigationStack();
+        stack.restore(new String[] {"a", "b", "a", null, "c"}, 1);
+        assertArrayEquals(new String[] {"a", "b", "a", "c"}, stack.getEntries());
+        assertEquals(1, stack.getIndex());
+        assertEquals("b", stack.current());
+        assertTrue(stack.canGoForward());
+
+        stack.restore(null, 0);
+        assertEquals(0, stack.size());
+        assertNull(stack.current());
+    }
+
+    private static NavigationStack stack(String... urls) {
+        NavigationStack stack = new NavigationStack();
+        for (String url : urls) stack.push(url);
+        return stack;
+    }
+}
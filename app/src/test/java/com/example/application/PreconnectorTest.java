@@ -0,0 +1,146 @@
+package com.example.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PreconnectorTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final long WINDOW_MS = 60 * 1000;
+
+    private HttpServer server;
+
+    private String base;
+
+    // "METHOD path" of every request the server saw.
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        base = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void warmsTheOriginWithHead() {
+        Preconnector preconnector = new Preconnector(DIRECT, 2, 10, WINDOW_MS);
+        assertTrue(preconnector.preconnect(base + "/article/1?x=y"));
+        assertEquals(Collections.singletonList("HEAD /"), requests);
+    }
+
+    @Test
+    public void countsNavigationsToWarmOriginsAsHits() {
+        Preconnector preconnector = new Preconnector(DIRECT, 2, 10, WINDOW_MS);
+        preconnector.preconnect(base + "/");
+
+        assertTrue(preconnector.onNavigate(base + "/other/page"));
+        assertFalse(preconnector.onNavigate("http://example.invalid/"));
+        assertEquals(1, preconnector.getHitCount());
+        assertEquals(1, preconnector.getMissCount());
+    }
+
+    @Test
+    public void doesNotWarmAWarmOriginAgain() {
+        Preconnector preconnector = new Preconnector(DIRECT, 2, 10, WINDOW_MS);
+        assertTrue(preconnector.preconnect(base + "/a"));
+        assertFalse(preconnector.preconnect(base + "/b"));
+        assertEquals(1, requests.size());
+        assertEquals(2, preconnector.getRequestedCount());
+        assertEquals(0, preconnector.getSkippedCount());
+    }
+
+    @Test
+    public void warmthExpiresAfterTheWindow() {
+        Preconnector preconnector = new Preconnector(DIRECT, 2, 10, 0);
+        preconnector.preconnect(base + "/");
+        assertFalse(preconnector.onNavigate(base + "/"));
+        assertTrue(preconnector.preconnect(base + "/"));
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void dropsWarmUpsOverTheRateBudget() {
+        Preconnector preconnector = new Preconnector(DIRECT, 2, 2, WINDOW_MS);
+        preconnector.setConnectAllowed(false);
+        assertTrue(preconnector.preconnect("http://127.0.0.1:1/"));
+        assertTrue(preconnector.preconnect("http://127.0.0.2:1/"));
+        assertFalse(preconnector.preconnect("http://127.0.0.3:1/"));
+        assertEquals(1, preconnector.getSkippedCount());
+    }
+
+    @Test
+    public void dropsWarmUpsOverTheInFlightBudget() {
+        final List<Runnable> queued = new ArrayList<>();
+        Preconnector preconnector = new Preconnector(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queued.add(command);
+            }
+        }, 1, 10, WINDOW_MS);
+        assertTrue(preconnector.preconnect(base + "/"));
+        assertFalse(preconnector.preconnect("http://127.0.0.2:1/"));
+        // Still pending, so not a hit yet.
+        assertFalse(preconnector.onNavigate(base + "/"));
+
+        queued.get(0).run();
+        assertTrue(preconnector.onNavigate(base + "/"));
+        assertTrue(preconnector.preconnect("http://127.0.0.2:1/"));
+    }
+
+    @Test
+    public void resolvesOnlyWhenConnectingIsNotAllowed() {
+        Preconnector preconnector = new Preconnector(DIRECT, 2, 10, WINDOW_MS);
+        preconnector.setConnectAllowed(false);
+        assertTrue(preconnector.preconnect(base + "/"));
+        assertTrue(requests.isEmpty());
+        assertTrue(preconnector.onNavigate(base + "/"));
+    }
+
+    @Test
+    public void failedWarmUpIsAMiss() throws IOException {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            closedPort = socket.getLocalPort();
+        }
+        String url = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + closedPort + "/";
+        Preconnector preconnector = new Preconnector(DIRECT, 2, 10, WINDOW_MS);
+        assertTrue(preconnector.preconnect(url));
+        assertFalse(preconnector.onNavigate(url));
+    }
+}
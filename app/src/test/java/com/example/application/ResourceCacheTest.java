@@ -0,0 +1,285 @@
+package com.example.application;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResourceCacheTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+
+    private String base;
+
+    private File dir;
+
+    private ResourceCache cache;
+
+    // Path -> canned response; every request is recorded.
+    private final Map<String, Reply> replies = new HashMap<>();
+
+    private final List<Headers> requests = Collections.synchronizedList(new ArrayList<Headers>());
+
+    private static class Reply {
+
+        int status = 200;
+        byte[] body;
+        final Map<String, String> headers = new HashMap<>();
+        String etag;
+
+        Reply(String body, String... headers) {
+            this.body = body.getBytes(UTF_8);
+            for (int i = 0; i < headers.length; i += 2) this.headers.put(headers[i], headers[i + 1]);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.add(exchange.getRequestHeaders());
+                Reply reply = replies.get(exchange.getRequestURI().getPath());
+                if (reply.etag != null && reply.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.getResponseHeaders().set("ETag", reply.etag);
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                for (Map.Entry<String, String> header : reply.headers.entrySet()) {
+                    exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+                }
+                if (reply.etag != null) exchange.getResponseHeaders().set("ETag", reply.etag);
+                exchange.sendResponseHeaders(reply.status, reply.body.length);
+                OutputStream body = exchange.getResponseBody();
+                body.write(reply.body);
+                exchange.close();
+            }
+        });
+        server.start();
+        base = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+        dir = folder.newFolder("cache");
+        cache = new ResourceCache(dir, 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void servesFreshEntriesFromDisk() throws IOException {
+        replies.put("/app.js", new Reply("var a = 1;", "Content-Type", "application/javascript; charset=utf-8", "Cache-Control", "max-age=600"));
+
+        ResourceCache.Response first = cache.fetch(base + "/app.js", NO_HEADERS);
+        assertFalse(first.fromCache);
+        assertEquals("var a = 1;", read(first));
+
+        ResourceCache.Response second = cache.fetch(base + "/app.js", NO_HEADERS);
+        assertTrue(second.fromCache);
+        assertEquals("application/javascript", second.mimeType);
+        assertEquals("utf-8", second.encoding);
+        assertEquals("var a = 1;", read(second));
+        assertEquals(1, requests.size());
+        assertEquals(1, cache.hitCount());
+    }
+
+    @Test
+    public void revalidatesStaleEntries() throws IOException {
+        Reply reply = new Reply("body {}", "Content-Type", "text/css", "Cache-Control", "max-age=0");
+        reply.etag = "\"v1\"";
+        replies.put("/site.css", reply);
+
+        read(cache.fetch(base + "/site.css", NO_HEADERS));
+        ResourceCache.Response second = cache.fetch(base + "/site.css", NO_HEADERS);
+
+        assertTrue(second.fromCache);
+        assertEquals("body {}", read(second));
+        assertEquals("\"v1\"", requests.get(1).getFirst("If-None-Match"));
+        assertEquals(1, cache.revalidatedCount());
+    }
+
+    @Test
+    public void doesNotForwardAcceptEncoding() throws IOException {
+        replies.put("/app.js", new Reply("x", "Cache-Control", "max-age=600"));
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("accept-encoding", "gzip, deflate, br");
+        headers.put("If-None-Match", "\"from-webview\"");
+        headers.put("Accept-Language", "zh-CN");
+        read(cache.fetch(base + "/app.js", headers));
+
+        Headers sent = requests.get(0);
+        assertNull(sent.getFirst("Accept-Encoding"));
+        assertNull(sent.getFirst("If-None-Match"));
+        assertEquals("zh-CN", sent.getFirst("Accept-Language"));
+    }
+
+    @Test
+    public void keepsContentEncodingOfCompressedBodies() throws IOException {
+        byte[] gzipped = gzip("console.log(1);");
+        Reply reply = new Reply("", "Content-Type", "application/javascript", "Content-Encoding", "gzip", "Cache-Control", "max-age=600");
+        reply.body = gzipped;
+        replies.put("/app.js", reply);
+
+        ResourceCache.Response first = cache.fetch(base + "/app.js", NO_HEADERS);
+        assertEquals("gzip", first.headers.get("Content-Encoding"));
+        assertArrayEquals(gzipped, readBytes(first));
+
+        ResourceCache.Response second = cache.fetch(base + "/app.js", NO_HEADERS);
+        assertTrue(second.fromCache);
+        assertEquals("gzip", second.headers.get("Content-Encoding"));
+        assertArrayEquals(gzipped, readBytes(second));
+    }
+
+    @Test
+    public void servesOnlyTheMatchingVariant() throws IOException {
+        replies.put("/font.woff2", new Reply("font", "Cache-Control", "max-age=600", "Vary", "Accept-Language"));
+        Map<String, String> english = Collections.singletonMap("Accept-Language", "en");
+        Map<String, String> chinese = Collections.singletonMap("Accept-Language", "zh-CN");
+
+        read(cache.fetch(base + "/font.woff2", english));
+        assertTrue(cache.fetch(base + "/font.woff2", english).fromCache);
+
+        ResourceCache.Response other = cache.fetch(base + "/font.woff2", chinese);
+        assertFalse(other.fromCache);
+        read(other);
+        assertEquals(2, requests.size());
+        assertTrue(cache.fetch(base + "/font.woff2", chinese).fromCache);
+    }
+
+    @Test
+    public void neverStoresVaryStar() throws IOException {
+        replies.put("/logo.png", new Reply("png", "Cache-Control", "max-age=600", "Vary", "*"));
+
+        read(cache.fetch(base + "/logo.png", NO_HEADERS));
+        assertFalse(cache.fetch(base + "/logo.png", NO_HEADERS).fromCache);
+    }
+
+    @Test
+    public void passesErrorsThrough() throws IOException {
+        Reply reply = new Reply("<h1>gone</h1>", "Content-Type", "text/html; charset=utf-8", "Cache-Control", "max-age=600");
+        reply.status = 404;
+        replies.put("/missing.js", reply);
+
+        ResourceCache.Response response = cache.fetch(base + "/missing.js", NO_HEADERS);
+        assertEquals(404, response.statusCode);
+        assertEquals("text/html", response.mimeType);
+        assertEquals("utf-8", response.encoding);
+        assertEquals("<h1>gone</h1>", read(response));
+        assertFalse(cache.fetch(base + "/missing.js", NO_HEADERS).fromCache);
+    }
+
+    @Test
+    public void doesNotStorePartiallyReadBodies() throws IOException {
+        replies.put("/big.js", new Reply("0123456789", "Cache-Control", "max-age=600"));
+
+        ResourceCache.Response first = cache.fetch(base + "/big.js", NO_HEADERS);
+        first.data.read();
+        first.data.close();
+
+        assertFalse(cache.fetch(base + "/big.js", NO_HEADERS).fromCache);
+    }
+
+    @Test
+    public void hashesVaryValuesOnDisk() throws Exception {
+        replies.put("/app.js", new Reply("js", "Cache-Control", "max-age=600", "Vary", "Cookie"));
+        Map<String, String> session = Collections.singletonMap("Cookie", "sid=secret-token");
+
+        read(cache.fetch(base + "/app.js", session));
+        assertTrue(cache.fetch(base + "/app.js", session).fromCache);
+        assertFalse(cache.fetch(base + "/app.js", Collections.singletonMap("Cookie", "sid=other")).fromCache);
+
+        File index = new File(dir, "index");
+        for (int i = 0; i < 50 && !index.exists(); i++) Thread.sleep(100);
+        assertTrue(index.exists());
+        assertFalse(new String(Files.readAllBytes(index.toPath()), UTF_8).contains("secret-token"));
+    }
+
+    @Test
+    public void handsSetCookieToTheCallerWithoutStoringIt() throws IOException {
+        replies.put("/style.css", new Reply("css", "Cache-Control", "max-age=600", "Set-Cookie", "seen=1; Path=/"));
+
+        ResourceCache.Response first = cache.fetch(base + "/style.css", NO_HEADERS);
+        assertEquals(Collections.singletonList("seen=1; Path=/"), first.cookies);
+        read(first);
+        ResourceCache.Response second = cache.fetch(base + "/style.css", NO_HEADERS);
+        assertTrue(second.fromCache);
+        assertTrue(second.cookies.isEmpty());
+        assertFalse(second.headers.containsKey("Set-Cookie"));
+    }
+
+    @Test
+    public void deletesFilesTheIndexDoesNotList() throws IOException {
+        replies.put("/app.js", new Reply("js", "Cache-Control", "max-age=600"));
+        read(cache.fetch(base + "/app.js", NO_HEADERS));
+        // A kill before the delayed index write leaves bodies and temp files behind.
+        File temp = new File(dir, "0123.1.tmp");
+        assertTrue(temp.createNewFile());
+        assertTrue(dir.list().length >= 2);
+
+        ResourceCache reopened = new ResourceCache(dir, 1024 * 1024);
+        assertEquals(0, reopened.size());
+        File[] left = dir.listFiles();
+        for (File file : left) assertEquals("index", file.getName());
+    }
+
+    private static String read(ResourceCache.Response response) throws IOException {
+        return new String(readBytes(response), UTF_8);
+    }
+
+    private static byte[] readBytes(ResourceCache.Response response) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        InputStream input = response.data;
+        try {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = input.read(buffer)) > 0) output.write(buffer, 0, read);
+        } finally {
+            input.close();
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(output);
+        gzip.write(text.getBytes(UTF_8));
+        gzip.close();
+        return output.toByteArray();
+    }
+}
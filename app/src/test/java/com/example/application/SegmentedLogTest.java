@@ -0,0 +1,179 @@
+package com.example.application;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentedLogTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int SEGMENT_SIZE = 256;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = folder.newFolder("log");
+    }
+
+    @Test
+    public void readsBackAppendedRecords() throws IOException {
+        SegmentedLog log = new SegmentedLog(dir, SEGMENT_SIZE, 4);
+        append(log, "a", "bb", "ccc");
+        assertRecords(log.openReader(), "a", "bb", "ccc");
+        log.close();
+
+        assertRecords(new SegmentedLog(dir, SEGMENT_SIZE, 4).openReader(), "a", "bb", "ccc");
+    }
+
+    @Test
+    public void tornTailIsTruncatedOnOpen() throws IOException {
+        SegmentedLog log = new SegmentedLog(dir, SEGMENT_SIZE, 4);
+        append(log, "first", "second");
+        log.close();
+        File segment = onlySegment();
+        long intact = segment.length();
+        // A record header promising 100 bytes of which only 3 made it to disk.
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(intact);
+            file.writeInt(100);
+            file.writeInt(0x12345678);
+            file.write(new byte[] {1, 2, 3});
+        }
+
+        log = new SegmentedLog(dir, SEGMENT_SIZE, 4);
+        assertEquals(intact, segment.length());
+        append(log, "third");
+        assertRecords(log.openReader(), "first", "second", "third");
+        log.close();
+    }
+
+    @Test
+    public void checksumMismatchReadsAsNull() throws IOException {
+        SegmentedLog log = new SegmentedLog(dir, SEGMENT_SIZE, 4);
+        append(log, "first", "second", "third");
+        log.close();
+        // Flip a payload byte of "second".
+        corrupt(onlySegment(), SegmentedLog.HEADER_SIZE + SegmentedLog.RECORD_HEADER_SIZE + 5 + SegmentedLog.RECORD_HEADER_SIZE);
+
+        SegmentedLog.Reader reader = SegmentedLog.Reader.open(SegmentedLog.listSegments(dir));
+        assertEquals(3, reader.size());
+        assertEquals("first", reader.getString(0));
+        assertNull(reader.getRecord(1));
+        assertNull(reader.getString(1));
+        assertEquals("third", reader.getString(2));
+    }
+
+    @Test
+    public void damagedLengthOnlyLosesThatRecord() throws IOException {
+        SegmentedLog log = new SegmentedLog(dir, SEGMENT_SIZE, 4);
+        append(log, "first", "second", "third", "fourth");
+        log.close();
+        File segment = onlySegment();
+        // Overwrite the length of "second" with one that runs past the end.
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(SegmentedLog.HEADER_SIZE + SegmentedLog.RECORD_HEADER_SIZE + 5);
+            file.writeInt(Integer.MAX_VALUE);
+        }
+
+        assertRecords(SegmentedLog.Reader.open(SegmentedLog.listSegments(dir)), "first", "third", "fourth");
+
+        // The writer keeps what follows the damage and appends after it.
+        long size = segment.length();
+        log = new SegmentedLog(dir, SEGMENT_SIZE, 4);
+        assertEquals(size, segment.length());
+        append(log, "fifth");
+        assertRecords(log.openReader(), "first", "third", "fourth", "fifth");
+        log.close();
+    }
+
+    @Test
+    public void badSegmentHeaderSkipsSegment() throws IOException {
+        SegmentedLog log = new SegmentedLog(dir, 64, 8);
+        append(log, "0123456789012345678901234567890123456789", "next segment");
+        log.close();
+        File[] segments = SegmentedLog.listSegments(dir);
+        assertEquals(2, segments.length);
+        corrupt(segments[0], 0);
+
+        assertRecords(SegmentedLog.Reader.open(segments), "next segment");
+
+        // A bad header on the newest segment makes the writer start it over.
+        corrupt(segments[1], 0);
+        log = new SegmentedLog(dir, 64, 8);
+        assertEquals(SegmentedLog.HEADER_SIZE, segments[1].length());
+        append(log, "fresh");
+        assertRecords(log.openReader(), "fresh");
+        log.close();
+    }
+
+    @Test
+    public void rolloverKeepsNewestSegments() throws IOException {
+        SegmentedLog log = new SegmentedLog(dir, 64, 3);
+        for (int i = 0; i < 40; i++) append(log, "record " + i);
+        log.flush();
+        File[] segments = SegmentedLog.listSegments(dir);
+        assertEquals(3, segments.length);
+        for (File segment : segments) assertTrue(segment.length() <= 64);
+
+        SegmentedLog.Reader reader = log.openReader();
+        assertTrue(reader.size() > 0);
+        assertEquals("record 39", reader.getString(reader.size() - 1));
+        int first = Integer.parseInt(reader.getString(0).substring("record ".length()));
+        String[] expected = new String[40 - first];
+        for (int i = first; i < 40; i++) expected[i - first] = "record " + i;
+        assertRecords(reader, expected);
+        for (int i = 1; i < reader.size(); i++) assertTrue(reader.getRecordId(i) > reader.getRecordId(i - 1));
+        log.close();
+    }
+
+    @Test
+    public void clearStartsOver() throws IOException {
+        SegmentedLog log = new SegmentedLog(dir, 64, 3);
+        for (int i = 0; i < 10; i++) append(log, "record " + i);
+        log.clear();
+        append(log, "after");
+        assertRecords(log.openReader(), "after");
+        assertEquals(1, SegmentedLog.listSegments(dir).length);
+        log.close();
+    }
+
+    private static void append(SegmentedLog log, String... records) throws IOException {
+        for (String record : records) log.append(record.getBytes(UTF_8));
+    }
+
+    private static void assertRecords(SegmentedLog.Reader reader, String... expected) {
+        String[] actual = new String[reader.size()];
+        for (int i = 0; i < actual.length; i++) actual[i] = reader.getString(i);
+        assertArrayEquals(expected, actual);
+    }
+
+    private File onlySegment() {
+        File[] segments = SegmentedLog.listSegments(dir);
+        assertEquals(1, segments.length);
+        return segments[0];
+    }
+
+    private static void corrupt(File segment, long offset) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(offset);
+            int b = file.read();
+            file.seek(offset);
+            file.write(b ^ 0xFF);
+        }
+    }
+}
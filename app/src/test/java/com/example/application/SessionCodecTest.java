@@ -0,0 +1,113 @@
+package com.example.application;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class SessionCodecTest {
+
+    @Test
+    public void roundTrips() throws IOException {
+        SessionCodec.Session session = new SessionCodec.Session(1, Arrays.asList(
+            new SessionCodec.TabState("https://a.example.com/2", "A", 0, 1480, new String[] {"https://a.example.com/1", "https://a.example.com/2"}, 1),
+            new SessionCodec.TabState("https://b.example.com/", null, 0, 0, new String[0], -1)));
+
+        SessionCodec.Session read = decode(SessionCodec.encode(session));
+        assertEquals(1, read.current);
+        assertEquals(2, read.tabs.size());
+        SessionCodec.TabState first = read.tabs.get(0);
+        assertEquals("https://a.example.com/2", first.url);
+        assertEquals("A", first.title);
+        assertEquals(0, first.scrollX);
+        assertEquals(1480, first.scrollY);
+        assertArrayEquals(new String[] {"https://a.example.com/1", "https://a.example.com/2"}, first.entries);
+        assertEquals(1, first.index);
+        assertNull(read.tabs.get(1).title);
+        assertEquals(-1, read.tabs.get(1).index);
+    }
+
+    @Test
+    public void dropsOverlongUrls() throws IOException {
+        char[] data = new char[SessionCodec.MAX_URL_LENGTH + 1];
+        Arrays.fill(data, 'a');
+        String url = "data:," + new String(data);
+        SessionCodec.Session session = new SessionCodec.Session(0, Collections.singletonList(
+            new SessionCodec.TabState(url, "t", 0, 0, new String[] {url}, 0)));
+
+        SessionCodec.TabState read = decode(SessionCodec.encode(session)).tabs.get(0);
+        assertNull(read.url);
+        assertArrayEquals(new String[] {null}, read.entries);
+    }
+
+    @Test
+    public void otherVersionsAndEmptySessionsReadAsNull() throws IOException {
+        assertNull(decode(header(SessionCodec.VERSION - 1, 0, 0)));
+        assertNull(decode(SessionCodec.encode(new SessionCodec.Session(0, Collections.<SessionCodec.TabState>emptyList()))));
+    }
+
+    @Test
+    public void rejectsBadCountsAndIndices() throws IOException {
+        assertRejected(header(SessionCodec.VERSION, 0, -1));
+        assertRejected(header(SessionCodec.VERSION, 0, SessionCodec.MAX_TABS + 1));
+        assertRejected(header(SessionCodec.VERSION, 3, 1));
+
+        byte[] valid = SessionCodec.encode(new SessionCodec.Session(0, Collections.singletonList(
+            new SessionCodec.TabState("https://a/", "a", 0, 0, new String[] {"https://a/"}, 0))));
+        // The scroll position follows the flagged URL and title, the entry count follows that.
+        int scrollX = 12 + 1 + 2 + "https://a/".length() + 1 + 2 + 1;
+        assertRejected(patchInt(valid, scrollX, -1));
+        assertRejected(patchInt(valid, scrollX + 4, Integer.MIN_VALUE));
+        assertRejected(patchInt(valid, scrollX + 8, Integer.MAX_VALUE));
+        assertRejected(patchInt(valid, valid.length - 4, 1));
+        assertRejected(patchInt(valid, valid.length - 4, -2));
+    }
+
+    @Test
+    public void rejectsTruncatedFiles() throws IOException {
+        byte[] valid = SessionCodec.encode(new SessionCodec.Session(0, Collections.singletonList(
+            new SessionCodec.TabState("https://a/", "a", 0, 0, new String[] {"https://a/"}, 0))));
+        for (int length = 12; length < valid.length; length++) {
+            assertRejected(Arrays.copyOf(valid, length));
+        }
+    }
+
+    private static SessionCodec.Session decode(byte[] bytes) throws IOException {
+        return SessionCodec.decode(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private static void assertRejected(byte[] bytes) {
+        try {
+            decode(bytes);
+            fail("decoded a damaged session");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static byte[] header(int version, int current, int count) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(version);
+        output.writeInt(current);
+        output.writeInt(count);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] patchInt(byte[] bytes, int offset, int value) {
+        byte[] copy = bytes.clone();
+        copy[offset] = (byte) (value >>> 24);
+        copy[offset + 1] = (byte) (value >>> 16);
+        copy[offset + 2] = (byte) (value >>> 8);
+        copy[offset + 3] = (byte) value;
+        return copy;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.application;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Test;
+
+public class UrlIndexTest {
+
+    private static final String[] HOSTS = {"www.example.com", "mail.google.com", "news.ycombinator.com", "example.org", "docs.example.com"};
+
+    private static final String[] QUERIES = {"ex", "example.com", "EXAMPLE", "google", "mail.g", "news", "docs", "a", "page", "org", "https://www.ex", "zzz"};
+
+    @Test
+    public void ranksByVisitCount() {
+        UrlIndex index = new UrlIndex(new String[] {"https://a.example.com/", "https://b.example.com/"}, new int[] {1, 5}, 2);
+        index.recordVisit("https://c.example.com/");
+        index.recordVisit("https://c.example.com/");
+
+        assertEquals(Arrays.asList("https://b.example.com/", "https://c.example.com/", "https://a.example.com/"), lookup(index, "example"));
+        assertEquals(Collections.singletonList("https://c.example.com/"), lookup(index, "c.ex"));
+    }
+
+    @Test
+    public void removeDropsPendingAndIndexedUrls() {
+        UrlIndex index = new UrlIndex(new String[] {"https://a.example.com/"}, new int[] {1}, 1);
+        index.recordVisit("https://b.example.com/");
+        index.remove("https://a.example.com/");
+        index.remove("https://b.example.com/");
+
+        assertEquals(Collections.<String>emptyList(), lookup(index, "example"));
+        List<String> top = new ArrayList<>();
+        index.top(UrlIndex.MAX_RESULTS, top);
+        assertEquals(Collections.<String>emptyList(), top);
+    }
+
+    @Test
+    public void matchesBruteForceAcrossMerges() {
+        Random random = new Random(7);
+        Model model = new Model();
+        UrlIndex index = new UrlIndex();
+        // Enough new URLs to merge the pending tokens many times over.
+        for (int step = 0; step < 3000; step++) {
+            int action = random.nextInt(10);
+            if (action < 6) {
+                String url = randomUrl(random);
+                index.recordVisit(url);
+                model.visit(url);
+            } else if (action < 9 && !model.urls.isEmpty()) {
+                String url = model.urls.get(random.nextInt(model.urls.size()));
+                index.recordVisit(url);
+                model.visit(url);
+            } else if (!model.urls.isEmpty()) {
+                String url = model.urls.get(random.nextInt(model.urls.size()));
+                index.remove(url);
+                model.remove(url);
+            }
+            if (step % 50 == 0) assertSameAsModel(index, model);
+        }
+        assertSameAsModel(index, model);
+        assertEquals(model.size(), index.size() - model.removed);
+    }
+
+    private static void assertSameAsModel(UrlIndex index, Model model) {
+        for (String query : QUERIES) {
+            for (int limit : new int[] {1, 5, UrlIndex.MAX_RESULTS}) {
+                List<String> actual = new ArrayList<>();
+                index.lookup(query, limit, actual);
+                assertEquals(query + " limit " + limit, model.lookup(query, limit), actual);
+            }
+        }
+        List<String> top = new ArrayList<>();
+        index.top(8, top);
+        assertEquals(model.lookup(null, 8), top);
+    }
+
+    private static String randomUrl(Random random) {
+        return (random.nextBoolean() ? "https://" : "http://") + HOSTS[random.nextInt(HOSTS.length)]
+               + "/page/" + random.nextInt(400) + (random.nextInt(4) == 0 ? "?q=" + random.nextInt(10) : "");
+    }
+
+    private static List<String> lookup(UrlIndex index, String query) {
+        List<String> out = new ArrayList<>();
+        index.lookup(query, UrlIndex.MAX_RESULTS, out);
+        return out;
+    }
+
+    /**
+     * The same ranking done the slow way: every URL with a token starting with
+     * the query, most visited first, newer entries first on a tie.
+     */
+    private static class Model {
+
+        final List<String> urls = new ArrayList<>();
+        final List<String> entries = new ArrayList<>();
+        final List<Integer> counts = new ArrayList<>();
+        int removed;
+
+        void visit(String url) {
+            int entry = entries.indexOf(url);
+            if (entry >= 0) {
+                counts.set(entry, counts.get(entry) + 1);
+                return;
+            }
+            entries.add(url);
+            counts.add(1);
+            urls.add(url);
+        }
+
+        void remove(String url) {
+            int entry = entries.indexOf(url);
+            entries.set(entry, null);
+            counts.set(entry, 0);
+            urls.remove(url);
+            removed++;
+        }
+
+        int size() {
+            return urls.size();
+        }
+
+        List<String> lookup(String query, int limit) {
+            List<Integer> matches = new ArrayList<>();
+            String key = query == null ? null : strip(query.toLowerCase(Locale.ROOT));
+            int[] offsets = new int[8];
+            for (int entry = 0; entry < entries.size(); entry++) {
+                String url = entries.get(entry);
+                if (url == null) continue;
+                int n = UrlIndex.tokenize(url, offsets);
+                for (int i = 0; i < n; i++) {
+                    if (key == null || url.toLowerCase(Locale.ROOT).startsWith(key, offsets[i])) {
+                        matches.add(entry);
+                        break;
+                    }
+                }
+            }
+            Collections.sort(matches, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int byCount = counts.get(b) - counts.get(a);
+                    return byCount != 0 ? byCount : b - a;
+                }
+            });
+            List<String> result = new ArrayList<>();
+            for (int i = 0; i < Math.min(limit, matches.size()); i++) result.add(entries.get(matches.get(i)));
+            return result;
+        }
+
+        private static String strip(String query) {
+            if (query.startsWith("https://")) query = query.substring(8);
+            if (query.startsWith("http://")) query = query.substring(7);
+            if (query.startsWith("www.")) query = query.substring(4);
+            return query;
+        }
+    }
+}
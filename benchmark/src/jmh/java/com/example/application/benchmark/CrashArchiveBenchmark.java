@@ -0,0 +1,58 @@
+package com.example.application.benchmark;
+
+import com.example.application.CrashArchive;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Archiving a typical crash report, including eviction once the archive is
+ * at its file budget, as happens in a crash loop.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CrashArchiveBenchmark {
+
+    private File dir;
+
+    private CrashArchive archive;
+
+    private String log;
+
+    private long time;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = File.createTempFile("crash-benchmark", "");
+        dir.delete();
+        archive = new CrashArchive(dir, 2 * 1024 * 1024, 20);
+        StringBuilder builder = new StringBuilder("Time Of Crash :    2024_01_01-12_00_00\n\n");
+        builder.append("java.lang.IllegalStateException: boom\n");
+        for (int i = 0; i < 60; i++) {
+            builder.append("\tat com.example.application.MainActivity$").append(i).append(".run(MainActivity.java:").append(100 + i).append(")\n");
+        }
+        log = builder.toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        archive.clear();
+        new File(dir, "index").delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public Object add() {
+        return archive.add(++time, log);
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.application.benchmark;
+
+import com.example.application.CrashLog;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Formatting of the crash report built by {@code UncaughtExceptionHandlerImpl.buildLog},
+ * with a header like the one collected on a device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CrashLogBenchmark {
+
+    @Param({"10", "100"})
+    public int depth;
+
+    private LinkedHashMap<String, String> head;
+
+    private Throwable throwable;
+
+    @Setup
+    public void setUp() {
+        head = new LinkedHashMap<>();
+        head.put("Time Of Crash", "2024_01_01-12_00_00");
+        head.put("Device", "Google, Pixel 7");
+        head.put("Android Version", "14 (34)");
+        head.put("App Version", "1.0 (1)");
+        head.put("Kernel", "Linux version 5.10.157-android13-4-00001-g0123456789ab");
+        head.put("Support Abis", "[arm64-v8a, armeabi-v7a, armeabi]");
+        head.put("Fingerprint", "google/panther/panther:14/UQ1A.240105.004/11206848:user/release-keys");
+        throwable = new RuntimeException("outer", recurse(depth));
+    }
+
+    private static Throwable recurse(int depth) {
+        if (depth == 0) return new IllegalStateException("inner");
+        return recurse(depth - 1);
+    }
+
+    @Benchmark
+    public String format() {
+        return CrashLog.format(head, throwable);
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.application.benchmark;
+
+import com.example.application.ImageSaver;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The data saver against a local image server: a photo-sized JPEG fetched and
+ * recompressed, the same image served from the cache, and the per-host policy
+ * lookup done for every image request. The JVM has no WebP encoder, so the
+ * transcoder halves the image and re-encodes it as JPEG at the app's quality;
+ * on a device DataSaver does the same with Bitmap and WebP.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ImageSaverBenchmark {
+
+    private static final float QUALITY = 0.6f;
+
+    private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+    private static final ImageSaver.Transcoder JPEG = new ImageSaver.Transcoder() {
+        @Override
+        public ImageSaver.Image transcode(byte[] image, String mimeType) throws IOException {
+            BufferedImage source = ImageIO.read(new ByteArrayInputStream(image));
+            if (source == null) return null;
+            BufferedImage scaled = new BufferedImage(source.getWidth() / 2, source.getHeight() / 2, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = scaled.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(source, 0, 0, scaled.getWidth(), scaled.getHeight(), null);
+            graphics.dispose();
+            return new ImageSaver.Image("image/jpeg", encode(scaled, QUALITY), image.length, null);
+        }
+    };
+
+    private HttpServer server;
+
+    private ThreadPoolExecutor executor;
+
+    private ImageSaver saver;
+
+    private String url;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final byte[] photo = encode(photo(2560, 1920), 0.92f);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+                exchange.sendResponseHeaders(200, photo.length);
+                OutputStream body = exchange.getResponseBody();
+                body.write(photo);
+                exchange.close();
+            }
+        });
+        server.start();
+        url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/photo.jpg";
+        executor = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(8));
+        saver = new ImageSaver(executor, JPEG, 10000, 8 * 1024 * 1024);
+        saver.setPolicy("ads.example.com", ImageSaver.Policy.BLOCK);
+        saver.setPolicy("photos.example.org", ImageSaver.Policy.ALLOW);
+        saver.setPolicy("example.net", ImageSaver.Policy.COMPRESS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public int fetchAndCompress() {
+        saver.clearCache();
+        return saver.load(url, NO_HEADERS, null).data.length;
+    }
+
+    @Benchmark
+    public int cached() {
+        return saver.load(url, NO_HEADERS, null).data.length;
+    }
+
+    @Benchmark
+    public ImageSaver.Policy policyFor() {
+        return saver.policyFor("https://www.example.net/article", "https://cdn.img.ads.example.com/banner.png");
+    }
+
+    /**
+     * Smooth gradients with some noise, which compresses about like a photo.
+     */
+    private static BufferedImage photo(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(1);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / width + random.nextInt(24)) & 0xFF;
+                int g = (y * 255 / height + random.nextInt(24)) & 0xFF;
+                int b = ((x + y) * 127 / (width + height) + random.nextInt(24)) & 0xFF;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(output);
+        try {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            stream.close();
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+}
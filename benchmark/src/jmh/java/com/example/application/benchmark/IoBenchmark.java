@@ -0,0 +1,97 @@
+package com.example.application.benchmark;
+
+import com.example.application.IoUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The stream and file helpers behind {@code GlobalApplication.write},
+ * {@code writeAtomic} and {@code toString}, at crash-log and export sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IoBenchmark {
+
+    @Param({"4096", "65536", "1048576"})
+    public int size;
+
+    private byte[] data;
+
+    private File file;
+
+    private File copy;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = new byte[size];
+        Random random = new Random(42);
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (' ' + random.nextInt(95));
+        }
+        file = File.createTempFile("io-benchmark", ".txt");
+        copy = File.createTempFile("io-benchmark", ".copy");
+        IoUtils.write(file, data);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+        copy.delete();
+    }
+
+    @Benchmark
+    public int copyStream() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(size);
+        IoUtils.write(new ByteArrayInputStream(data), output);
+        return output.size();
+    }
+
+    @Benchmark
+    public long writeFile() throws IOException {
+        IoUtils.write(file, data);
+        return file.length();
+    }
+
+    @Benchmark
+    public long writeFileAtomic() throws IOException {
+        IoUtils.writeAtomic(copy, data);
+        return copy.length();
+    }
+
+    @Benchmark
+    public long copyFile() throws IOException {
+        IoUtils.copy(file, copy);
+        return copy.length();
+    }
+
+    @Benchmark
+    public long copyStreamToFile() throws IOException {
+        return IoUtils.copy(new ByteArrayInputStream(data), copy);
+    }
+
+    @Benchmark
+    public String readString() throws IOException {
+        return IoUtils.toString(new ByteArrayInputStream(data));
+    }
+
+    @Benchmark
+    public String readFileString() throws IOException {
+        return IoUtils.toString(new FileInputStream(file));
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.application.benchmark;
+
+import com.example.application.LogCodec;
+import com.example.application.LogRecord;
+import com.example.application.LogRingBuffer;
+import com.example.application.SegmentedLog;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The path of {@code MainActivity.addLog}: producers offering to the ring buffer
+ * while the writer drains it, and the writer appending records to segments,
+ * as text lines and as {@link LogCodec} records.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LogBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String LINE = "资源加载: https://static.example.com/assets/app.bundle.min.js?v=12345";
+
+    @State(Scope.Group)
+    public static class Ring {
+
+        LogRingBuffer<String> buffer;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            buffer = new LogRingBuffer<>(4096);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Sink {
+
+        final List<String> batch = new ArrayList<>(256);
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(3)
+    public boolean offer(Ring ring) {
+        return ring.buffer.offer(LINE);
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public int drain(Ring ring, Sink sink) {
+        sink.batch.clear();
+        return ring.buffer.drain(sink.batch, 256);
+    }
+
+    @State(Scope.Thread)
+    public static class Segments {
+
+        File dir;
+        SegmentedLog log;
+        byte[] record;
+        final LogCodec.Encoder encoder = new LogCodec.Encoder();
+        final LogRecord event = LogRecord.event(1760673784567L, LogRecord.Type.RESOURCE_LOAD, 2,
+                                                "https://static.example.com/assets/app.bundle.min.js?v=12345", LogRecord.NONE, LogRecord.NONE);
+
+        @Setup(Level.Iteration)
+        public void setUp() throws IOException {
+            dir = File.createTempFile("log-benchmark", "");
+            dir.delete();
+            log = new SegmentedLog(dir, 1024 * 1024, 16);
+            record = LINE.getBytes(UTF_8);
+            encoder.reset();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            log.clear();
+            log.close();
+            dir.delete();
+        }
+    }
+
+    @Benchmark
+    public void append(Segments segments) throws IOException {
+        segments.log.append(segments.record);
+    }
+
+    @Benchmark
+    public void appendEncoded(Segments segments) throws IOException {
+        segments.event.time += 7;
+        int length = segments.encoder.encode(segments.event);
+        if (!segments.log.fits(length)) {
+            segments.encoder.reset();
+            length = segments.encoder.encode(segments.event);
+        }
+        segments.log.append(segments.encoder.buffer(), 0, length);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.application.benchmark;
+
+import com.example.application.LogExporter;
+import com.example.application.LogCodec;
+import com.example.application.LogRecord;
+import com.example.application.SegmentedLog;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The developer console's log export: every record of a full log encoded as
+ * gzip NDJSON into a stream that discards its output.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LogExportBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int records;
+
+    private File dir;
+
+    private SegmentedLog log;
+
+    private LogCodec.Reader reader;
+
+    private final OutputStream sink = new OutputStream() {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = File.createTempFile("log-export-benchmark", "");
+        dir.delete();
+        log = new SegmentedLog(dir, 16 * 1024 * 1024, 16);
+        LogCodec.Encoder encoder = new LogCodec.Encoder();
+        LogRecord record = LogRecord.event(1760673784567L, LogRecord.Type.RESOURCE_LOAD, 2,
+                                           "https://static.example.com/assets/app.bundle.min.js?v=12345", 35, LogRecord.NONE);
+        for (int i = 0; i < records; i++) {
+            record.time += 7;
+            int length = encoder.encode(record);
+            log.append(encoder.buffer(), 0, length);
+        }
+        reader = LogCodec.Reader.open(log.openReader());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        log.clear();
+        log.close();
+        for (File file : SegmentedLog.listSegments(dir)) file.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public int export() throws IOException {
+        return LogExporter.export(reader, sink, null, null);
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.application.benchmark;
+
+import com.example.application.LogFilter;
+import com.example.application.LogCodec;
+import com.example.application.LogRecord;
+import com.example.application.SegmentedLog;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The developer console search over 100k records: one keystroke of a
+ * substring query from scratch, the next keystroke refining it, a regular
+ * expression, and a type filter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LogFilterBenchmark {
+
+    private static final int RECORDS = 100000;
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    private final LogFilter.Sink sink = new LogFilter.Sink() {
+        @Override
+        public void onMatches(int[] matches, int count, boolean done) {
+            if (done) {
+                lastMatches = matches;
+                lastCount = count;
+            }
+        }
+    };
+
+    private File dir;
+
+    private SegmentedLog log;
+
+    private LogCodec.Reader reader;
+
+    private int[] lastMatches;
+
+    private int lastCount;
+
+    private LogFilter substring;
+
+    private int[] substringMatches;
+
+    private int substringCount;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = File.createTempFile("log-filter-benchmark", "");
+        dir.delete();
+        log = new SegmentedLog(dir, 16 * 1024 * 1024, 16);
+        LogCodec.Encoder encoder = new LogCodec.Encoder();
+        for (int i = 0; i < RECORDS; i++) {
+            LogRecord record = i % 10 == 0
+                ? LogRecord.event(1760673784567L + i, LogRecord.Type.PAGE_LOAD, 1, "https://www.example.com/news/" + i, LogRecord.NONE, LogRecord.NONE)
+                : LogRecord.event(1760673784567L + i, LogRecord.Type.RESOURCE_LOAD, 1, "https://static.example.com/assets/chunk-" + i + ".js", LogRecord.NONE, LogRecord.NONE);
+            int length = encoder.encode(record);
+            log.append(encoder.buffer(), 0, length);
+        }
+        reader = LogCodec.Reader.open(log.openReader());
+        substring = new LogFilter("exam", false, LogFilter.TYPE_ALL);
+        substring.scan(reader, null, 0, sink, cancelled);
+        substringMatches = lastMatches;
+        substringCount = lastCount;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        log.clear();
+        log.close();
+        for (File file : SegmentedLog.listSegments(dir)) file.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public int substring() {
+        substring.scan(reader, null, 0, sink, cancelled);
+        return lastCount;
+    }
+
+    @Benchmark
+    public int refine() {
+        new LogFilter("example.com/news", false, LogFilter.TYPE_ALL).scan(reader, substringMatches, substringCount, sink, cancelled);
+        return lastCount;
+    }
+
+    @Benchmark
+    public int regex() {
+        new LogFilter("chunk-\\d+7\\.js$", true, LogFilter.TYPE_ALL).scan(reader, null, 0, sink, cancelled);
+        return lastCount;
+    }
+
+    @Benchmark
+    public int type() {
+        new LogFilter("", false, LogFilter.TYPE_PAGE).scan(reader, null, 0, sink, cancelled);
+        return lastCount;
+    }
+}
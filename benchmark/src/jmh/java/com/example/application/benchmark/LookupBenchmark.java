@@ -0,0 +1,107 @@
+package com.example.application.benchmark;
+
+import com.example.application.ContentBlocker;
+import com.example.application.LatencyHistogram;
+import com.example.application.UrlIndex;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-keystroke and per-request lookups: address bar suggestions, the request
+ * blocklist, and recording into a page metrics histogram. Inputs are synthetic
+ * and seeded, so runs are comparable.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LookupBenchmark {
+
+    @Param({"10000", "50000"})
+    public int entries;
+
+    private UrlIndex index;
+
+    private ContentBlocker blocker;
+
+    private LatencyHistogram histogram;
+
+    private String[] requests;
+
+    private long[] latencies;
+
+    private final List<String> results = new ArrayList<>(UrlIndex.MAX_RESULTS);
+
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        String[] urls = new String[entries];
+        int[] counts = new int[entries];
+        StringBuilder rules = new StringBuilder();
+        for (int i = 0; i < entries; i++) {
+            String host = word(random) + "." + (i % 3 == 0 ? "com" : "cn");
+            urls[i] = "https://www." + host + "/" + word(random) + "/" + word(random);
+            counts[i] = 1 + random.nextInt(50);
+            rules.append("||").append(word(random)).append('.').append(host).append("^\n");
+            if (i % 10 == 0) rules.append('/').append(word(random)).append("/ads/*\n");
+        }
+        index = new UrlIndex(urls, counts, entries);
+        blocker = ContentBlocker.compile(new StringReader(rules.toString()));
+        histogram = new LatencyHistogram(10 * 60 * 1000);
+
+        requests = new String[1024];
+        latencies = new long[1024];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = "https://cdn." + word(random) + ".com/static/js/" + word(random) + ".min.js?v=" + i;
+            latencies[i] = (long) Math.exp(random.nextGaussian() + 7);
+        }
+    }
+
+    private static String word(Random random) {
+        char[] chars = new char[4 + random.nextInt(8)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    @Benchmark
+    public int suggestOneChar() {
+        results.clear();
+        index.lookup("g", 8, results);
+        return results.size();
+    }
+
+    @Benchmark
+    public int suggestThreeChars() {
+        results.clear();
+        index.lookup("goo", 8, results);
+        return results.size();
+    }
+
+    @Benchmark
+    public boolean blockRequest() {
+        next = (next + 1) & (requests.length - 1);
+        return blocker.shouldBlock(requests[next]);
+    }
+
+    @Benchmark
+    public long recordLatency() {
+        next = (next + 1) & (latencies.length - 1);
+        histogram.record(latencies[next]);
+        return histogram.getTotalCount();
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.application.benchmark;
+
+import com.example.application.NavigationStack;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A browsing session as {@code MainActivity.addToHistory} sees it: mostly new
+ * pages, with a back navigation followed by a new page every tenth step; and
+ * a walk back and forth through a full stack.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NavigationBenchmark {
+
+    @Param({"100", "1000"})
+    public int pages;
+
+    private String[] urls;
+
+    private NavigationStack full;
+
+    @Setup
+    public void setUp() {
+        urls = new String[pages];
+        full = new NavigationStack(pages);
+        for (int i = 0; i < pages; i++) {
+            urls[i] = "https://example.com/articles/" + i + "?ref=home";
+            full.push(urls[i]);
+        }
+    }
+
+    @Benchmark
+    public int session() {
+        NavigationStack stack = new NavigationStack();
+        for (int i = 0; i < pages; i++) {
+            stack.push(urls[i]);
+            if (i % 10 == 9 && stack.canGoBack()) {
+                stack.back();
+            }
+        }
+        return stack.size();
+    }
+
+    @Benchmark
+    public int backAndForward() {
+        int steps = 0;
+        while (full.canGoBack()) {
+            full.back();
+            steps++;
+        }
+        while (full.canGoForward()) {
+            full.forward();
+            steps++;
+        }
+        return steps;
+    }
+}